@@ -0,0 +1,73 @@
+package com.alitag.netty_tools.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.alitag.netty_tools.ChannelHelper;
+import com.alitag.netty_tools.ConnectionDescriptor;
+import com.alitag.netty_tools.NettyConfig;
+
+/**
+ * <p>
+ * 测试ChannelHelper中取地址的各个方法的开销，channel为本机上一个已经建立的连接。
+ * </p>
+ * 
+ * @author gchangyi
+ * @version 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChannelHelperBenchmark {
+
+	private LoopbackPair pair;
+
+	@Setup
+	public void setup() throws Exception {
+		pair = new LoopbackPair(new NettyConfig(), new NettyConfig());
+	}
+
+	@TearDown
+	public void tearDown() {
+		pair.close();
+	}
+
+	@Benchmark
+	public ConnectionDescriptor getDescriptor() {
+		return ChannelHelper.getDescriptor(pair.server);
+	}
+
+	@Benchmark
+	public String getRemoteIpPort1() {
+		return ChannelHelper.getRemoteIpPort1(pair.server);
+	}
+
+	@Benchmark
+	public String getRemoteIpPort2() {
+		return ChannelHelper.getRemoteIpPort2(pair.server);
+	}
+
+	@Benchmark
+	public String getRemoteIp() {
+		return ChannelHelper.getRemoteIp(pair.server);
+	}
+
+	@Benchmark
+	public int getLocalPort() {
+		return ChannelHelper.getLocalPort(pair.server);
+	}
+}
@@ -0,0 +1,86 @@
+package com.alitag.netty_tools.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.alitag.netty_tools.ChannelTask;
+import com.alitag.netty_tools.ChannelTaskHelper;
+import com.alitag.netty_tools.NettyConfig;
+import com.alitag.netty_tools.TaskSchedulerType;
+import com.alitag.netty_tools.TimerTaskExt;
+
+/**
+ * <p>
+ * 测试ChannelTaskHelper加入并取消一个任务的开销，以及设置和取消空闲断开的开销。任务的延时足够长，测试期间不会运行。
+ * </p>
+ * 
+ * @author gchangyi
+ * @version 1.0
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ChannelTaskBenchmark {
+
+	@Param({ "TIMER", "HASHED_WHEEL", "EVENT_LOOP" })
+	public TaskSchedulerType scheduler;
+
+	private LoopbackPair pair;
+
+	@Setup
+	public void setup() throws Exception {
+		NettyConfig config = new NettyConfig();
+		config.taskScheduler = scheduler;
+		pair = new LoopbackPair(new NettyConfig(), config);
+	}
+
+	@TearDown
+	public void tearDown() {
+		pair.close();
+	}
+
+	@Benchmark
+	public boolean addAndCancelTask() {
+		ChannelTask<NoopTask> task = ChannelTaskHelper.addAutoCancelTask(pair.client, new NoopTask(), 60000, 0);
+		return task.cancel();
+	}
+
+	@Benchmark
+	public boolean addAndCancelPeriodicTask() {
+		ChannelTask<NoopTask> task = ChannelTaskHelper.addAutoCancelTask(pair.client, new NoopTask(), 60000, 1000);
+		return task.cancel();
+	}
+
+	@Benchmark
+	public void setAndCancelIdleDisconnect() {
+		ChannelTaskHelper.setIdleDisconnect(pair.client, 60);
+		ChannelTaskHelper.cancelAutoDisconnect(pair.client);
+	}
+
+	static final class NoopTask extends TimerTaskExt {
+		@Override
+		public void run() {
+			// do nothing
+		}
+
+		@Override
+		public String getName() {
+			return "noop";
+		}
+	}
+}
@@ -0,0 +1,123 @@
+package com.alitag.netty_tools.benchmarks;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.socket.SocketChannel;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.alitag.netty_tools.ChannelInitializeBuilder;
+import com.alitag.netty_tools.NettyConfig;
+import com.alitag.netty_tools.TransportMode;
+
+/**
+ * <p>
+ * 通过AcceptorBuilder和ConnectorBuilder在本机做按行的echo，分别测试NIO和epoll。roundTrip为单条消息的往返时间，pipelined为一次发送BATCH条消息时每秒的消息数。
+ * epoll不可用时EPOLL的测试会失败，这时用-p transport=NIO只测试NIO。
+ * </p>
+ * 
+ * @author gchangyi
+ * @version 1.0
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EchoBenchmark {
+
+	private static final int BATCH = 100;
+
+	private static final String MESSAGE = "0123456789abcdefghijklmnopqrstu\n";
+
+	@Param({ "NIO", "EPOLL" })
+	public TransportMode transport;
+
+	private LoopbackPair pair;
+
+	private final Semaphore replies = new Semaphore(0);
+
+	@Setup
+	public void setup() throws Exception {
+		transport.resolve(); // epoll不可用时抛出异常，该组参数的测试失败；这时用-p transport=NIO运行
+
+		NettyConfig serverConfig = newConfig();
+		final ChannelInitializeBuilder serverPipeline = new ChannelInitializeBuilder(serverConfig);
+		serverConfig.channelInitializer = new ChannelInitializer<SocketChannel>() {
+			@Override
+			protected void initChannel(SocketChannel channel) throws Exception {
+				serverPipeline.initChannel(channel);
+				channel.pipeline().addLast(new SimpleChannelInboundHandler<String>() {
+					@Override
+					protected void channelRead0(ChannelHandlerContext ctx, String msg) throws Exception {
+						ctx.writeAndFlush(msg + "\n");
+					}
+				});
+			}
+		};
+
+		NettyConfig clientConfig = newConfig();
+		final ChannelInitializeBuilder clientPipeline = new ChannelInitializeBuilder(clientConfig);
+		clientConfig.channelInitializer = new ChannelInitializer<SocketChannel>() {
+			@Override
+			protected void initChannel(SocketChannel channel) throws Exception {
+				clientPipeline.initChannel(channel);
+				channel.pipeline().addLast(new SimpleChannelInboundHandler<String>() {
+					@Override
+					protected void channelRead0(ChannelHandlerContext ctx, String msg) throws Exception {
+						replies.release();
+					}
+				});
+			}
+		};
+		pair = new LoopbackPair(serverConfig, clientConfig);
+	}
+
+	private NettyConfig newConfig() {
+		NettyConfig config = new NettyConfig();
+		config.transportMode = transport;
+		config.workerThreads = 1;
+		config.tcp_no_delay = true;
+		return config;
+	}
+
+	@TearDown
+	public void tearDown() {
+		if (pair != null)
+			pair.close();
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.AverageTime)
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public void roundTrip() throws InterruptedException {
+		pair.client.writeAndFlush(MESSAGE);
+		replies.acquire();
+	}
+
+	@Benchmark
+	@BenchmarkMode(Mode.Throughput)
+	@OutputTimeUnit(TimeUnit.SECONDS)
+	@OperationsPerInvocation(BATCH)
+	public void pipelined() throws InterruptedException {
+		for (int i = 0; i < BATCH - 1; i++)
+			pair.client.write(MESSAGE);
+		pair.client.writeAndFlush(MESSAGE);
+		replies.acquire(BATCH);
+	}
+}
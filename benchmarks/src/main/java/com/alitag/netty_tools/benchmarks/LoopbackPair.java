@@ -0,0 +1,68 @@
+package com.alitag.netty_tools.benchmarks;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.socket.SocketChannel;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import com.alitag.netty_tools.AcceptorBuilder;
+import com.alitag.netty_tools.ConnectorBuilder;
+import com.alitag.netty_tools.NettyConfig;
+
+/**
+ * <p>
+ * 用AcceptorBuilder和ConnectorBuilder在本机建立一对相连的channel，供各个benchmark使用。
+ * </p>
+ * 
+ * @author gchangyi
+ * @version 1.0
+ */
+final class LoopbackPair {
+
+	final AcceptorBuilder acceptor;
+
+	final ConnectorBuilder connector;
+
+	/** 服务端接受的channel */
+	final Channel server;
+
+	/** 客户端的channel */
+	final Channel client;
+
+	/**
+	 * @param serverConfig
+	 *            服务端的配置，channelInitializer会被包装，以便取得服务端的channel
+	 * @param clientConfig
+	 *            客户端的配置
+	 */
+	LoopbackPair(NettyConfig serverConfig, NettyConfig clientConfig) throws Exception {
+		final BlockingQueue<Channel> accepted = new LinkedBlockingQueue<Channel>();
+		final ChannelInitializer<?> initializer = serverConfig.channelInitializer;
+		serverConfig.channelInitializer = new ChannelInitializer<SocketChannel>() {
+			@Override
+			protected void initChannel(SocketChannel channel) throws Exception {
+				channel.pipeline().addLast(initializer);
+				accepted.add(channel);
+			}
+		};
+		acceptor = new AcceptorBuilder(serverConfig);
+		connector = new ConnectorBuilder(clientConfig);
+		acceptor.bind(new InetSocketAddress("127.0.0.1", 0));
+		InetSocketAddress address = (InetSocketAddress) acceptor.getListeners().iterator().next().localAddress();
+		client = connector.getConnector().connect(address).sync().channel();
+		server = accepted.poll(10, TimeUnit.SECONDS);
+		if (server == null)
+			throw new IllegalStateException("connection not accepted");
+	}
+
+	void close() {
+		client.close().syncUninterruptibly();
+		server.close().syncUninterruptibly();
+		connector.shutdownGracefully();
+		acceptor.shutdownGracefully();
+	}
+}
@@ -0,0 +1,127 @@
+package com.alitag.netty_tools.benchmarks;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.CharsetUtil;
+import io.netty.util.ReferenceCountUtil;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.alitag.netty_tools.ChannelInitializeBuilder;
+import com.alitag.netty_tools.FramingMode;
+import com.alitag.netty_tools.NettyConfig;
+
+/**
+ * <p>
+ * 通过EmbeddedChannel测试ChannelInitializeBuilder生成的pipeline的编解码能力。结果为每秒的消息数，加上-prof gc时gc.alloc.rate.norm为每条消息分配的字节数。
+ * </p>
+ * 
+ * @author gchangyi
+ * @version 1.0
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PipelineBenchmark {
+
+	private static final int MESSAGES = 100;
+
+	@Param({ "LINE_STRING", "LINE", "LINE_ASCII", "LENGTH_FIELD" })
+	public FramingMode framingMode;
+
+	@Param({ "32" })
+	public int messageSize;
+
+	private EmbeddedChannel channel;
+
+	private ByteBuf inbound;
+
+	private String message;
+
+	@Setup
+	public void setup() throws Exception {
+		NettyConfig config = new NettyConfig();
+		config.framingMode = framingMode;
+		channel = new EmbeddedChannel(new ChannelInitializeBuilder(config));
+		channel.config().setAllocator(PooledByteBufAllocator.DEFAULT);
+
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < messageSize - 2; i++)
+			sb.append((char) ('a' + i % 26));
+		message = sb.toString();
+		// 用编码器生成一段包含MESSAGES条消息的输入，这样每种分帧方式都得到自己格式的数据
+		ByteBuf chunk = PooledByteBufAllocator.DEFAULT.directBuffer();
+		for (int i = 0; i < MESSAGES; i++) {
+			channel.writeOutbound(framingMode == FramingMode.LENGTH_FIELD ? message : message + "\r\n");
+			ByteBuf encoded;
+			while ((encoded = channel.readOutbound()) != null) {
+				chunk.writeBytes(encoded);
+				encoded.release();
+			}
+		}
+		inbound = chunk;
+	}
+
+	@TearDown
+	public void tearDown() {
+		inbound.release();
+		channel.finishAndReleaseAll();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(MESSAGES)
+	public int decode() {
+		channel.writeInbound(inbound.retainedDuplicate());
+		int count = 0;
+		Object msg;
+		while ((msg = channel.readInbound()) != null) {
+			count++;
+			ReferenceCountUtil.release(msg);
+		}
+		return count;
+	}
+
+	@Benchmark
+	public int encode() {
+		channel.writeOutbound(message);
+		int length = 0;
+		ByteBuf buf;
+		while ((buf = channel.readOutbound()) != null) {
+			length += buf.readableBytes();
+			buf.release();
+		}
+		return length;
+	}
+
+	/** 对比用：解码后再转换成String */
+	@Benchmark
+	@OperationsPerInvocation(MESSAGES)
+	public int decodeToString() {
+		channel.writeInbound(inbound.retainedDuplicate());
+		int length = 0;
+		Object msg;
+		while ((msg = channel.readInbound()) != null) {
+			length += msg instanceof ByteBuf ? ((ByteBuf) msg).toString(CharsetUtil.UTF_8).length() : msg.toString().length();
+			ReferenceCountUtil.release(msg);
+		}
+		return length;
+	}
+}
@@ -1,10 +1,25 @@
 package com.alitag.netty_tools;
 
 import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelConfig;
+import io.netty.channel.ChannelException;
+import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.group.DefaultChannelGroup;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.GlobalEventExecutor;
+
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
 
 /**
  * <p>
@@ -20,8 +35,8 @@ import io.netty.channel.socket.nio.NioServerSocketChannel;
  */
 public class AcceptorBuilder {
 
-	/** 用于持有各种参数，初始值为null，将在构造函数中被初始化。 */
-	private final NettyConfig config;
+	/** 用于持有各种参数，初始值为null，将在构造函数中被初始化，reconfigure()时被替换。 */
+	private NettyConfig config;
 
 	/** 用于持有将会生成的ServerBootstrap对象 */
 	private ServerBootstrap acceptor;
@@ -29,6 +44,31 @@ public class AcceptorBuilder {
 	private EventLoopGroup bossGroup; // 连接线程
 	private EventLoopGroup workerGroup; // 处理线程组
 
+	/** 线程组是否由NettyConfig从外部提供，外部提供的线程组不会被关闭 */
+	private boolean externalBossGroup;
+	private boolean externalWorkerGroup;
+
+	/** 实际使用的传输方式，在生成ServerBootstrap时确定 */
+	private TransportMode transportMode;
+
+	/** 所有channel使用的ByteBufAllocator，在生成ServerBootstrap时确定 */
+	private ByteBufAllocator allocator;
+
+	/** 通过bind()绑定的所有监听channel */
+	private ChannelGroup listeners;
+
+	/** 接受连接时的准入控制，没有设置限制时为null */
+	private AdmissionControl admissionControl;
+
+	/** 记录接受的所有连接，用于排空 */
+	private ChannelDrainer drainer;
+
+	/** 新连接使用的ChannelInitializer */
+	private BuilderChannelInitializer childInitializer;
+
+	/** 启用TLS时的SslContext和卸载握手的线程组，在生成ServerBootstrap时确定 */
+	private TlsSupport tls;
+
 	/**
 	 * <p>
 	 * 默认构造函数。将产生一个NettyConfig对象并使用其默认值。
@@ -65,60 +105,525 @@ public class AcceptorBuilder {
 	@SuppressWarnings("deprecation")
 	public synchronized ServerBootstrap getAcceptor() {
 		if (acceptor == null) {
-			acceptor = new ServerBootstrap();
-			if (config.threadPool) {
-				bossGroup = new NioEventLoopGroup();
-				workerGroup = new NioEventLoopGroup();
-				acceptor.group(bossGroup, workerGroup);
-			} else {
-				acceptor.group();
+			ArgumentValidator.notNull(config.transportMode, "transportMode");
+			ArgumentValidator.isTrue(config.bossThreads >= 0, "bossThreads should be >=0: " + config.bossThreads);
+			ArgumentValidator.isTrue(config.workerThreads >= 0, "workerThreads should be >=0: " + config.workerThreads);
+			CompressionHandler.validate(config);
+			tls = TlsSupport.of(config, true);
+			// 之后的步骤抛出异常时关闭本次生成的线程组并恢复到没有生成的状态，以免线程泄漏，下次调用时重新生成
+			boolean ok = false;
+			try {
+				// 使用外部线程组时，传输方式由线程组决定；boss和worker都是外部提供时两者必须一致
+				if (config.threadPool && config.workerGroup != null) {
+					transportMode = TransportHelper.transportOf(config.workerGroup);
+					if (config.bossGroup != null) {
+						TransportMode bossMode = TransportHelper.transportOf(config.bossGroup);
+						ArgumentValidator.isTrue(bossMode == transportMode, "bossGroup (" + bossMode
+								+ ") and workerGroup (" + transportMode + ") should use the same transport");
+					}
+				} else if (config.threadPool && config.bossGroup != null) {
+					transportMode = TransportHelper.transportOf(config.bossGroup);
+				} else {
+					transportMode = config.transportMode.resolve();
+				}
+				acceptor = new ServerBootstrap();
+				if (config.threadPool) {
+					externalBossGroup = config.bossGroup != null;
+					externalWorkerGroup = config.workerGroup != null;
+					if (externalBossGroup) {
+						bossGroup = config.bossGroup;
+					} else {
+						// 使用SO_REUSEPORT时，默认每个监听socket使用一个单独的boss线程
+						int bossThreads = config.bossThreads == 0 && getListenerCount() > 1 ? getListenerCount() : config.bossThreads;
+						bossGroup = TransportHelper.newEventLoopGroup(transportMode, bossThreads,
+								TransportHelper.newThreadFactory(config, "boss"));
+					}
+					if (externalWorkerGroup) {
+						workerGroup = config.workerGroup;
+					} else {
+						workerGroup = TransportHelper.newEventLoopGroup(transportMode, config.workerThreads,
+								TransportHelper.newThreadFactory(config, "worker"));
+					}
+					acceptor.group(bossGroup, workerGroup);
+				} else {
+					acceptor.group();
+				}
+				acceptor.channel(TransportHelper.serverChannelClass(transportMode));
+				configureListener(acceptor, config);
+				allocator = AllocatorHelper.newAllocator(config);
+				acceptor.option(ChannelOption.ALLOCATOR, allocator);
+				acceptor.childOption(ChannelOption.ALLOCATOR, allocator);
+				configureChild(acceptor, config);
+				if (getListenerCount() > 1) {
+					acceptor.option(EpollChannelOption.SO_REUSEPORT, true);
+				}
+				admissionControl = AdmissionControl.of(config);
+				if (admissionControl != null) {
+					acceptor.handler(admissionControl);
+				}
+				drainer = new ChannelDrainer(config.goAwayMessage);
+				childInitializer = new BuilderChannelInitializer(config, TrafficShaper.of(config), drainer, tls);
+				acceptor.childHandler(childInitializer);
+				ok = true;
+			} finally {
+				if (!ok)
+					abandon();
 			}
-			acceptor.channel(NioServerSocketChannel.class);
-			acceptor.option(ChannelOption.SO_KEEPALIVE, config.socket_keepAlive);
-			acceptor.option(ChannelOption.SO_REUSEADDR, config.reuseAddress);
-			acceptor.option(ChannelOption.TCP_NODELAY, config.tcp_no_delay);
-			acceptor.option(ChannelOption.SO_SNDBUF, config.send_buffer_size);
-			acceptor.option(ChannelOption.SO_LINGER, config.socket_soLinger); // 如果soLinger为0，当连接断开后，可以很快重用该端口
-			acceptor.childHandler(config.channelInitializer);
 		}
 		return acceptor;
 	}
 
+	/**
+	 * getAcceptor()失败时关闭已经生成的线程组，清除生成到一半的状态
+	 */
+	@SuppressWarnings("deprecation")
+	private void abandon() {
+		if (bossGroup != null && !externalBossGroup)
+			bossGroup.shutdownNow();
+		if (workerGroup != null && !externalWorkerGroup)
+			workerGroup.shutdownNow();
+		if (tls != null)
+			tls.shutdownNow();
+		acceptor = null;
+		bossGroup = null;
+		workerGroup = null;
+		tls = null;
+		transportMode = null;
+		allocator = null;
+		admissionControl = null;
+		drainer = null;
+		childInitializer = null;
+	}
+
+	/**
+	 * 监听socket的参数，在bind时生效
+	 */
+	private static void configureListener(ServerBootstrap bootstrap, NettyConfig config) {
+		bootstrap.option(ChannelOption.SO_REUSEADDR, config.reuseAddress);
+		// 接收窗口的扩大因子在握手时确定，需要在监听socket上设置，接受的连接会继承
+		bootstrap.option(ChannelOption.SO_RCVBUF, config.receiver_buffer_size);
+		if (config.backlog > 0) {
+			bootstrap.option(ChannelOption.SO_BACKLOG, config.backlog);
+		}
+	}
+
+	/**
+	 * 接受的连接的参数。ServerBootstrap在绑定时复制这些参数，只对之后绑定的监听socket生效；已经绑定的监听socket接受的连接，
+	 * 在reconfigure()之后由BuilderChannelInitializer设置
+	 */
+	private static void configureChild(ServerBootstrap bootstrap, NettyConfig config) {
+		bootstrap.childOption(ChannelOption.SO_KEEPALIVE, config.socket_keepAlive);
+		bootstrap.childOption(ChannelOption.TCP_NODELAY, config.tcp_no_delay);
+		bootstrap.childOption(ChannelOption.SO_SNDBUF, config.send_buffer_size);
+		bootstrap.childOption(ChannelOption.SO_RCVBUF, config.receiver_buffer_size);
+		bootstrap.childOption(ChannelOption.SO_LINGER, config.socket_soLinger); // 如果soLinger为0，当连接断开后，可以很快重用该端口
+		bootstrap.childOption(ChannelOption.RCVBUF_ALLOCATOR, AllocatorHelper.newRecvByteBufAllocator(config));
+		bootstrap.childOption(ChannelOption.WRITE_BUFFER_WATER_MARK, new WriteBufferWaterMark(config.writeBufferLowWaterMark,
+				config.writeBufferHighWaterMark));
+		bootstrap.childAttr(ChannelTaskHelper.KEY_TASK_SCHEDULER, config.taskScheduler);
+		bootstrap.childAttr(WriteHelper.KEY_WRITE_POLICY, config.writePolicy);
+	}
+
+	/**
+	 * <p>
+	 * 在localAddress上绑定监听socket，并同步等待绑定完成。
+	 * </p>
+	 * <p>
+	 * 如果使用epoll并且{@link NettyConfig#reusePortListeners}大于1，会以SO_REUSEPORT在同一端口上绑定多个监听socket，每个socket在自己的boss线程中，由内核把新连接分配到各个socket上；
+	 * 否则只绑定一个监听socket。如果端口为0，所有socket都绑定到第一个socket得到的端口上。
+	 * </p>
+	 * <p>
+	 * 返回的ChannelGroup可用于一起关闭所有监听socket。shutdownGracefully()和shutdownNow()也会关闭它们。
+	 * </p>
+	 * 
+	 * @param localAddress
+	 *            本地地址
+	 * @return 所有监听channel
+	 * @throws IllegalArgumentException
+	 *             如果localAddress为null
+	 * @throws InterruptedException
+	 *             如果等待绑定时被中断
+	 */
+	public synchronized ChannelGroup bind(SocketAddress localAddress) throws InterruptedException {
+		ArgumentValidator.notNull(localAddress, "localAddress");
+		getAcceptor();
+		if (listeners == null) {
+			listeners = new DefaultChannelGroup("acceptor-listeners", GlobalEventExecutor.INSTANCE);
+		}
+		bindListeners(localAddress, listeners);
+		return listeners;
+	}
+
+	/**
+	 * 绑定所有监听socket并加入group，失败时关闭group中所有的监听socket
+	 */
+	private void bindListeners(SocketAddress localAddress, ChannelGroup group) throws InterruptedException {
+		int count = getListenerCount();
+		SocketAddress address = localAddress;
+		for (int i = 0; i < count; i++) {
+			ChannelFuture future = acceptor.bind(address).await();
+			if (!future.isSuccess()) {
+				group.close().awaitUninterruptibly();
+				if (future.cause() instanceof RuntimeException)
+					throw (RuntimeException) future.cause();
+				throw new IllegalStateException("failed to bind " + address, future.cause());
+			}
+			Channel channel = future.channel();
+			group.add(channel);
+			address = channel.localAddress();
+		}
+	}
+
+	/**
+	 * <p>
+	 * 得到通过bind()绑定的所有监听channel。如果还没有调用过bind()，返回null。
+	 * </p>
+	 * 
+	 * @return 所有监听channel
+	 */
+	public synchronized ChannelGroup getListeners() {
+		return listeners;
+	}
+
+	/**
+	 * <p>
+	 * 得到服务端使用的worker线程组，可以把它设置给ConnectorBuilder使用的{@link NettyConfig#workerGroup}，使服务端与客户端共用线程。
+	 * 如果还没有生成ServerBootstrap，或者已经关闭，返回null。
+	 * </p>
+	 * 
+	 * @return worker线程组
+	 */
+	public synchronized EventLoopGroup getWorkerGroup() {
+		return workerGroup;
+	}
+
+	/**
+	 * <p>
+	 * 得到所有channel使用的ByteBufAllocator，可用{@link AllocatorHelper#snapshot(ByteBufAllocator)}得到其统计信息。如果还没有生成ServerBootstrap，返回null。
+	 * </p>
+	 * 
+	 * @return 使用的ByteBufAllocator
+	 */
+	public synchronized ByteBufAllocator getAllocator() {
+		return allocator;
+	}
+
+	/**
+	 * <p>
+	 * 得到接受连接时的准入控制，可用于查看当前连接数和拒绝的连接数。如果还没有生成ServerBootstrap，或者NettyConfig中没有设置
+	 * maxConnections、maxConnectionsPerIp和acceptRatePerSecond中的任何一个，返回null。
+	 * </p>
+	 * 
+	 * @return 准入控制
+	 */
+	public synchronized AdmissionControl getAdmissionControl() {
+		return admissionControl;
+	}
+
 	/**
 	 * <p>
-	 * 关闭线程池。如果没有启用或者已经关闭，不会有任何影响(优雅地退出)
+	 * 得到当前接受的连接数。如果还没有生成ServerBootstrap，返回0。
+	 * </p>
+	 * 
+	 * @return 当前的连接数
+	 */
+	public synchronized int getChannelCount() {
+		return drainer == null ? 0 : drainer.size();
+	}
+
+	/**
+	 * <p>
+	 * 排空服务端，用于滚动发布等需要平滑下线的场合：
+	 * </p>
+	 * <ol>
+	 * <li>关闭所有监听socket，不再接受新连接；</li>
+	 * <li>向每个连接发出{@link NettyConfig#goAwayMessage}，通知客户端到别处建立连接；</li>
+	 * <li>每个连接上未完成的请求数(见{@link DrainHelper})降到0后关闭该连接；</li>
+	 * <li>到timeoutMillis时强制关闭剩下的连接。</li>
+	 * </ol>
+	 * <p>
+	 * 该方法不等待，返回的future在所有连接都关闭后完成，结果为排空的统计信息。线程池不会被关闭，可以在future完成后调用shutdownGracefully()。
+	 * 多次调用返回同一个future。
+	 * </p>
+	 * 
+	 * @param timeoutMillis
+	 *            等待未完成的请求的最长时间(毫秒)
+	 * @return 排空完成的future
+	 * @throws IllegalArgumentException
+	 *             如果timeoutMillis<0
+	 */
+	public synchronized Future<DrainResult> drain(long timeoutMillis) {
+		ArgumentValidator.isTrue(timeoutMillis >= 0, "timeoutMillis should be >=0: " + timeoutMillis);
+		closeListeners();
+		if (drainer == null)
+			return GlobalEventExecutor.INSTANCE.newSucceededFuture(new DrainResult(0, 0, 0, 0, 0, 0));
+		return drainer.drain(timeoutMillis);
+	}
+
+	/**
+	 * <p>
+	 * 在不重新生成ServerBootstrap的情况下应用新的参数，用于在运行中调整参数。一般先用{@link #getNettyConfig()}.{@link NettyConfig#copy() copy()}
+	 * 复制当前的参数，修改后再传入。
+	 * </p>
+	 * <p>
+	 * 各参数的生效范围：
+	 * </p>
+	 * <ul>
+	 * <li>tcp_no_delay、socket_keepAlive、send_buffer_size、receiver_buffer_size、socket_soLinger、writeBufferLowWaterMark、
+	 * writeBufferHighWaterMark、writePolicy：立即应用到所有现有的连接，以及之后接受的连接；</li>
+	 * <li>channelInitializer以及它读取的参数(framingMode、maxFrameLength、flushConsolidateAfter等)、recvBufferMin/Initial/Max、taskScheduler、
+	 * trackInFlightRequests：只对之后接受的连接生效；</li>
+	 * <li>goAwayMessage：对之后开始的排空生效；</li>
+	 * <li>reuseAddress、backlog：只有在rebindAddress不为null时，对新的监听socket生效；</li>
+	 * <li>线程、传输方式、allocator、reusePortListeners、流量限制、准入控制和trafficMetrics：不能修改，需要重新生成AcceptorBuilder。</li>
+	 * </ul>
+	 * <p>
+	 * 所有参数先全部检查，任何一个不合法或者修改了不能修改的参数，都抛出IllegalArgumentException，不做任何修改。rebindAddress不为null时，
+	 * 先在rebindAddress上绑定新的监听socket，绑定成功后再关闭原来的监听socket，现有的连接不受影响；绑定失败时同样不做任何修改。
+	 * </p>
+	 * <p>
+	 * 之后{@link #getNettyConfig()}返回newConfig的一个副本，对newConfig的修改不再产生影响。
+	 * </p>
+	 * 
+	 * @param newConfig
+	 *            新的参数
+	 * @param rebindAddress
+	 *            新的监听地址，为null时不重新绑定
+	 * @return 应用了新参数的现有连接数
+	 * @throws IllegalArgumentException
+	 *             如果newConfig为null，或者其中的参数不合法或不能修改
+	 * @throws IllegalStateException
+	 *             如果在rebindAddress上绑定失败
+	 * @throws InterruptedException
+	 *             如果等待绑定时被中断
+	 */
+	public synchronized int reconfigure(NettyConfig newConfig, SocketAddress rebindAddress) throws InterruptedException {
+		ArgumentValidator.notNull(newConfig, "newConfig");
+		NettyConfig applied = newConfig.copy();
+		validate(applied);
+		if (acceptor == null) {
+			config = applied;
+			if (rebindAddress != null)
+				bind(rebindAddress);
+			return 0;
+		}
+		List<String> unchangeable = unchangeableDifferences(config, applied);
+		ArgumentValidator.isTrue(unchangeable.isEmpty(), "cannot be changed without a new AcceptorBuilder: " + unchangeable);
+
+		if (rebindAddress != null) {
+			ChannelGroup group = new DefaultChannelGroup("acceptor-listeners", GlobalEventExecutor.INSTANCE);
+			configureListener(acceptor, applied);
+			try {
+				bindListeners(rebindAddress, group);
+			} catch (RuntimeException | InterruptedException e) {
+				configureListener(acceptor, config);
+				if (config.backlog <= 0)
+					acceptor.option(ChannelOption.SO_BACKLOG, null);
+				throw e;
+			}
+			closeListeners();
+			listeners = group;
+		} else {
+			configureListener(acceptor, applied);
+			if (applied.backlog <= 0)
+				acceptor.option(ChannelOption.SO_BACKLOG, null);
+		}
+
+		configureChild(acceptor, applied);
+		childInitializer.reconfigure(applied);
+		drainer.setGoAwayMessage(applied.goAwayMessage);
+		NettyConfig old = config;
+		config = applied;
+		return applyToChildren(old, applied);
+	}
+
+	/**
+	 * 检查reconfigure()中可以修改的参数
+	 */
+	private static void validate(NettyConfig config) {
+		ArgumentValidator.notNull(config.channelInitializer, "channelInitializer");
+		ArgumentValidator.notNull(config.writePolicy, "writePolicy");
+		ArgumentValidator.notNull(config.taskScheduler, "taskScheduler");
+		ArgumentValidator.notNull(config.framingMode, "framingMode");
+		ArgumentValidator.notNull(config.lengthFieldByteOrder, "lengthFieldByteOrder");
+		ArgumentValidator.isTrue(config.send_buffer_size > 0, "send_buffer_size should be >0: " + config.send_buffer_size);
+		ArgumentValidator.isTrue(config.receiver_buffer_size > 0, "receiver_buffer_size should be >0: "
+				+ config.receiver_buffer_size);
+		ArgumentValidator.isTrue(config.writeBufferLowWaterMark >= 0
+				&& config.writeBufferLowWaterMark <= config.writeBufferHighWaterMark,
+				"should be 0 <= writeBufferLowWaterMark <= writeBufferHighWaterMark: " + config.writeBufferLowWaterMark + ", "
+						+ config.writeBufferHighWaterMark);
+		ArgumentValidator.isTrue(config.maxFrameLength > 0, "maxFrameLength should be >0: " + config.maxFrameLength);
+		int fieldLength = config.lengthFieldLength;
+		ArgumentValidator.isTrue(fieldLength == 1 || fieldLength == 2 || fieldLength == 3 || fieldLength == 4
+				|| fieldLength == 8, "lengthFieldLength should be 1, 2, 3, 4 or 8: " + fieldLength);
+		ArgumentValidator.isTrue(config.flushConsolidateAfter >= 0, "flushConsolidateAfter should be >=0: "
+				+ config.flushConsolidateAfter);
+		ArgumentValidator.isTrue(config.backlog >= 0, "backlog should be >=0: " + config.backlog);
+		CompressionHandler.validate(config);
+		AllocatorHelper.newRecvByteBufAllocator(config);
+	}
+
+	/**
+	 * reconfigure()中不能修改、但与当前值不同的参数名
+	 */
+	private static List<String> unchangeableDifferences(NettyConfig current, NettyConfig config) {
+		List<String> names = new ArrayList<String>();
+		addIfChanged(names, "threadPool", current.threadPool, config.threadPool);
+		addIfChanged(names, "bossThreads", current.bossThreads, config.bossThreads);
+		addIfChanged(names, "workerThreads", current.workerThreads, config.workerThreads);
+		addIfChanged(names, "threadNamePrefix", current.threadNamePrefix, config.threadNamePrefix);
+		addIfChanged(names, "threadPriority", current.threadPriority, config.threadPriority);
+		addIfChanged(names, "daemonThreads", current.daemonThreads, config.daemonThreads);
+		addIfChanged(names, "threadFactory", current.threadFactory, config.threadFactory);
+		addIfChanged(names, "bossGroup", current.bossGroup, config.bossGroup);
+		addIfChanged(names, "workerGroup", current.workerGroup, config.workerGroup);
+		addIfChanged(names, "transportMode", current.transportMode, config.transportMode);
+		addIfChanged(names, "trafficMetrics", current.trafficMetrics, config.trafficMetrics);
+		addIfChanged(names, "readBytesPerSecond", current.readBytesPerSecond, config.readBytesPerSecond);
+		addIfChanged(names, "readBytesPerSecondPerIp", current.readBytesPerSecondPerIp, config.readBytesPerSecondPerIp);
+		addIfChanged(names, "readBytesPerSecondPerChannel", current.readBytesPerSecondPerChannel,
+				config.readBytesPerSecondPerChannel);
+		addIfChanged(names, "readMessagesPerSecond", current.readMessagesPerSecond, config.readMessagesPerSecond);
+		addIfChanged(names, "readMessagesPerSecondPerIp", current.readMessagesPerSecondPerIp,
+				config.readMessagesPerSecondPerIp);
+		addIfChanged(names, "readMessagesPerSecondPerChannel", current.readMessagesPerSecondPerChannel,
+				config.readMessagesPerSecondPerChannel);
+		addIfChanged(names, "maxConnections", current.maxConnections, config.maxConnections);
+		addIfChanged(names, "maxConnectionsPerIp", current.maxConnectionsPerIp, config.maxConnectionsPerIp);
+		addIfChanged(names, "acceptRatePerSecond", current.acceptRatePerSecond, config.acceptRatePerSecond);
+		addIfChanged(names, "allocatorPooled", current.allocatorPooled, config.allocatorPooled);
+		addIfChanged(names, "allocatorPreferDirect", current.allocatorPreferDirect, config.allocatorPreferDirect);
+		addIfChanged(names, "allocatorHeapArenas", current.allocatorHeapArenas, config.allocatorHeapArenas);
+		addIfChanged(names, "allocatorDirectArenas", current.allocatorDirectArenas, config.allocatorDirectArenas);
+		addIfChanged(names, "allocatorPageSize", current.allocatorPageSize, config.allocatorPageSize);
+		addIfChanged(names, "allocatorMaxOrder", current.allocatorMaxOrder, config.allocatorMaxOrder);
+		addIfChanged(names, "allocatorTinyCacheSize", current.allocatorTinyCacheSize, config.allocatorTinyCacheSize);
+		addIfChanged(names, "allocatorSmallCacheSize", current.allocatorSmallCacheSize, config.allocatorSmallCacheSize);
+		addIfChanged(names, "allocatorNormalCacheSize", current.allocatorNormalCacheSize, config.allocatorNormalCacheSize);
+		addIfChanged(names, "reusePortListeners", current.reusePortListeners, config.reusePortListeners);
+		addIfChanged(names, "tls", current.tls, config.tls);
+		addIfChanged(names, "tlsCertChainFile", current.tlsCertChainFile, config.tlsCertChainFile);
+		addIfChanged(names, "tlsKeyFile", current.tlsKeyFile, config.tlsKeyFile);
+		addIfChanged(names, "tlsKeyPassword", current.tlsKeyPassword, config.tlsKeyPassword);
+		addIfChanged(names, "tlsTrustCertFile", current.tlsTrustCertFile, config.tlsTrustCertFile);
+		if (!Arrays.equals(current.tlsProtocols, config.tlsProtocols))
+			names.add("tlsProtocols");
+		addIfChanged(names, "tlsSessionCacheSize", current.tlsSessionCacheSize, config.tlsSessionCacheSize);
+		addIfChanged(names, "tlsSessionTimeoutSeconds", current.tlsSessionTimeoutSeconds, config.tlsSessionTimeoutSeconds);
+		addIfChanged(names, "tlsSessionTickets", current.tlsSessionTickets, config.tlsSessionTickets);
+		addIfChanged(names, "tlsHandshakeTimeoutMillis", current.tlsHandshakeTimeoutMillis,
+				config.tlsHandshakeTimeoutMillis);
+		addIfChanged(names, "tlsOffloadThreads", current.tlsOffloadThreads, config.tlsOffloadThreads);
+		addIfChanged(names, "tlsStats", current.tlsStats, config.tlsStats);
+		return names;
+	}
+
+	private static void addIfChanged(List<String> names, String name, Object current, Object value) {
+		if (!Objects.equals(current, value))
+			names.add(name);
+	}
+
+	/**
+	 * 把有变化的socket参数、水位线和WritePolicy应用到所有现有的连接上，返回成功应用的连接数
+	 */
+	private int applyToChildren(NettyConfig old, NettyConfig config) {
+		boolean noDelay = old.tcp_no_delay != config.tcp_no_delay;
+		boolean keepAlive = old.socket_keepAlive != config.socket_keepAlive;
+		boolean sendBuffer = old.send_buffer_size != config.send_buffer_size;
+		boolean receiveBuffer = old.receiver_buffer_size != config.receiver_buffer_size;
+		boolean linger = old.socket_soLinger != config.socket_soLinger;
+		WriteBufferWaterMark waterMark = old.writeBufferLowWaterMark == config.writeBufferLowWaterMark
+				&& old.writeBufferHighWaterMark == config.writeBufferHighWaterMark ? null : new WriteBufferWaterMark(
+				config.writeBufferLowWaterMark, config.writeBufferHighWaterMark);
+		int applied = 0;
+		for (Channel channel : drainer.channels()) {
+			try {
+				ChannelConfig channelConfig = channel.config();
+				if (noDelay)
+					channelConfig.setOption(ChannelOption.TCP_NODELAY, config.tcp_no_delay);
+				if (keepAlive)
+					channelConfig.setOption(ChannelOption.SO_KEEPALIVE, config.socket_keepAlive);
+				if (sendBuffer)
+					channelConfig.setOption(ChannelOption.SO_SNDBUF, config.send_buffer_size);
+				if (receiveBuffer)
+					channelConfig.setOption(ChannelOption.SO_RCVBUF, config.receiver_buffer_size);
+				if (linger)
+					channelConfig.setOption(ChannelOption.SO_LINGER, config.socket_soLinger);
+				if (waterMark != null)
+					channelConfig.setWriteBufferWaterMark(waterMark);
+				channel.attr(WriteHelper.KEY_WRITE_POLICY).set(config.writePolicy);
+				applied++;
+			} catch (ChannelException e) {
+				// 连接已经关闭
+			}
+		}
+		return applied;
+	}
+
+	/**
+	 * 实际绑定的监听socket数量。只有epoll支持SO_REUSEPORT
+	 */
+	private int getListenerCount() {
+		return transportMode == TransportMode.EPOLL ? Math.max(1, config.reusePortListeners) : 1;
+	}
+
+	private void closeListeners() {
+		if (listeners != null) {
+			listeners.close();
+			listeners = null;
+		}
+	}
+
+	/**
+	 * <p>
+	 * 关闭线程池。如果没有启用或者已经关闭，不会有任何影响(优雅地退出)。由NettyConfig从外部提供的线程组不会被关闭。
 	 * </p>
 	 * 
 	 * @see EventLoopGroup#shutdownGracefully()
 	 */
 	public synchronized void shutdownGracefully() {
+		closeListeners();
 		if (bossGroup != null) {
-			bossGroup.shutdownGracefully();
+			if (!externalBossGroup)
+				bossGroup.shutdownGracefully();
 			bossGroup = null;
 		}
 		if (workerGroup != null) {
-			workerGroup.shutdownGracefully();
+			if (!externalWorkerGroup)
+				workerGroup.shutdownGracefully();
 			workerGroup = null;
 		}
+		if (tls != null) {
+			tls.shutdownGracefully();
+			tls = null;
+		}
 	}
 
 	/**
 	 * <p>
-	 * 立刻关闭线程池。池中未运行的任务将会被取消。
+	 * 立刻关闭线程池。池中未运行的任务将会被取消。由NettyConfig从外部提供的线程组不会被关闭。
 	 * </p>
 	 * 
 	 * @see EventLoopGroup#shutdownNow()
 	 */
 	@SuppressWarnings("deprecation")
 	public synchronized void shutdownNow() {
+		closeListeners();
 		if (bossGroup != null) {
-			bossGroup.shutdownNow();
+			if (!externalBossGroup)
+				bossGroup.shutdownNow();
 			bossGroup = null;
 		}
 		if (workerGroup != null) {
-			workerGroup.shutdownNow();
+			if (!externalWorkerGroup)
+				workerGroup.shutdownNow();
 			workerGroup = null;
 		}
+		if (tls != null) {
+			tls.shutdownNow();
+			tls = null;
+		}
 	}
 
 	/**
@@ -130,12 +635,24 @@ public class AcceptorBuilder {
 
 	/**
 	 * <p>
-	 * 得到持有的NettyConfig对象。对于该config的修改不会对已经生成的ServerBootstrap对象产生影响。
+	 * 得到实际使用的传输方式(NIO或EPOLL)。如果还没有生成ServerBootstrap，返回null。
+	 * </p>
+	 * 
+	 * @return 实际使用的传输方式
+	 */
+	public synchronized TransportMode getTransportMode() {
+		return transportMode;
+	}
+
+	/**
+	 * <p>
+	 * 得到持有的NettyConfig对象。对于该config的修改不会对已经生成的ServerBootstrap对象产生影响，运行中修改参数请使用
+	 * {@link #reconfigure(NettyConfig, SocketAddress)}。
 	 * </p>
 	 * 
 	 * @return 得到持有的NettyConfig对象
 	 */
-	public NettyConfig getNettyConfig() {
+	public synchronized NettyConfig getNettyConfig() {
 		return config;
 	}
 }
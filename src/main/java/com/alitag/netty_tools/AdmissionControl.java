@@ -0,0 +1,237 @@
+package com.alitag.netty_tools;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.unix.UnixChannel;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+
+/**
+ * <p>
+ * 服务端接受连接时的准入控制：限制总连接数({@link NettyConfig#maxConnections})、同一个对方ip的连接数({@link NettyConfig#maxConnectionsPerIp})
+ * 和每秒接受的连接数({@link NettyConfig#acceptRatePerSecond})。
+ * </p>
+ * <p>
+ * 该handler位于监听channel的pipeline中，在ServerBootstrap把新连接注册到worker线程、调用childHandler之前运行。被拒绝的连接以SO_LINGER为0直接关闭(对方收到RST)，
+ * 不注册、不建立pipeline，也不占用TIME_WAIT。各种原因的拒绝次数都会被统计。
+ * </p>
+ * <p>
+ * 线程安全：该类线程安全。使用SO_REUSEPORT绑定多个监听socket时，所有boss线程共用一个实例。
+ * </p>
+ * 
+ * @author gchangyi
+ * @version 1.0
+ */
+@Sharable
+public class AdmissionControl extends ChannelInboundHandlerAdapter {
+
+	static final String NAME = "admission_control";
+
+	private final int maxConnections;
+
+	private final int maxConnectionsPerIp;
+
+	private final TokenBucket acceptRate;
+
+	private final AtomicInteger connections = new AtomicInteger();
+
+	private final ConcurrentHashMap<String, AtomicInteger> ipConnections = new ConcurrentHashMap<String, AtomicInteger>();
+
+	private final LongAdder accepted = new LongAdder();
+
+	private final LongAdder rejectedByMaxConnections = new LongAdder();
+
+	private final LongAdder rejectedByMaxConnectionsPerIp = new LongAdder();
+
+	private final LongAdder rejectedByAcceptRate = new LongAdder();
+
+	private final BiFunction<String, AtomicInteger, AtomicInteger> decrease = new BiFunction<String, AtomicInteger, AtomicInteger>() {
+		@Override
+		public AtomicInteger apply(String ip, AtomicInteger count) {
+			return count.decrementAndGet() <= 0 ? null : count;
+		}
+	};
+
+	private AdmissionControl(NettyConfig config) {
+		this.maxConnections = config.maxConnections;
+		this.maxConnectionsPerIp = config.maxConnectionsPerIp;
+		this.acceptRate = config.acceptRatePerSecond > 0 ? new TokenBucket(config.acceptRatePerSecond) : null;
+	}
+
+	/**
+	 * 根据config生成AdmissionControl，没有设置任何限制时返回null
+	 * 
+	 * @throws IllegalArgumentException
+	 *             如果有小于0的限制
+	 */
+	static AdmissionControl of(NettyConfig config) {
+		ArgumentValidator.isTrue(config.maxConnections >= 0, "maxConnections should be >=0: " + config.maxConnections);
+		ArgumentValidator.isTrue(config.maxConnectionsPerIp >= 0, "maxConnectionsPerIp should be >=0: "
+				+ config.maxConnectionsPerIp);
+		ArgumentValidator.isTrue(config.acceptRatePerSecond >= 0, "acceptRatePerSecond should be >=0: "
+				+ config.acceptRatePerSecond);
+		if (config.maxConnections == 0 && config.maxConnectionsPerIp == 0 && config.acceptRatePerSecond == 0)
+			return null;
+		return new AdmissionControl(config);
+	}
+
+	@Override
+	public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+		if (!(msg instanceof Channel)) {
+			ctx.fireChannelRead(msg);
+			return;
+		}
+		Channel child = (Channel) msg;
+		// 先检查连接数，只有会被接受的连接才消耗速率的令牌
+		int current = connections.incrementAndGet();
+		if (maxConnections > 0 && current > maxConnections) {
+			connections.decrementAndGet();
+			rejectedByMaxConnections.increment();
+			reject(child);
+			return;
+		}
+		String ip = null;
+		if (maxConnectionsPerIp > 0) {
+			ip = ChannelHelper.resolveHostAddress(ChannelHelper.resolveRemoteAddress(child));
+			if (!increaseIp(ip)) {
+				connections.decrementAndGet();
+				rejectedByMaxConnectionsPerIp.increment();
+				reject(child);
+				return;
+			}
+		}
+		if (acceptRate != null && !acceptRate.tryConsume(1)) {
+			connections.decrementAndGet();
+			if (ip != null)
+				ipConnections.computeIfPresent(ip, decrease);
+			rejectedByAcceptRate.increment();
+			reject(child);
+			return;
+		}
+		accepted.increment();
+		child.closeFuture().addListener(new Release(ip));
+		ctx.fireChannelRead(child);
+	}
+
+	/**
+	 * 增加ip的连接数，已经达到上限时不增加并返回false。在compute中进行，与连接关闭时的减少和删除互斥
+	 */
+	private boolean increaseIp(String ip) {
+		final boolean[] admitted = new boolean[1];
+		ipConnections.compute(ip, new BiFunction<String, AtomicInteger, AtomicInteger>() {
+			@Override
+			public AtomicInteger apply(String key, AtomicInteger count) {
+				if (count == null)
+					count = new AtomicInteger();
+				if (count.get() < maxConnectionsPerIp) {
+					count.incrementAndGet();
+					admitted[0] = true;
+				}
+				return count;
+			}
+		});
+		return admitted[0];
+	}
+
+	/**
+	 * @return 当前的连接数(通过准入控制且尚未关闭的)
+	 */
+	public int getConnections() {
+		return connections.get();
+	}
+
+	/**
+	 * @return 当前有连接的对方ip数，不限制每个ip的连接数时为0
+	 */
+	public int getIpCount() {
+		return ipConnections.size();
+	}
+
+	/**
+	 * @return 通过准入控制的连接数
+	 */
+	public long getAccepted() {
+		return accepted.sum();
+	}
+
+	/**
+	 * @return 因为总连接数达到上限而拒绝的连接数
+	 */
+	public long getRejectedByMaxConnections() {
+		return rejectedByMaxConnections.sum();
+	}
+
+	/**
+	 * @return 因为同一个ip的连接数达到上限而拒绝的连接数
+	 */
+	public long getRejectedByMaxConnectionsPerIp() {
+		return rejectedByMaxConnectionsPerIp.sum();
+	}
+
+	/**
+	 * @return 因为每秒接受的连接数超过限制而拒绝的连接数
+	 */
+	public long getRejectedByAcceptRate() {
+		return rejectedByAcceptRate.sum();
+	}
+
+	/**
+	 * @return 拒绝的连接总数
+	 */
+	public long getRejected() {
+		return rejectedByMaxConnections.sum() + rejectedByMaxConnectionsPerIp.sum() + rejectedByAcceptRate.sum();
+	}
+
+	@Override
+	public String toString() {
+		return "connections=" + getConnections() + ", accepted=" + getAccepted() + ", rejectedByMaxConnections="
+				+ getRejectedByMaxConnections() + ", rejectedByMaxConnectionsPerIp=" + getRejectedByMaxConnectionsPerIp()
+				+ ", rejectedByAcceptRate=" + getRejectedByAcceptRate();
+	}
+
+	private static void reject(Channel child) {
+		try {
+			child.config().setOption(ChannelOption.SO_LINGER, 0);
+		} catch (Exception e) {
+			// 设置失败时仍然关闭
+		}
+		if (child instanceof UnixChannel) {
+			// epoll的closeForcibly()要求channel已经注册，直接关闭文件描述符
+			try {
+				((UnixChannel) child).fd().close();
+			} catch (IOException e) {
+				// 关闭失败时什么也做不了
+			}
+		} else {
+			child.unsafe().closeForcibly();
+		}
+	}
+
+	/**
+	 * 连接关闭时减少连接数
+	 */
+	private final class Release implements ChannelFutureListener {
+
+		private final String ip;
+
+		Release(String ip) {
+			this.ip = ip;
+		}
+
+		@Override
+		public void operationComplete(ChannelFuture future) throws Exception {
+			connections.decrementAndGet();
+			if (ip != null)
+				ipConnections.computeIfPresent(ip, decrease);
+		}
+	}
+}
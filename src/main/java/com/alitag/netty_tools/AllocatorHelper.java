@@ -0,0 +1,108 @@
+package com.alitag.netty_tools;
+
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufAllocatorMetric;
+import io.netty.buffer.ByteBufAllocatorMetricProvider;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.AdaptiveRecvByteBufAllocator;
+import io.netty.channel.RecvByteBufAllocator;
+
+/**
+ * <p>
+ * 根据NettyConfig生成ByteBufAllocator和RecvByteBufAllocator，并可以得到allocator的统计信息。
+ * </p>
+ * <p>
+ * 线程安全：该类线程安全，因为它只提供了无状态的工具函数。
+ * </p>
+ * 
+ * @author gchangyi
+ * @version 1.0
+ */
+public class AllocatorHelper {
+
+	/**
+	 * 私有构造函数。防止被实例化。
+	 */
+	private AllocatorHelper() {
+		// do nothing
+	}
+
+	/**
+	 * <p>
+	 * 根据NettyConfig中allocator开头的参数生成ByteBufAllocator。如果使用池化的allocator且所有参数都是默认值，返回共享的PooledByteBufAllocator.DEFAULT。
+	 * </p>
+	 * 
+	 * @param config
+	 *            当前的配置
+	 * @return 生成的ByteBufAllocator
+	 * @throws IllegalArgumentException
+	 *             如果config为null，或者参数不合法(见PooledByteBufAllocator的构造函数)
+	 */
+	public static ByteBufAllocator newAllocator(NettyConfig config) {
+		ArgumentValidator.notNull(config, "config");
+		if (!config.allocatorPooled) {
+			return config.allocatorPreferDirect ? UnpooledByteBufAllocator.DEFAULT : new UnpooledByteBufAllocator(false);
+		}
+		if (config.allocatorPreferDirect && config.allocatorHeapArenas < 0 && config.allocatorDirectArenas < 0
+				&& config.allocatorPageSize < 0 && config.allocatorMaxOrder < 0 && config.allocatorTinyCacheSize < 0
+				&& config.allocatorSmallCacheSize < 0 && config.allocatorNormalCacheSize < 0) {
+			return PooledByteBufAllocator.DEFAULT;
+		}
+		return new PooledByteBufAllocator(config.allocatorPreferDirect, //
+				orDefault(config.allocatorHeapArenas, PooledByteBufAllocator.defaultNumHeapArena()), //
+				orDefault(config.allocatorDirectArenas, PooledByteBufAllocator.defaultNumDirectArena()), //
+				orDefault(config.allocatorPageSize, PooledByteBufAllocator.defaultPageSize()), //
+				orDefault(config.allocatorMaxOrder, PooledByteBufAllocator.defaultMaxOrder()), //
+				orDefault(config.allocatorTinyCacheSize, PooledByteBufAllocator.defaultTinyCacheSize()), //
+				orDefault(config.allocatorSmallCacheSize, PooledByteBufAllocator.defaultSmallCacheSize()), //
+				orDefault(config.allocatorNormalCacheSize, PooledByteBufAllocator.defaultNormalCacheSize()), //
+				true);
+	}
+
+	/**
+	 * <p>
+	 * 根据NettyConfig中recvBuffer开头的参数生成AdaptiveRecvByteBufAllocator。
+	 * </p>
+	 * 
+	 * @param config
+	 *            当前的配置
+	 * @return 生成的RecvByteBufAllocator
+	 * @throws IllegalArgumentException
+	 *             如果config为null，或者不满足 0 < recvBufferMin <= recvBufferInitial <= recvBufferMax
+	 */
+	public static RecvByteBufAllocator newRecvByteBufAllocator(NettyConfig config) {
+		ArgumentValidator.notNull(config, "config");
+		ArgumentValidator.isTrue(config.recvBufferMin > 0 && config.recvBufferMin <= config.recvBufferInitial
+				&& config.recvBufferInitial <= config.recvBufferMax, "should be 0 < recvBufferMin <= recvBufferInitial <= recvBufferMax: "
+				+ config.recvBufferMin + ", " + config.recvBufferInitial + ", " + config.recvBufferMax);
+		return new AdaptiveRecvByteBufAllocator(config.recvBufferMin, config.recvBufferInitial, config.recvBufferMax);
+	}
+
+	/**
+	 * <p>
+	 * 得到allocator当前的统计信息。
+	 * </p>
+	 * 
+	 * @param allocator
+	 *            欲统计的allocator，通常由AcceptorBuilder.getAllocator()或ConnectorBuilder.getAllocator()得到
+	 * @return 统计信息的快照
+	 * @throws IllegalArgumentException
+	 *             如果allocator为null
+	 */
+	public static AllocatorSnapshot snapshot(ByteBufAllocator allocator) {
+		ArgumentValidator.notNull(allocator, "allocator");
+		if (allocator instanceof PooledByteBufAllocator) {
+			return new AllocatorSnapshot(((PooledByteBufAllocator) allocator).metric());
+		}
+		if (allocator instanceof ByteBufAllocatorMetricProvider) {
+			ByteBufAllocatorMetric metric = ((ByteBufAllocatorMetricProvider) allocator).metric();
+			return new AllocatorSnapshot(metric.usedHeapMemory(), metric.usedDirectMemory());
+		}
+		return new AllocatorSnapshot(-1, -1);
+	}
+
+	private static int orDefault(int value, int defaultValue) {
+		return value < 0 ? defaultValue : value;
+	}
+}
@@ -0,0 +1,211 @@
+package com.alitag.netty_tools;
+
+import io.netty.buffer.PoolArenaMetric;
+import io.netty.buffer.PooledByteBufAllocatorMetric;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <p>
+ * ByteBufAllocator在某一时刻的统计信息，由{@link AllocatorHelper#snapshot(io.netty.buffer.ByteBufAllocator)}生成。
+ * </p>
+ * <p>
+ * 对于非池化的allocator，只有usedHeapMemory和usedDirectMemory有效，其它数值为0，arena列表为空。
+ * </p>
+ * <p>
+ * 线程安全：该类线程安全，因为它是不可变类。
+ * </p>
+ * 
+ * @author gchangyi
+ * @version 1.0
+ */
+public class AllocatorSnapshot {
+
+	private final boolean pooled;
+	private final long usedHeapMemory;
+	private final long usedDirectMemory;
+	private final int numThreadLocalCaches;
+	private final int chunkSize;
+	private final int tinyCacheSize;
+	private final int smallCacheSize;
+	private final int normalCacheSize;
+	private final List<ArenaSnapshot> heapArenas;
+	private final List<ArenaSnapshot> directArenas;
+
+	AllocatorSnapshot(long usedHeapMemory, long usedDirectMemory) {
+		this.pooled = false;
+		this.usedHeapMemory = usedHeapMemory;
+		this.usedDirectMemory = usedDirectMemory;
+		this.numThreadLocalCaches = 0;
+		this.chunkSize = 0;
+		this.tinyCacheSize = 0;
+		this.smallCacheSize = 0;
+		this.normalCacheSize = 0;
+		this.heapArenas = Collections.emptyList();
+		this.directArenas = Collections.emptyList();
+	}
+
+	AllocatorSnapshot(PooledByteBufAllocatorMetric metric) {
+		this.pooled = true;
+		this.usedHeapMemory = metric.usedHeapMemory();
+		this.usedDirectMemory = metric.usedDirectMemory();
+		this.numThreadLocalCaches = metric.numThreadLocalCaches();
+		this.chunkSize = metric.chunkSize();
+		this.tinyCacheSize = metric.tinyCacheSize();
+		this.smallCacheSize = metric.smallCacheSize();
+		this.normalCacheSize = metric.normalCacheSize();
+		this.heapArenas = toSnapshots(metric.heapArenas());
+		this.directArenas = toSnapshots(metric.directArenas());
+	}
+
+	private static List<ArenaSnapshot> toSnapshots(List<PoolArenaMetric> arenas) {
+		List<ArenaSnapshot> result = new ArrayList<ArenaSnapshot>(arenas.size());
+		for (PoolArenaMetric arena : arenas) {
+			result.add(new ArenaSnapshot(arena));
+		}
+		return Collections.unmodifiableList(result);
+	}
+
+	/** @return 是否是池化的allocator */
+	public boolean isPooled() {
+		return pooled;
+	}
+
+	/** @return 已使用的堆内存(字节)，池化时为所有chunk的大小。不可得时为-1 */
+	public long getUsedHeapMemory() {
+		return usedHeapMemory;
+	}
+
+	/** @return 已使用的直接内存(字节)，池化时为所有chunk的大小。不可得时为-1 */
+	public long getUsedDirectMemory() {
+		return usedDirectMemory;
+	}
+
+	/** @return 线程本地缓存的数量 */
+	public int getNumThreadLocalCaches() {
+		return numThreadLocalCaches;
+	}
+
+	/** @return chunk的大小(字节) */
+	public int getChunkSize() {
+		return chunkSize;
+	}
+
+	/** @return 每个线程本地缓存中tiny缓存的大小 */
+	public int getTinyCacheSize() {
+		return tinyCacheSize;
+	}
+
+	/** @return 每个线程本地缓存中small缓存的大小 */
+	public int getSmallCacheSize() {
+		return smallCacheSize;
+	}
+
+	/** @return 每个线程本地缓存中normal缓存的大小 */
+	public int getNormalCacheSize() {
+		return normalCacheSize;
+	}
+
+	/** @return 各个堆内存arena的统计信息 */
+	public List<ArenaSnapshot> getHeapArenas() {
+		return heapArenas;
+	}
+
+	/** @return 各个直接内存arena的统计信息 */
+	public List<ArenaSnapshot> getDirectArenas() {
+		return directArenas;
+	}
+
+	/**
+	 * <p>
+	 * 显示出统计信息，格式为每行一个参数，每行形如：
+	 * </p>
+	 * <p>
+	 * param: value
+	 * </p>
+	 * 
+	 * @return 统计信息
+	 */
+	@Override
+	public String toString() {
+		StringBuilder sb = new StringBuilder();
+		sb.append("pooled: " + pooled).append(System.lineSeparator());
+		sb.append("usedHeapMemory: " + usedHeapMemory).append(System.lineSeparator());
+		sb.append("usedDirectMemory: " + usedDirectMemory).append(System.lineSeparator());
+		sb.append("numThreadLocalCaches: " + numThreadLocalCaches).append(System.lineSeparator());
+		sb.append("chunkSize: " + chunkSize).append(System.lineSeparator());
+		sb.append("cacheSize(tiny/small/normal): " + tinyCacheSize + "/" + smallCacheSize + "/" + normalCacheSize);
+		for (int i = 0; i < heapArenas.size(); i++) {
+			sb.append(System.lineSeparator()).append("heapArena[" + i + "]: " + heapArenas.get(i));
+		}
+		for (int i = 0; i < directArenas.size(); i++) {
+			sb.append(System.lineSeparator()).append("directArena[" + i + "]: " + directArenas.get(i));
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * <p>
+	 * 一个arena在某一时刻的统计信息。
+	 * </p>
+	 * <p>
+	 * arena的分配次数不包括由线程本地缓存直接满足的分配，所以在请求量相近时，arena分配次数越少说明缓存命中越多。
+	 * </p>
+	 */
+	public static class ArenaSnapshot {
+		private final int numThreadCaches;
+		private final long numAllocations;
+		private final long numDeallocations;
+		private final long numHugeAllocations;
+		private final long numActiveAllocations;
+		private final long numActiveBytes;
+
+		ArenaSnapshot(PoolArenaMetric arena) {
+			this.numThreadCaches = arena.numThreadCaches();
+			this.numAllocations = arena.numAllocations();
+			this.numDeallocations = arena.numDeallocations();
+			this.numHugeAllocations = arena.numHugeAllocations();
+			this.numActiveAllocations = arena.numActiveAllocations();
+			this.numActiveBytes = arena.numActiveBytes();
+		}
+
+		/** @return 使用该arena的线程本地缓存数 */
+		public int getNumThreadCaches() {
+			return numThreadCaches;
+		}
+
+		/** @return 在arena中(而不是在线程本地缓存中)完成的分配次数 */
+		public long getNumAllocations() {
+			return numAllocations;
+		}
+
+		/** @return 归还到arena的次数 */
+		public long getNumDeallocations() {
+			return numDeallocations;
+		}
+
+		/** @return 超过chunk大小、不池化的分配次数 */
+		public long getNumHugeAllocations() {
+			return numHugeAllocations;
+		}
+
+		/** @return 当前未释放的分配数 */
+		public long getNumActiveAllocations() {
+			return numActiveAllocations;
+		}
+
+		/** @return 该arena当前占用的字节数 */
+		public long getNumActiveBytes() {
+			return numActiveBytes;
+		}
+
+		@Override
+		public String toString() {
+			return "threadCaches=" + numThreadCaches + ", allocations=" + numAllocations + ", deallocations=" + numDeallocations
+					+ ", hugeAllocations=" + numHugeAllocations + ", activeAllocations=" + numActiveAllocations + ", activeBytes="
+					+ numActiveBytes;
+		}
+	}
+}
@@ -0,0 +1,154 @@
+package com.alitag.netty_tools;
+
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.util.Timeout;
+import io.netty.util.TimerTask;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * <p>
+ * 在指定时间后自动断开channel的handler。所有连接共用{@link SharedWheelTimer}，每个连接只持有一个时间轮句柄和一个时间戳。
+ * </p>
+ * <p>
+ * 如果resetOnActivity为true，则每次读(一轮read结束时)或flush都会把断开的期限向后推，但并不会重新调度定时器：只记录最后活动时间，定时器到期时再根据最后活动时间决定是断开还是按剩余时间重新加入时间轮。
+ * 同一格中到期的连接由时间轮一次性批量处理。
+ * </p>
+ * <p>
+ * 通常不需要直接使用该类，而是通过{@link ChannelTaskHelper#setIdleDisconnect(io.netty.channel.Channel, int)}、
+ * {@link ChannelTaskHelper#setAutoDisconnect(io.netty.channel.Channel, int)}和{@link ChannelTaskHelper#cancelAutoDisconnect(io.netty.channel.Channel)}
+ * 来使用。
+ * </p>
+ * <p>
+ * 线程安全：该类线程安全。最后活动时间在EventLoop中写入，在时间轮线程中读取。
+ * </p>
+ * 
+ * @author gchangyi
+ * @version 1.0
+ */
+public class AutoDisconnectHandler extends ChannelDuplexHandler implements TimerTask {
+
+	private static final AtomicLongFieldUpdater<AutoDisconnectHandler> LAST_ACTIVITY_UPDATER = AtomicLongFieldUpdater
+			.newUpdater(AutoDisconnectHandler.class, "lastActivityNanos");
+
+	private final long timeoutNanos;
+
+	private final boolean resetOnActivity;
+
+	private volatile long lastActivityNanos;
+
+	private volatile Timeout timeout;
+
+	private volatile boolean stopped;
+
+	private volatile ChannelHandlerContext ctx;
+
+	/**
+	 * <p>
+	 * 构造函数。
+	 * </p>
+	 * 
+	 * @param timeout
+	 *            多久之后断开
+	 * @param unit
+	 *            timeout的单位
+	 * @param resetOnActivity
+	 *            为true时，timeout表示空闲时间，每次读写都会重新计时；为false时，timeout是从连接建立(或加入该handler)开始的固定时间
+	 * @throws IllegalArgumentException
+	 *             如果timeout<0，或者unit为null
+	 */
+	public AutoDisconnectHandler(long timeout, TimeUnit unit, boolean resetOnActivity) {
+		ArgumentValidator.isTrue(timeout >= 0, "timeout should be >=0: " + timeout);
+		ArgumentValidator.notNull(unit, "unit");
+		this.timeoutNanos = unit.toNanos(timeout);
+		this.resetOnActivity = resetOnActivity;
+	}
+
+	/**
+	 * <p>
+	 * 得到断开前还剩余的时间(毫秒)。如果已经到期，返回0。
+	 * </p>
+	 * 
+	 * @return 剩余的时间(毫秒)
+	 */
+	public long getRemainingMillis() {
+		return Math.max(0, TimeUnit.NANOSECONDS.toMillis(lastActivityNanos + timeoutNanos - System.nanoTime()));
+	}
+
+	@Override
+	public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+		this.ctx = ctx;
+		if (ctx.channel().isActive())
+			start();
+	}
+
+	@Override
+	public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+		stop();
+	}
+
+	@Override
+	public void channelActive(ChannelHandlerContext ctx) throws Exception {
+		start();
+		ctx.fireChannelActive();
+	}
+
+	@Override
+	public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+		stop();
+		ctx.fireChannelInactive();
+	}
+
+	@Override
+	public void channelReadComplete(ChannelHandlerContext ctx) throws Exception {
+		touch();
+		ctx.fireChannelReadComplete();
+	}
+
+	@Override
+	public void flush(ChannelHandlerContext ctx) throws Exception {
+		touch();
+		ctx.flush();
+	}
+
+	public void run(Timeout timeout) throws Exception {
+		if (stopped || this.timeout != timeout)
+			return;
+		long remaining = lastActivityNanos + timeoutNanos - System.nanoTime();
+		if (remaining <= 0) {
+			this.timeout = null;
+			ctx.channel().close();
+		} else {
+			schedule(remaining);
+		}
+	}
+
+	private void touch() {
+		if (resetOnActivity)
+			LAST_ACTIVITY_UPDATER.lazySet(this, System.nanoTime());
+	}
+
+	private void start() {
+		if (stopped || timeout != null)
+			return;
+		lastActivityNanos = System.nanoTime();
+		schedule(timeoutNanos);
+	}
+
+	private void schedule(long delayNanos) {
+		Timeout t = SharedWheelTimer.get().newTimeout(this, delayNanos, TimeUnit.NANOSECONDS);
+		timeout = t;
+		if (stopped)
+			t.cancel();
+	}
+
+	private void stop() {
+		stopped = true;
+		Timeout t = timeout;
+		timeout = null;
+		if (t != null)
+			t.cancel();
+	}
+}
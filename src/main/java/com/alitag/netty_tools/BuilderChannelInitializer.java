@@ -0,0 +1,149 @@
+package com.alitag.netty_tools;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelConfig;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.RecvByteBufAllocator;
+import io.netty.channel.WriteBufferWaterMark;
+
+/**
+ * <p>
+ * AcceptorBuilder和ConnectorBuilder实际使用的ChannelInitializer。先加入工具类需要的handler(启用TLS时包括SslHandler)，再加入NettyConfig中指定的channelInitializer。
+ * </p>
+ * <p>
+ * ServerBootstrap在绑定监听socket时复制childOption和childAttr，之后的修改对该监听socket不再生效。因此AcceptorBuilder.reconfigure()之后，
+ * 由该类在每个新连接上重新设置socket参数、RecvByteBufAllocator、水位线、taskScheduler和writePolicy。
+ * </p>
+ * <p>
+ * 线程安全：该类线程安全。
+ * </p>
+ * 
+ * @author gchangyi
+ * @version 1.0
+ */
+class BuilderChannelInitializer extends ChannelInitializer<Channel> {
+
+	/** 可以通过AcceptorBuilder.reconfigure()替换，只影响之后建立的连接 */
+	private volatile ChildSettings settings;
+
+	private final TrafficShaper trafficShaper;
+
+	private final ChannelDrainer drainer;
+
+	private final TlsSupport tls;
+
+	/**
+	 * @param tls
+	 *            加入SslHandler，为null时不使用TLS
+	 */
+	BuilderChannelInitializer(NettyConfig config, TlsSupport tls) {
+		this(config, null, null, tls);
+	}
+
+	/**
+	 * @param trafficShaper
+	 *            限制读流量，为null时不限制
+	 * @param drainer
+	 *            记录所有连接以便排空，为null时不记录
+	 * @param tls
+	 *            加入SslHandler，为null时不使用TLS
+	 */
+	BuilderChannelInitializer(NettyConfig config, TrafficShaper trafficShaper, ChannelDrainer drainer, TlsSupport tls) {
+		ArgumentValidator.notNull(config.channelInitializer, "channelInitializer");
+		this.settings = new ChildSettings(config.channelInitializer, null);
+		this.trafficShaper = trafficShaper;
+		this.drainer = drainer;
+		this.tls = tls;
+	}
+
+	/**
+	 * 之后建立的连接使用config中的channelInitializer和连接参数
+	 */
+	void reconfigure(NettyConfig config) {
+		this.settings = new ChildSettings(config.channelInitializer, config);
+	}
+
+	@Override
+	protected void initChannel(Channel channel) throws Exception {
+		ChildSettings current = settings;
+		current.apply(channel);
+		ChannelPipeline pipeline = channel.pipeline();
+		pipeline.addLast(ConnectionDescriptorHandler.NAME, ConnectionDescriptorHandler.INSTANCE);
+		pipeline.addLast(WritabilityMonitor.NAME, new WritabilityMonitor());
+		if (trafficShaper != null) {
+			TrafficShapingHandler handler = new TrafficShapingHandler(trafficShaper);
+			channel.attr(TrafficShapingHandler.KEY_HANDLER).set(handler);
+			pipeline.addFirst(TrafficShapingHandler.NAME, handler);
+		}
+		if (drainer != null) {
+			drainer.register(channel);
+		}
+		if (tls != null) {
+			tls.initChannel(channel);
+		}
+		pipeline.addLast(current.channelInitializer);
+	}
+
+	/**
+	 * 新连接使用的ChannelInitializer和连接参数，替换时整体替换。参数在生成时复制，之后对NettyConfig的修改不产生影响
+	 */
+	private static final class ChildSettings {
+		final ChannelInitializer<?> channelInitializer;
+
+		/** 为false时使用Bootstrap中设置的参数 */
+		private final boolean override;
+
+		private final boolean keepAlive;
+
+		private final boolean noDelay;
+
+		private final int sendBufferSize;
+
+		private final int receiveBufferSize;
+
+		private final int soLinger;
+
+		private final RecvByteBufAllocator recvBufAllocator;
+
+		private final WriteBufferWaterMark waterMark;
+
+		private final TaskSchedulerType taskScheduler;
+
+		private final WritePolicy writePolicy;
+
+		ChildSettings(ChannelInitializer<?> channelInitializer, NettyConfig config) {
+			this.channelInitializer = channelInitializer;
+			this.override = config != null;
+			this.keepAlive = override && config.socket_keepAlive;
+			this.noDelay = override && config.tcp_no_delay;
+			this.sendBufferSize = override ? config.send_buffer_size : 0;
+			this.receiveBufferSize = override ? config.receiver_buffer_size : 0;
+			this.soLinger = override ? config.socket_soLinger : 0;
+			this.recvBufAllocator = override ? AllocatorHelper.newRecvByteBufAllocator(config) : null;
+			this.waterMark = override ? new WriteBufferWaterMark(config.writeBufferLowWaterMark,
+					config.writeBufferHighWaterMark) : null;
+			this.taskScheduler = override ? config.taskScheduler : null;
+			this.writePolicy = override ? config.writePolicy : null;
+		}
+
+		/**
+		 * 与AcceptorBuilder中设置的childOption和childAttr相同
+		 */
+		void apply(Channel channel) {
+			if (!override)
+				return;
+			ChannelConfig channelConfig = channel.config();
+			channelConfig.setOption(ChannelOption.SO_KEEPALIVE, keepAlive);
+			channelConfig.setOption(ChannelOption.TCP_NODELAY, noDelay);
+			channelConfig.setOption(ChannelOption.SO_SNDBUF, sendBufferSize);
+			channelConfig.setOption(ChannelOption.SO_RCVBUF, receiveBufferSize);
+			channelConfig.setOption(ChannelOption.SO_LINGER, soLinger);
+			channelConfig.setRecvByteBufAllocator(recvBufAllocator);
+			channelConfig.setWriteBufferWaterMark(waterMark);
+			channel.attr(ChannelTaskHelper.KEY_TASK_SCHEDULER).set(taskScheduler);
+			channel.attr(WriteHelper.KEY_WRITE_POLICY).set(writePolicy);
+		}
+	}
+}
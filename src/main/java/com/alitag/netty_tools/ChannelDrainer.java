@@ -0,0 +1,162 @@
+package com.alitag.netty_tools;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.group.DefaultChannelGroup;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.GlobalEventExecutor;
+import io.netty.util.concurrent.Promise;
+import io.netty.util.concurrent.ScheduledFuture;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * 记录AcceptorBuilder接受的所有连接，并在{@link AcceptorBuilder#drain(long)}时排空它们：向每个连接发出GoAwayMessage，
+ * 等待连接上未完成的请求数降到0后关闭连接，到期限时强制关闭剩下的连接。
+ * </p>
+ * <p>
+ * 线程安全：该类线程安全。
+ * </p>
+ * 
+ * @author gchangyi
+ * @version 1.0
+ */
+class ChannelDrainer {
+
+	private final ChannelGroup channels = new DefaultChannelGroup("acceptor-children", GlobalEventExecutor.INSTANCE);
+
+	private volatile GoAwayMessage goAwayMessage;
+
+	/** 正在进行的排空，没有开始排空时为null */
+	private volatile Drain drain;
+
+	ChannelDrainer(GoAwayMessage goAwayMessage) {
+		this.goAwayMessage = goAwayMessage;
+	}
+
+	/**
+	 * <p>
+	 * 在channel初始化时调用。如果已经开始排空(channel在监听socket关闭前被接受)，立即排空该channel。
+	 * </p>
+	 */
+	void register(Channel channel) {
+		channel.attr(DrainHelper.KEY_COUNTER).set(new InFlightCounter(channel));
+		channels.add(channel);
+		Drain current = drain;
+		if (current != null)
+			current.add(channel);
+	}
+
+	void setGoAwayMessage(GoAwayMessage goAwayMessage) {
+		this.goAwayMessage = goAwayMessage;
+	}
+
+	/**
+	 * @return 当前的所有连接
+	 */
+	ChannelGroup channels() {
+		return channels;
+	}
+
+	/**
+	 * @return 当前的连接数
+	 */
+	int size() {
+		return channels.size();
+	}
+
+	synchronized Future<DrainResult> drain(long timeoutMillis) {
+		if (drain == null) {
+			Drain current = new Drain();
+			drain = current;
+			current.start(timeoutMillis);
+		}
+		return drain.promise;
+	}
+
+	private final class Drain implements ChannelFutureListener {
+
+		private final Promise<DrainResult> promise = GlobalEventExecutor.INSTANCE.newPromise();
+
+		private final Set<Channel> added = ConcurrentHashMap.newKeySet();
+
+		/** 还没有关闭的连接数，开始时为1，所有连接都加入之后再减去，避免过早结束 */
+		private final AtomicInteger remaining = new AtomicInteger(1);
+
+		private final Set<Channel> forceClosed = ConcurrentHashMap.newKeySet();
+
+		private final AtomicLong inFlightAtStart = new AtomicLong();
+
+		private final AtomicLong abandonedRequests = new AtomicLong();
+
+		private final long startNanos = System.nanoTime();
+
+		private volatile boolean expired;
+
+		private volatile ScheduledFuture<?> deadline;
+
+		void start(long timeoutMillis) {
+			for (Channel channel : channels)
+				add(channel);
+			deadline = GlobalEventExecutor.INSTANCE.schedule(new Runnable() {
+				@Override
+				public void run() {
+					expire();
+				}
+			}, timeoutMillis, TimeUnit.MILLISECONDS);
+			closed();
+		}
+
+		void add(Channel channel) {
+			if (!added.add(channel))
+				return;
+			remaining.incrementAndGet();
+			InFlightCounter counter = channel.attr(DrainHelper.KEY_COUNTER).get();
+			inFlightAtStart.addAndGet(counter.get());
+			channel.closeFuture().addListener(this);
+			if (expired)
+				forceClose(channel, counter);
+			else
+				counter.drain(goAwayMessage);
+		}
+
+		private void expire() {
+			expired = true;
+			for (Channel channel : added) {
+				if (channel.isOpen())
+					forceClose(channel, channel.attr(DrainHelper.KEY_COUNTER).get());
+			}
+		}
+
+		private void forceClose(Channel channel, InFlightCounter counter) {
+			if (!forceClosed.add(channel))
+				return;
+			abandonedRequests.addAndGet(counter.get());
+			channel.close();
+		}
+
+		@Override
+		public void operationComplete(ChannelFuture future) throws Exception {
+			closed();
+		}
+
+		private void closed() {
+			if (remaining.decrementAndGet() != 0)
+				return;
+			ScheduledFuture<?> scheduled = deadline;
+			if (scheduled != null)
+				scheduled.cancel(false);
+			int total = added.size();
+			int forced = forceClosed.size();
+			promise.trySuccess(new DrainResult(total, total - forced, forced, inFlightAtStart.get(), abandonedRequests
+					.get(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos)));
+		}
+	}
+}
@@ -21,6 +21,10 @@ import java.net.SocketAddress;
  */
 public class ChannelHelper {
 
+	/** 连接的描述信息 */
+	static final AttributeKey<ConnectionDescriptor> KEY_DESCRIPTOR = AttributeKey.valueOf(ChannelHelper.class.getName()
+			+ ".descriptor");
+
 	/**
 	 * 私有构造函数。防止被实例化。
 	 */
@@ -28,6 +32,34 @@ public class ChannelHelper {
 		// do nothing
 	}
 
+	/**
+	 * <p>
+	 * 得到channel的描述信息。描述信息在channel变为active时生成一次，之后一直不变。如果还没有生成并且channel已经active，则生成并保存；如果channel不是active的，返回null。
+	 * </p>
+	 * 
+	 * @param channel
+	 *            当前的连接对象
+	 * @return channel的描述信息，channel没有active过时为null
+	 * @throws IllegalArgumentException
+	 *             如果channel为null
+	 */
+	public static ConnectionDescriptor getDescriptor(Channel channel) {
+		ArgumentValidator.notNull(channel, "channel");
+		ConnectionDescriptor descriptor = channel.attr(KEY_DESCRIPTOR).get();
+		if (descriptor == null && channel.isActive())
+			descriptor = initDescriptor(channel);
+		return descriptor;
+	}
+
+	/**
+	 * 生成并保存channel的描述信息，已经有了时返回已有的
+	 */
+	static ConnectionDescriptor initDescriptor(Channel channel) {
+		ConnectionDescriptor descriptor = new ConnectionDescriptor(channel);
+		ConnectionDescriptor old = channel.attr(KEY_DESCRIPTOR).setIfAbsent(descriptor);
+		return old == null ? descriptor : old;
+	}
+
 	/**
 	 * <p>
 	 * 从channel得到本机的InetSocketAddress.如果没得到,返回null
@@ -40,12 +72,8 @@ public class ChannelHelper {
 	 *             如果channel为null
 	 */
 	public static InetSocketAddress getLocalAddress(Channel channel) {
-		ArgumentValidator.notNull(channel, "channel");
-		SocketAddress local = channel.localAddress();
-		if (local != null && local instanceof InetSocketAddress) {
-			return (InetSocketAddress) local;
-		}
-		return null;
+		ConnectionDescriptor descriptor = getDescriptor(channel);
+		return descriptor == null ? resolveLocalAddress(channel) : descriptor.getLocalAddress();
 	}
 
 	/**
@@ -60,13 +88,8 @@ public class ChannelHelper {
 	 *             如果session为null
 	 */
 	public static String getLocalIp(Channel channel) {
-		ArgumentValidator.notNull(channel, "channel");
-		InetSocketAddress local = getLocalAddress(channel);
-		InetAddress address;
-		if (local != null && ((address = local.getAddress()) instanceof Inet4Address)) {
-			return ((Inet4Address) address).getHostAddress();
-		}
-		return "";
+		ConnectionDescriptor descriptor = getDescriptor(channel);
+		return descriptor == null ? resolveLocalIp(resolveLocalAddress(channel)) : descriptor.getLocalIp();
 	}
 
 	/**
@@ -81,12 +104,11 @@ public class ChannelHelper {
 	 *             如果session为null
 	 */
 	public static int getLocalPort(Channel channel) {
-		ArgumentValidator.notNull(channel, "channel");
-		SocketAddress address = channel.localAddress();
-		if (address != null && address instanceof InetSocketAddress) {
-			return ((InetSocketAddress) address).getPort();
-		}
-		return -1;
+		ConnectionDescriptor descriptor = getDescriptor(channel);
+		if (descriptor != null)
+			return descriptor.getLocalPort();
+		InetSocketAddress address = resolveLocalAddress(channel);
+		return address == null ? -1 : address.getPort();
 	}
 
 	/**
@@ -101,12 +123,8 @@ public class ChannelHelper {
 	 *             如果session为null
 	 */
 	public static InetSocketAddress getRemoteAddress(Channel channel) {
-		ArgumentValidator.notNull(channel, "channel");
-		SocketAddress remote = channel.remoteAddress();
-		if (remote != null && remote instanceof InetSocketAddress) {
-			return (InetSocketAddress) remote;
-		}
-		return null;
+		ConnectionDescriptor descriptor = getDescriptor(channel);
+		return descriptor == null ? resolveRemoteAddress(channel) : descriptor.getRemoteAddress();
 	}
 
 	/**
@@ -121,14 +139,8 @@ public class ChannelHelper {
 	 *             如果session为null
 	 */
 	public static String getRemoteIp(Channel channel) {
-		ArgumentValidator.notNull(channel, "channel");
-		InetSocketAddress remote = getRemoteAddress(channel);
-		InetAddress address;
-		if (remote != null && (address = remote.getAddress()) instanceof InetAddress) {
-			return ((InetAddress) address).getHostAddress();
-		}
-		return "";
-
+		ConnectionDescriptor descriptor = getDescriptor(channel);
+		return descriptor == null ? resolveHostAddress(resolveRemoteAddress(channel)) : descriptor.getRemoteIp();
 	}
 
 	/**
@@ -143,12 +155,11 @@ public class ChannelHelper {
 	 *             如果session为null
 	 */
 	public static int getRemotePort(Channel channel) {
-		ArgumentValidator.notNull(channel, "channel");
-		SocketAddress remote = channel.remoteAddress();
-		if (remote != null && remote instanceof InetSocketAddress) {
-			return ((InetSocketAddress) remote).getPort();
-		}
-		return -1;
+		ConnectionDescriptor descriptor = getDescriptor(channel);
+		if (descriptor != null)
+			return descriptor.getRemotePort();
+		InetSocketAddress address = resolveRemoteAddress(channel);
+		return address == null ? -1 : address.getPort();
 	}
 
 	/**
@@ -156,7 +167,7 @@ public class ChannelHelper {
 	 * 得到一个channel的ip和port，并以特定的格式返回一个字符串。格式为: [/xxx.xxx.xxx.xxx: port]
 	 * </p>
 	 * <p>
-	 * 因为函数经常用于日志中,所以从性能方面考虑,在channel已经连接成功后,会把对方的ip和port保存起来,以供以后直接使用.
+	 * 因为函数经常用于日志中,所以从性能方面考虑,在channel已经连接成功后,直接返回{@link ConnectionDescriptor}中预先生成的字符串.
 	 * </p>
 	 * <p>
 	 * 如果没有得到对方的ip和port,返回的格式为[/: -1]
@@ -169,16 +180,10 @@ public class ChannelHelper {
 	 *             如果channel为null
 	 */
 	public static String getRemoteIpPort1(Channel channel) {
-		ArgumentValidator.notNull(channel, "channel");
-		String ip_port = "";
-		ip_port = (String) channel.attr(AttributeKey.valueOf(ip_port)).get();
-		if ("".equals(ip_port) || ip_port == null) {
-			ip_port = "[/" + getRemoteIp(channel) + ": " + getRemotePort(channel) + "]";
-			if (channel.isActive()) {
-				channel.attr(AttributeKey.valueOf(ip_port));
-			}
-		}
-		return ip_port;
+		ConnectionDescriptor descriptor = getDescriptor(channel);
+		if (descriptor != null)
+			return descriptor.getRemoteIpPort1();
+		return "[/" + getRemoteIp(channel) + ": " + getRemotePort(channel) + "]";
 	}
 
 	/**
@@ -196,7 +201,41 @@ public class ChannelHelper {
 	 *             如果channel为null
 	 */
 	public static String getRemoteIpPort2(Channel channel) {
-		ArgumentValidator.notNull(channel, "channel");
+		ConnectionDescriptor descriptor = getDescriptor(channel);
+		if (descriptor != null)
+			return descriptor.getRemoteIpPort2();
 		return getRemoteIp(channel) + ": " + getRemotePort(channel);
 	}
+
+	static InetSocketAddress resolveLocalAddress(Channel channel) {
+		SocketAddress local = channel.localAddress();
+		if (local != null && local instanceof InetSocketAddress) {
+			return (InetSocketAddress) local;
+		}
+		return null;
+	}
+
+	static String resolveLocalIp(InetSocketAddress local) {
+		InetAddress address;
+		if (local != null && ((address = local.getAddress()) instanceof Inet4Address)) {
+			return ((Inet4Address) address).getHostAddress();
+		}
+		return "";
+	}
+
+	static InetSocketAddress resolveRemoteAddress(Channel channel) {
+		SocketAddress remote = channel.remoteAddress();
+		if (remote != null && remote instanceof InetSocketAddress) {
+			return (InetSocketAddress) remote;
+		}
+		return null;
+	}
+
+	static String resolveHostAddress(InetSocketAddress remote) {
+		InetAddress address;
+		if (remote != null && (address = remote.getAddress()) != null) {
+			return address.getHostAddress();
+		}
+		return "";
+	}
 }
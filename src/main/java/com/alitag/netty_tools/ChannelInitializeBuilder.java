@@ -1,32 +1,129 @@
 package com.alitag.netty_tools;
 
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelPipeline;
-import io.netty.channel.socket.SocketChannel;
-import io.netty.handler.codec.DelimiterBasedFrameDecoder;
-import io.netty.handler.codec.Delimiters;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.handler.codec.LengthFieldPrepender;
 import io.netty.handler.codec.string.StringDecoder;
-import io.netty.handler.codec.string.StringEncoder;
+import io.netty.handler.flush.FlushConsolidationHandler;
 import io.netty.util.CharsetUtil;
 
 /**
  * 默认的ChannelInitializer
+ * <p>
+ * 使用NettyConfig构造时，如果{@link NettyConfig#flushConsolidateAfter}大于0，会在pipeline最前面加入合并flush的handler：读循环中的flush推迟到
+ * channelReadComplete时一起执行，并且每flushConsolidateAfter次flush至少真正执行一次。需要低延迟的消息可以用
+ * {@link WriteHelper#flushNow(io.netty.channel.Channel)}绕过合并立即发送。启用了TLS时该handler紧跟在SslHandler之后，
+ * 这样绕过合并的flush仍然经过SslHandler加密发送。
+ * </p>
+ * <p>
+ * 由AcceptorBuilder生成并设置了读消息数限制(见{@link NettyConfig#readMessagesPerSecond})的连接，在解码器之后加入按消息数限流的handler。
+ * </p>
+ * <p>
+ * 由AcceptorBuilder生成的连接，设置了{@link NettyConfig#trackInFlightRequests}时，在编解码器之后加入统计未完成请求数的handler，供排空时使用，见{@link DrainHelper}。
+ * </p>
+ * <p>
+ * 设置了{@link NettyConfig#trafficMetrics}时，加入统计流量的handler，见{@link TrafficMetrics}。
+ * </p>
+ * <p>
+ * 收到的数据按{@link NettyConfig#framingMode}分帧解码，默认每行解码成String；写出的CharSequence由{@link CharSequenceEncoder}按UTF-8编码。
+ * </p>
+ * <p>
+ * LENGTH_FIELD分帧方式下设置了{@link NettyConfig#compression}时，在分帧的编解码器之后加入按帧压缩的handler，见{@link CompressionHandler}。
+ * </p>
  * 
  * @author gchangyi
  * @version 1.0
  */
-public class ChannelInitializeBuilder extends ChannelInitializer<SocketChannel> {
+public class ChannelInitializeBuilder extends ChannelInitializer<Channel> {
+
+	/** 合并flush的handler在pipeline中的名字 */
+	public static final String FLUSH_CONSOLIDATION_NAME = "flush_consolidation";
+
+	private static final CharSequenceEncoder ENCODER = new CharSequenceEncoder(CharsetUtil.UTF_8);
+
+	private final NettyConfig config;
 
 	public ChannelInitializeBuilder() {
+		this.config = null;
+	}
+
+	/**
+	 * <p>
+	 * 按照config生成pipeline。config在每个channel初始化时读取，因此可以在生成之后再修改config。
+	 * </p>
+	 * 
+	 * @param config
+	 *            配置信息
+	 * @throws IllegalArgumentException
+	 *             如果config为null
+	 */
+	public ChannelInitializeBuilder(NettyConfig config) {
+		ArgumentValidator.notNull(config, "config");
+		this.config = config;
+	}
 
+	/**
+	 * @return 生成pipeline时使用的配置信息，使用默认构造函数时为null
+	 */
+	NettyConfig getConfig() {
+		return config;
 	}
 
 	@Override
-	public void initChannel(SocketChannel channel) throws Exception {
+	public void initChannel(Channel channel) throws Exception {
 		ChannelPipeline pipeline = channel.pipeline();
-		pipeline.addLast("frame_decoder", new DelimiterBasedFrameDecoder(8192, Delimiters.lineDelimiter()));
-		pipeline.addLast("decoder", new StringDecoder(CharsetUtil.UTF_8));
-		pipeline.addLast("encoder", new StringEncoder(CharsetUtil.UTF_8));
+		if (config != null && config.flushConsolidateAfter > 0) {
+			FlushConsolidationHandler handler = new FlushConsolidationHandler(config.flushConsolidateAfter,
+					config.flushConsolidateWhenNoRead);
+			// flushNow()从该handler开始flush，必须位于SslHandler(客户端connect时替换CONNECT_NAME)之后，否则数据不经过加密
+			String tlsName = pipeline.get(TlsSupport.NAME) != null ? TlsSupport.NAME
+					: pipeline.get(TlsSupport.CONNECT_NAME) != null ? TlsSupport.CONNECT_NAME : null;
+			if (tlsName != null)
+				pipeline.addAfter(tlsName, FLUSH_CONSOLIDATION_NAME, handler);
+			else
+				pipeline.addFirst(FLUSH_CONSOLIDATION_NAME, handler);
+		}
+		FramingMode framingMode = config == null ? FramingMode.LINE_STRING : config.framingMode;
+		int maxFrameLength = config == null ? 8192 : config.maxFrameLength;
+		switch (framingMode) {
+		case LINE:
+			pipeline.addLast("frame_decoder", new LineFrameDecoder(maxFrameLength));
+			break;
+		case LINE_ASCII:
+			pipeline.addLast("frame_decoder", new LineFrameDecoder(maxFrameLength, true));
+			break;
+		case LENGTH_FIELD:
+			int fieldLength = config.lengthFieldLength;
+			boolean compress = config.compression != null && config.compression != CompressionCodec.NONE;
+			int maxLength = compress ? CompressionHandler.maxCompressedLength(maxFrameLength) : maxFrameLength;
+			pipeline.addLast("frame_decoder", new LengthFieldBasedFrameDecoder(config.lengthFieldByteOrder, maxLength
+					+ fieldLength, 0, fieldLength, 0, fieldLength, true));
+			pipeline.addLast("frame_encoder", new LengthFieldPrepender(config.lengthFieldByteOrder, fieldLength, 0, false));
+			if (compress)
+				pipeline.addLast(CompressionHandler.NAME, CompressionHandler.of(config));
+			break;
+		default:
+			pipeline.addLast("frame_decoder", new LineFrameDecoder(maxFrameLength));
+			pipeline.addLast("decoder", new StringDecoder(CharsetUtil.UTF_8));
+			break;
+		}
+		pipeline.addLast("encoder", ENCODER);
+		TrafficShapingHandler shaping = channel.attr(TrafficShapingHandler.KEY_HANDLER).get();
+		if (shaping != null && shaping.limitsMessages()) {
+			pipeline.addLast(TrafficShapingHandler.MESSAGE_COUNTER_NAME, new TrafficShapingHandler.MessageCounter(shaping));
+		}
+		InFlightCounter inFlight = channel.attr(DrainHelper.KEY_COUNTER).get();
+		if (inFlight != null && config != null && config.trackInFlightRequests) {
+			pipeline.addLast(InFlightHandler.NAME, new InFlightHandler(inFlight));
+		}
+		if (config != null && config.trafficMetrics != null) {
+			ChannelTrafficCounters counters = new ChannelTrafficCounters(config.trafficMetrics);
+			channel.attr(TrafficMetrics.KEY_COUNTERS).set(counters);
+			pipeline.addFirst(TrafficBytesHandler.NAME, new TrafficBytesHandler(counters));
+			pipeline.addLast(TrafficMessageHandler.NAME, new TrafficMessageHandler(counters));
+		}
 	}
 
 }
@@ -0,0 +1,89 @@
+package com.alitag.netty_tools;
+
+import io.netty.channel.Channel;
+
+import java.util.Timer;
+
+/**
+ * <p>
+ * 由{@link ChannelTaskHelper#addAutoCancelTask(Channel, TimerTaskExt, long, long)}返回的任务句柄，可用于取消该任务。
+ * </p>
+ * <p>
+ * 任务被取消、只运行一次的任务运行完毕或者channel关闭时，句柄会从channel的任务列表中移除。
+ * </p>
+ * <p>
+ * 线程安全：该类线程安全。
+ * </p>
+ * 
+ * @param <T>
+ *            任务的类型
+ * @author gchangyi
+ * @version 1.0
+ */
+public class ChannelTask<T extends TimerTaskExt> {
+
+	private final Channel channel;
+
+	private final T task;
+
+	private final ChannelTaskRegistry registry;
+
+	ChannelTask(Channel channel, T task, ChannelTaskRegistry registry) {
+		this.channel = channel;
+		this.task = task;
+		this.registry = registry;
+	}
+
+	/**
+	 * 得到任务所属的channel
+	 * 
+	 * @return 任务所属的channel
+	 */
+	public Channel getChannel() {
+		return channel;
+	}
+
+	/**
+	 * 得到被调度的任务
+	 * 
+	 * @return 被调度的任务
+	 */
+	public T getTask() {
+		return task;
+	}
+
+	/**
+	 * 任务是否已经被取消
+	 * 
+	 * @return 如果已经被取消，返回true
+	 */
+	public boolean isCancelled() {
+		return task.isCancelled();
+	}
+
+	/**
+	 * 取消该任务。如果任务使用独立的Timer调度，该Timer也会被停止。
+	 * 
+	 * @return 如果阻止了至少一次尚未开始的运行，返回true
+	 */
+	public boolean cancel() {
+		registry.remove(this);
+		boolean result = task.cancel();
+		Timer owner = task.getOwner();
+		if (owner != null)
+			owner.cancel();
+		return result;
+	}
+
+	/**
+	 * 只运行一次的任务运行完毕后调用，把句柄从channel的任务列表中移除
+	 */
+	void done() {
+		registry.remove(this);
+	}
+
+	@Override
+	public String toString() {
+		return task.getName() + (isCancelled() ? " (cancelled)" : "");
+	}
+}
@@ -4,12 +4,18 @@
 package com.alitag.netty_tools;
 
 import io.netty.channel.Channel;
+import io.netty.channel.ChannelPipeline;
 import io.netty.util.AttributeKey;
+import io.netty.util.Timeout;
 import io.netty.util.concurrent.Future;
 import io.netty.util.concurrent.GenericFutureListener;
+import io.netty.util.concurrent.ScheduledFuture;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.Timer;
-import java.util.UUID;
+import java.util.TimerTask;
+import java.util.concurrent.TimeUnit;
 
 /**
  * ChannelHandlerContext的辅助类,用于向Channel中加入一些自动执行的任务
@@ -23,7 +29,14 @@ public class ChannelTaskHelper {
 
 	private static final String PREFIX = ChannelTaskHelper.class.getName();
 
-	private static final String KEY_CANCEL_AUTODISCONNECT = PREFIX + ".cancel_autodisconnect";
+	/** 自动断开handler在pipeline中的名字 */
+	public static final String AUTO_DISCONNECT_NAME = "auto_disconnect";
+
+	/** channel使用的任务调度方式，由AcceptorBuilder和ConnectorBuilder根据NettyConfig设置 */
+	static final AttributeKey<TaskSchedulerType> KEY_TASK_SCHEDULER = AttributeKey.valueOf(PREFIX + ".task_scheduler");
+
+	/** channel中没有设置调度方式时使用的默认值 */
+	private static final TaskSchedulerType DEFAULT_TASK_SCHEDULER = TaskSchedulerType.HASHED_WHEEL;
 
 	/**
 	 * 私有构造函数.防止实例化.
@@ -34,6 +47,8 @@ public class ChannelTaskHelper {
 
 	/**
 	 * 设定该channel在指定的时间后自动断开.如果channel处于关闭状态,则不进行操作
+	 * <p>
+	 * 该期限是固定的,不会因为读写而推迟.如果需要在空闲一段时间后断开,请使用{@link #setIdleDisconnect(Channel, int)}.再次调用会替换之前的设置.
 	 * 
 	 * @param channel
 	 *            欲断开的channel
@@ -47,44 +62,72 @@ public class ChannelTaskHelper {
 		ArgumentValidator.isTrue(seconds >= 0, "seconds should be >=0: " + seconds);
 		if (!channel.isActive())
 			return;
+		installAutoDisconnect(channel, new AutoDisconnectHandler(seconds, TimeUnit.SECONDS, false));
+	}
 
-		TimerTaskExt task = new TimerTaskExt() {
-			@Override
-			public void run() {
-				AttributeKey<String> key = AttributeKey.valueOf(KEY_CANCEL_AUTODISCONNECT);
-				if (channel.attr(key).get() != null) {
-					//channel.attr(key).remove();	// netty 4.0, 4.1已经不推荐使用
-					channel.attr(key).set(null);
-				} else {
-					channel.close();
-				}
-				if (this.getOwner() != null)
-					this.getOwner().cancel();
-			}
-
-			@Override
-			public String getName() {
-				return "auto disconnect after " + seconds + "s";
-			}
-		};
-		addAutoCancelTask(channel, task, seconds * 1000, 0);
+	/**
+	 * 设定该channel在空闲(没有读也没有写)指定的时间后自动断开.如果channel处于关闭状态,则不进行操作
+	 * <p>
+	 * 每次读写只会记录最后活动时间,不会重新调度定时器,所以可用于大量连接.再次调用会替换之前的设置.
+	 * 
+	 * @param channel
+	 *            欲断开的channel
+	 * @param seconds
+	 *            空闲多少秒后断开
+	 * @throws IllegalArgumentException
+	 *             如果channel为null,或者seconds<0
+	 */
+	public static void setIdleDisconnect(final Channel channel, final int seconds) {
+		ArgumentValidator.notNull(channel, "channel");
+		ArgumentValidator.isTrue(seconds >= 0, "seconds should be >=0: " + seconds);
+		if (!channel.isActive())
+			return;
+		installAutoDisconnect(channel, new AutoDisconnectHandler(seconds, TimeUnit.SECONDS, true));
 	}
 
 	/**
-	 * 取消通过{@link #setAutoDisconnect()}设置的自动断开任务
+	 * 取消通过{@link #setAutoDisconnect(Channel, int)}或{@link #setIdleDisconnect(Channel, int)}设置的自动断开任务
 	 * 
-	 * @param session
+	 * @param channel
 	 *            欲取消断开任务的连接
 	 * @throws IllegalArgumentException
 	 *             如果channel为null
 	 */
 	public static void cancelAutoDisconnect(final Channel channel) {
 		ArgumentValidator.notNull(channel, "channel");
-		channel.attr(AttributeKey.valueOf(KEY_CANCEL_AUTODISCONNECT));
+		if (channel.eventLoop().inEventLoop()) {
+			removeAutoDisconnect(channel.pipeline());
+		} else {
+			channel.eventLoop().execute(new Runnable() {
+				public void run() {
+					removeAutoDisconnect(channel.pipeline());
+				}
+			});
+		}
+	}
+
+	private static void installAutoDisconnect(final Channel channel, final AutoDisconnectHandler handler) {
+		if (channel.eventLoop().inEventLoop()) {
+			removeAutoDisconnect(channel.pipeline());
+			channel.pipeline().addFirst(AUTO_DISCONNECT_NAME, handler);
+		} else {
+			channel.eventLoop().execute(new Runnable() {
+				public void run() {
+					installAutoDisconnect(channel, handler);
+				}
+			});
+		}
+	}
+
+	private static void removeAutoDisconnect(ChannelPipeline pipeline) {
+		if (pipeline.get(AUTO_DISCONNECT_NAME) != null)
+			pipeline.remove(AUTO_DISCONNECT_NAME);
 	}
 
 	/**
 	 * 增加一个在channel关闭时会自动取消的任务.可以设置为延时多久后执行,执行一次或每隔一段时间反复执行
+	 * <p>
+	 * 调度方式由{@link NettyConfig#taskScheduler}决定.不是由AcceptorBuilder或ConnectorBuilder生成的channel使用{@link TaskSchedulerType#HASHED_WHEEL}
 	 * 
 	 * @param channel
 	 *            当前的连接对象
@@ -94,40 +137,141 @@ public class ChannelTaskHelper {
 	 *            多少毫秒后开始运行
 	 * @param period
 	 *            隔多久运行一次.如果为0,表示只运行一次
+	 * @return 该任务的句柄,可用于取消该任务.如果channel已经关闭,返回的句柄已处于取消状态
 	 * @throws IllegalArgumentException
 	 *             如果channel为null,或者task为null,或者delayMillis<0,或者period<0
 	 */
-	public static void addAutoCancelTask(final Channel channel, final TimerTaskExt task, long delayMillis, long period) {
+	public static <T extends TimerTaskExt> ChannelTask<T> addAutoCancelTask(final Channel channel, final T task, long delayMillis,
+			long period) {
 		ArgumentValidator.notNull(channel, "channel");
 		ArgumentValidator.notNull(task, "task");
 		ArgumentValidator.isTrue(delayMillis >= 0, "delayMillis should be >=0: " + delayMillis);
 		ArgumentValidator.isTrue(period >= 0, "period should be >=0: " + period);
 
-		final Timer timer = new Timer(task.getName());
-		task.setOwner(timer);
-		if (period > 0) {
-			timer.schedule(task, delayMillis, period);
-		} else {
-			timer.schedule(task, delayMillis);
+		ChannelTaskRegistry registry = ChannelTaskRegistry.of(channel);
+		final ChannelTask<T> handle = new ChannelTask<T>(channel, task, registry);
+		if (!registry.add(handle)) {
+			task.cancel();
+			return handle;
 		}
 
-		// 生成唯一id
-		final String attrId = "auto cacel task: " + UUID.randomUUID().toString();
-		channel.attr(AttributeKey.valueOf(attrId));
-
-		// channel关闭时自动停止该timer
-		channel.closeFuture().addListener(new GenericFutureListener<Future<? super Void>>() {
-			public void operationComplete(Future<? super Void> paramF) throws Exception {
-				AttributeKey<String> key = AttributeKey.valueOf(attrId);
-				if (channel.attr(key).get() != null) {
-					//channel.attr(key).remove();	// netty 4.0
-					channel.attr(key).set(null);
-					if (timer != null) {
-						timer.cancel();
+		TaskSchedulerType type = channel.attr(KEY_TASK_SCHEDULER).get();
+		if (type == null)
+			type = DEFAULT_TASK_SCHEDULER;
+
+		switch (type) {
+		case TIMER:
+			final Timer timer = new Timer(task.getName());
+			task.setOwner(timer);
+			if (period > 0) {
+				timer.schedule(task, delayMillis, period);
+			} else {
+				// 运行完毕后移除句柄并停止Timer的线程，否则它们会一直保留到channel关闭
+				TimerTask once = new TimerTask() {
+					public void run() {
+						if (task.isCancelled())
+							return;
+						try {
+							task.run();
+						} finally {
+							handle.done();
+							timer.cancel();
+						}
+					}
+				};
+				timer.schedule(once, delayMillis);
+				task.setOnceTask(once);
+			}
+			break;
+		case EVENT_LOOP:
+			if (period > 0) {
+				task.setFuture(channel.eventLoop().scheduleWithFixedDelay(task, delayMillis, period, TimeUnit.MILLISECONDS));
+			} else {
+				ScheduledFuture<?> future = channel.eventLoop().schedule(task, delayMillis, TimeUnit.MILLISECONDS);
+				future.addListener(new GenericFutureListener<Future<Object>>() {
+					public void operationComplete(Future<Object> f) throws Exception {
+						handle.done();
 					}
+				});
+				task.setFuture(future);
+			}
+			break;
+		default:
+			new WheelTask(handle, delayMillis, period).schedule();
+			break;
+		}
+		return handle;
+	}
+
+	/**
+	 * 得到channel中所有尚未结束的自动取消任务
+	 * 
+	 * @param channel
+	 *            当前的连接对象
+	 * @return 尚未结束的任务句柄.如果没有,返回空列表
+	 * @throws IllegalArgumentException
+	 *             如果channel为null
+	 */
+	public static List<ChannelTask<?>> getTasks(Channel channel) {
+		ArgumentValidator.notNull(channel, "channel");
+		ChannelTaskRegistry registry = channel.attr(ChannelTaskRegistry.KEY).get();
+		if (registry == null)
+			return Collections.emptyList();
+		return registry.snapshot();
+	}
+
+	/**
+	 * 取消channel中所有通过{@link #addAutoCancelTask(Channel, TimerTaskExt, long, long)}加入的任务
+	 * 
+	 * @param channel
+	 *            当前的连接对象
+	 * @throws IllegalArgumentException
+	 *             如果channel为null
+	 */
+	public static void cancelAllTasks(Channel channel) {
+		ArgumentValidator.notNull(channel, "channel");
+		for (ChannelTask<?> task : getTasks(channel)) {
+			task.cancel();
+		}
+	}
+
+	/**
+	 * 在共享时间轮中运行TimerTaskExt.周期任务按固定频率重新加入时间轮,不会因时间轮的精度而产生累积误差
+	 */
+	private static class WheelTask implements io.netty.util.TimerTask {
+		private final ChannelTask<?> handle;
+		private final TimerTaskExt task;
+		private final long periodNanos;
+		private long deadlineNanos;
+
+		WheelTask(ChannelTask<?> handle, long delayMillis, long periodMillis) {
+			this.handle = handle;
+			this.task = handle.getTask();
+			this.periodNanos = TimeUnit.MILLISECONDS.toNanos(periodMillis);
+			this.deadlineNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMillis);
+		}
+
+		void schedule() {
+			if (task.isCancelled())
+				return;
+			long delay = Math.max(0, deadlineNanos - System.nanoTime());
+			task.setTimeout(SharedWheelTimer.get().newTimeout(this, delay, TimeUnit.NANOSECONDS));
+		}
+
+		public void run(Timeout timeout) throws Exception {
+			if (task.isCancelled())
+				return;
+			try {
+				task.run();
+			} finally {
+				if (periodNanos > 0) {
+					deadlineNanos += periodNanos;
+					schedule();
+				} else {
+					handle.done();
 				}
 			}
-		});
+		}
 	}
 
 }
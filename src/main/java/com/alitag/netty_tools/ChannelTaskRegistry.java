@@ -0,0 +1,85 @@
+package com.alitag.netty_tools;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.util.Attribute;
+import io.netty.util.AttributeKey;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <p>
+ * 一个channel中所有自动取消任务的列表。每个channel只有一个，保存在固定的AttributeKey中，并只在channel的closeFuture上注册一个监听器。
+ * </p>
+ * <p>
+ * 线程安全：该类线程安全，所有对列表的访问都在this上同步。
+ * </p>
+ * 
+ * @author gchangyi
+ * @version 1.0
+ */
+class ChannelTaskRegistry implements ChannelFutureListener {
+
+	static final AttributeKey<ChannelTaskRegistry> KEY = AttributeKey.valueOf(ChannelTaskRegistry.class.getName());
+
+	private List<ChannelTask<?>> tasks = new ArrayList<ChannelTask<?>>(2);
+
+	private boolean closed;
+
+	/**
+	 * 得到channel的任务列表，如果不存在则新建一个
+	 * 
+	 * @param channel
+	 *            当前的连接对象
+	 * @return channel的任务列表
+	 */
+	static ChannelTaskRegistry of(Channel channel) {
+		Attribute<ChannelTaskRegistry> attr = channel.attr(KEY);
+		ChannelTaskRegistry registry = attr.get();
+		if (registry == null) {
+			registry = new ChannelTaskRegistry();
+			ChannelTaskRegistry old = attr.setIfAbsent(registry);
+			if (old != null)
+				return old;
+			channel.closeFuture().addListener(registry);
+		}
+		return registry;
+	}
+
+	/**
+	 * 加入一个任务
+	 * 
+	 * @param task
+	 *            任务句柄
+	 * @return 如果channel已经关闭，返回false
+	 */
+	synchronized boolean add(ChannelTask<?> task) {
+		if (closed)
+			return false;
+		tasks.add(task);
+		return true;
+	}
+
+	synchronized void remove(ChannelTask<?> task) {
+		tasks.remove(task);
+	}
+
+	synchronized List<ChannelTask<?>> snapshot() {
+		return Collections.unmodifiableList(new ArrayList<ChannelTask<?>>(tasks));
+	}
+
+	public void operationComplete(ChannelFuture future) throws Exception {
+		List<ChannelTask<?>> toCancel;
+		synchronized (this) {
+			closed = true;
+			toCancel = tasks;
+			tasks = new ArrayList<ChannelTask<?>>(0);
+		}
+		for (ChannelTask<?> task : toCancel) {
+			task.cancel();
+		}
+	}
+}
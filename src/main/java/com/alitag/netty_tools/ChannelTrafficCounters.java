@@ -0,0 +1,45 @@
+package com.alitag.netty_tools;
+
+/**
+ * <p>
+ * 一个连接自己的流量计数器，保存在channel的属性中，由TrafficBytesHandler和TrafficMessageHandler共用。
+ * </p>
+ * <p>
+ * 线程安全：只在该连接的EventLoop中写入(单一写者，所以不需要原子操作)，字段为volatile，其他线程可以读取。
+ * </p>
+ * 
+ * @author gchangyi
+ * @version 1.0
+ */
+class ChannelTrafficCounters {
+
+	final TrafficMetrics metrics;
+
+	volatile long bytesRead;
+
+	volatile long bytesWritten;
+
+	volatile long messagesRead;
+
+	volatile long messagesWritten;
+
+	volatile boolean opened;
+
+	volatile boolean closed;
+
+	volatile long exceptions;
+
+	volatile long processingNanos;
+
+	volatile long processingMaxNanos;
+
+	ChannelTrafficCounters(TrafficMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	TrafficSnapshot snapshot() {
+		long messages = messagesRead;
+		return new TrafficSnapshot(bytesRead, bytesWritten, messages, messagesWritten, opened ? 1 : 0, closed ? 1 : 0,
+				exceptions, messages == 0 ? 0 : (double) processingNanos / messages, -1, -1, -1, processingMaxNanos);
+	}
+}
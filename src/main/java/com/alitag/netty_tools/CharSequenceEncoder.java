@@ -0,0 +1,79 @@
+package com.alitag.netty_tools;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.MessageToByteEncoder;
+import io.netty.util.CharsetUtil;
+
+import java.nio.charset.Charset;
+
+/**
+ * <p>
+ * 把CharSequence(String、StringBuilder、AsciiString等)直接写入ByteBufAllocator分配的缓冲区的编码器，用于代替StringEncoder。
+ * </p>
+ * <p>
+ * StringEncoder先用CharBuffer包装消息，再经过CharsetEncoder编码到临时缓冲区；该类对UTF-8和US-ASCII直接按字符写入目标缓冲区，缓冲区按最大可能长度一次分配。
+ * 其他字符集使用ByteBuf.writeCharSequence。
+ * </p>
+ * <p>
+ * 线程安全：该类线程安全，可以被多个channel共享。
+ * </p>
+ *
+ * @author gchangyi
+ * @version 1.0
+ */
+@Sharable
+public class CharSequenceEncoder extends MessageToByteEncoder<CharSequence> {
+
+	private final Charset charset;
+
+	/**
+	 * <p>
+	 * 构造函数。使用UTF-8。
+	 * </p>
+	 */
+	public CharSequenceEncoder() {
+		this(CharsetUtil.UTF_8);
+	}
+
+	/**
+	 * <p>
+	 * 构造函数。
+	 * </p>
+	 *
+	 * @param charset
+	 *            使用的字符集
+	 * @throws IllegalArgumentException
+	 *             如果charset为null
+	 */
+	public CharSequenceEncoder(Charset charset) {
+		ArgumentValidator.notNull(charset, "charset");
+		this.charset = charset;
+	}
+
+	@Override
+	protected ByteBuf allocateBuffer(ChannelHandlerContext ctx, CharSequence msg, boolean preferDirect) throws Exception {
+		int capacity;
+		if (CharsetUtil.UTF_8.equals(charset))
+			capacity = ByteBufUtil.utf8MaxBytes(msg);
+		else if (CharsetUtil.US_ASCII.equals(charset))
+			capacity = msg.length();
+		else
+			capacity = (int) (msg.length() * (double) charset.newEncoder().maxBytesPerChar());
+		return preferDirect ? ctx.alloc().ioBuffer(capacity) : ctx.alloc().heapBuffer(capacity);
+	}
+
+	@Override
+	protected void encode(ChannelHandlerContext ctx, CharSequence msg, ByteBuf out) throws Exception {
+		if (msg.length() == 0)
+			return;
+		if (CharsetUtil.UTF_8.equals(charset))
+			ByteBufUtil.writeUtf8(out, msg);
+		else if (CharsetUtil.US_ASCII.equals(charset))
+			ByteBufUtil.writeAscii(out, msg);
+		else
+			out.writeCharSequence(msg, charset);
+	}
+}
@@ -0,0 +1,149 @@
+package com.alitag.netty_tools;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.handler.codec.compression.JdkZlibEncoder;
+import io.netty.handler.codec.compression.Lz4FrameDecoder;
+import io.netty.handler.codec.compression.Lz4FrameEncoder;
+import io.netty.handler.codec.compression.SnappyFrameDecoder;
+import io.netty.handler.codec.compression.SnappyFrameEncoder;
+import io.netty.handler.codec.compression.ZlibWrapper;
+
+/**
+ * <p>
+ * {@link CompressionHandler}使用的压缩算法，都是Netty自带的编解码器。
+ * </p>
+ * <ul>
+ * <li>NONE: 不压缩</li>
+ * <li>ZLIB: zlib格式(deflate加adler32)，使用JDK的Deflater，压缩率最高、CPU开销最大，压缩级别见{@link NettyConfig#compressionLevel}</li>
+ * <li>GZIP: gzip格式，与ZLIB相同，只是头部和校验不同，便于与其他语言的gzip实现互通</li>
+ * <li>SNAPPY: Snappy framing格式，纯Java实现，压缩率较低但速度快</li>
+ * <li>LZ4: LZ4 frame格式，速度最快，需要classpath中有lz4-java(net.jpountz.lz4)，没有时{@link #isAvailable()}返回false</li>
+ * </ul>
+ * <p>
+ * 每种算法有一个写在每帧第一个字节的编号，因此两端可以使用不同的算法：收到的帧按其中的编号解压。
+ * </p>
+ *
+ * @author gchangyi
+ * @version 1.0
+ */
+public enum CompressionCodec {
+	NONE(0),
+	ZLIB(1) {
+		@Override
+		ChannelHandler newEncoder(int level) {
+			return new JdkZlibEncoder(ZlibWrapper.ZLIB, level);
+		}
+
+		@Override
+		FrameDecompressor newDecompressor(Channel channel) {
+			return new ZlibFrameInflater(false);
+		}
+	},
+	GZIP(2) {
+		@Override
+		ChannelHandler newEncoder(int level) {
+			return new JdkZlibEncoder(ZlibWrapper.GZIP, level);
+		}
+
+		@Override
+		FrameDecompressor newDecompressor(Channel channel) {
+			return new ZlibFrameInflater(true);
+		}
+	},
+	SNAPPY(3) {
+		@Override
+		ChannelHandler newEncoder(int level) {
+			return new SnappyFrameEncoder();
+		}
+
+		@Override
+		FrameDecompressor newDecompressor(Channel channel) {
+			return new HandlerFrameDecompressor(channel, new SnappyFrameDecoder());
+		}
+	},
+	LZ4(4) {
+		@Override
+		ChannelHandler newEncoder(int level) {
+			return new Lz4FrameEncoder();
+		}
+
+		@Override
+		FrameDecompressor newDecompressor(Channel channel) {
+			return new HandlerFrameDecompressor(channel, new Lz4FrameDecoder());
+		}
+
+		@Override
+		public boolean isAvailable() {
+			return LZ4_AVAILABLE;
+		}
+	};
+
+	private static final boolean LZ4_AVAILABLE = isClassPresent("net.jpountz.lz4.LZ4Factory");
+
+	private static final CompressionCodec[] BY_ID = new CompressionCodec[] { NONE, ZLIB, GZIP, SNAPPY, LZ4 };
+
+	private final byte id;
+
+	private CompressionCodec(int id) {
+		this.id = (byte) id;
+	}
+
+	/**
+	 * @return 写在每帧第一个字节的编号，NONE为0
+	 */
+	public byte getId() {
+		return id;
+	}
+
+	/**
+	 * @return 当前运行环境能否使用该算法
+	 */
+	public boolean isAvailable() {
+		return true;
+	}
+
+	/**
+	 * 生成压缩用的handler，每个连接一个。level只对ZLIB和GZIP有效
+	 *
+	 * @return 压缩用的handler，NONE返回null
+	 */
+	ChannelHandler newEncoder(int level) {
+		return null;
+	}
+
+	/**
+	 * 生成解压，每个连接一个。ZLIB和GZIP使用{@link ZlibFrameInflater}，其他算法在EmbeddedChannel中执行Netty自带的解码器
+	 *
+	 * @param channel
+	 *            所在的连接
+	 * @return 解压，NONE返回null
+	 */
+	FrameDecompressor newDecompressor(Channel channel) {
+		return null;
+	}
+
+	/**
+	 * <p>
+	 * 根据编号得到算法。
+	 * </p>
+	 *
+	 * @param id
+	 *            每帧第一个字节中的编号
+	 * @return 对应的算法，不认识的编号返回null
+	 */
+	public static CompressionCodec forId(byte id) {
+		return id >= 0 && id < BY_ID.length ? BY_ID[id] : null;
+	}
+
+	private static boolean isClassPresent(String name) {
+		try {
+			Class.forName(name, false, CompressionCodec.class.getClassLoader());
+			return true;
+		} catch (ClassNotFoundException e) {
+			return false;
+		} catch (LinkageError e) {
+			return false;
+		}
+	}
+}
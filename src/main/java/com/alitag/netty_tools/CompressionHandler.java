@@ -0,0 +1,246 @@
+package com.alitag.netty_tools;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.DecoderException;
+import io.netty.handler.codec.MessageToMessageCodec;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.List;
+
+/**
+ * <p>
+ * 按帧压缩的handler，放在分帧的编解码器(例如LengthFieldBasedFrameDecoder和LengthFieldPrepender)与其他handler之间。
+ * </p>
+ * <p>
+ * 写出的每帧前面加一个字节的标志：小于threshold的帧不压缩，标志为0，不花任何CPU时间；其他帧用codec压缩，标志为codec的编号({@link CompressionCodec#getId()})。
+ * 收到的帧按标志解压或者直接去掉标志，所以两端都需要加入该handler，但可以使用不同的codec和threshold。
+ * </p>
+ * <p>
+ * 压缩和解压使用Netty自带的编解码器，每个连接各有一个，放在EmbeddedChannel中执行(与HttpContentCompressor的做法相同)。ZLIB和GZIP在同一个连接的各帧之间
+ * 共享字典，相似的消息越多压缩率越高；每帧都以SYNC_FLUSH结束，收到一帧就能完整解压。解压后超过maxFrameLength的帧抛出TooLongFrameException。
+ * ZLIB和GZIP的压缩率可以达到1000倍，为了不被很小的帧耗尽内存，它们由{@link ZlibFrameInflater}解压，输出超过maxFrameLength时立即停止。
+ * 解压由{@link CompressionCodec#newDecompressor(Channel)}生成，见{@link FrameDecompressor}。
+ * </p>
+ * <p>
+ * 设置了stats时记录压缩率和花费的CPU时间，见{@link CompressionStats}。
+ * </p>
+ * <p>
+ * 线程安全：该类不是线程安全的，每个channel需要一个新的实例。
+ * </p>
+ *
+ * @author gchangyi
+ * @version 1.0
+ */
+public class CompressionHandler extends MessageToMessageCodec<ByteBuf, ByteBuf> {
+
+	/** 在pipeline中的名字 */
+	public static final String NAME = "compression";
+
+	private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+	/** 能否读取当前线程的CPU时间，不能时记录经过的时间 */
+	private static final boolean CPU_TIME = THREADS.isCurrentThreadCpuTimeSupported() && THREADS.isThreadCpuTimeEnabled();
+
+	private final CompressionCodec codec;
+
+	private final int threshold;
+
+	private final int level;
+
+	private final int maxFrameLength;
+
+	private final CompressionStats stats;
+
+	private EmbeddedChannel encoder;
+
+	/** 按codec编号索引的解压，收到该codec的第一帧时生成 */
+	private final FrameDecompressor[] decompressors = new FrameDecompressor[CompressionCodec.values().length];
+
+	/**
+	 * <p>
+	 * 构造函数。
+	 * </p>
+	 *
+	 * @param codec
+	 *            写出时使用的压缩算法，为NONE时写出的帧都不压缩，但仍能解压收到的帧
+	 * @param threshold
+	 *            不小于该字节数的帧才压缩
+	 * @param level
+	 *            压缩级别，0-9，只对ZLIB和GZIP有效
+	 * @param maxFrameLength
+	 *            解压后一帧的最大长度
+	 * @param stats
+	 *            记录统计数据，可以为null
+	 * @throws IllegalArgumentException
+	 *             如果codec为null或当前不可用，threshold<0，level不在0-9之间，或者maxFrameLength<=0
+	 */
+	public CompressionHandler(CompressionCodec codec, int threshold, int level, int maxFrameLength, CompressionStats stats) {
+		ArgumentValidator.notNull(codec, "codec");
+		ArgumentValidator.isTrue(codec.isAvailable(), "compression codec is not available: " + codec);
+		ArgumentValidator.isTrue(threshold >= 0, "threshold should be >=0: " + threshold);
+		ArgumentValidator.isTrue(level >= 0 && level <= 9, "level should be in [0, 9]: " + level);
+		ArgumentValidator.isTrue(maxFrameLength > 0, "maxFrameLength should be >0: " + maxFrameLength);
+		this.codec = codec;
+		this.threshold = threshold;
+		this.level = level;
+		this.maxFrameLength = maxFrameLength;
+		this.stats = stats;
+	}
+
+	/**
+	 * <p>
+	 * 按config生成handler。
+	 * </p>
+	 *
+	 * @param config
+	 *            配置信息，使用compression、compressionThreshold、compressionLevel、maxFrameLength和compressionStats
+	 * @return 新的handler
+	 */
+	static CompressionHandler of(NettyConfig config) {
+		return new CompressionHandler(config.compression, config.compressionThreshold, config.compressionLevel,
+				config.maxFrameLength, config.compressionStats);
+	}
+
+	/**
+	 * 检查config中与压缩有关的参数
+	 */
+	static void validate(NettyConfig config) {
+		ArgumentValidator.notNull(config.compression, "compression");
+		if (config.compression == CompressionCodec.NONE)
+			return;
+		ArgumentValidator.isTrue(config.compression.isAvailable(), "compression codec is not available: "
+				+ config.compression);
+		ArgumentValidator.isTrue(config.framingMode == FramingMode.LENGTH_FIELD,
+				"compression requires framingMode LENGTH_FIELD: " + config.framingMode);
+		ArgumentValidator.isTrue(config.compressionThreshold >= 0, "compressionThreshold should be >=0: "
+				+ config.compressionThreshold);
+		ArgumentValidator.isTrue(config.compressionLevel >= 0 && config.compressionLevel <= 9,
+				"compressionLevel should be in [0, 9]: " + config.compressionLevel);
+	}
+
+	/**
+	 * <p>
+	 * 一帧压缩后(含标志)的最大长度，用于设置分帧解码器的最大帧长度。按各算法最坏情况下的膨胀(Snappy约为1/6)留出余量。
+	 * </p>
+	 *
+	 * @param maxFrameLength
+	 *            压缩前一帧的最大长度
+	 * @return 压缩后一帧的最大长度
+	 */
+	public static int maxCompressedLength(int maxFrameLength) {
+		long length = 1L + maxFrameLength + maxFrameLength / 6 + 64;
+		return (int) Math.min(Integer.MAX_VALUE, length);
+	}
+
+	@Override
+	protected void encode(ChannelHandlerContext ctx, ByteBuf msg, List<Object> out) throws Exception {
+		int length = msg.readableBytes();
+		CompositeByteBuf frame = ctx.alloc().compositeBuffer();
+		if (codec == CompressionCodec.NONE || length < threshold) {
+			frame.addComponent(true, ctx.alloc().buffer(1).writeByte(0));
+			frame.addComponent(true, msg.retain());
+			if (stats != null)
+				stats.framesSkipped.increment();
+			out.add(frame);
+			return;
+		}
+		if (encoder == null)
+			encoder = newEmbeddedChannel(ctx.channel(), codec.newEncoder(level));
+		frame.addComponent(true, ctx.alloc().buffer(1).writeByte(codec.getId()));
+		long start = stats == null ? 0 : cpuTime();
+		try {
+			encoder.writeOutbound(msg.retain());
+			drain(encoder, frame);
+		} catch (Throwable e) {
+			frame.release();
+			throw e;
+		}
+		if (stats != null) {
+			stats.compressNanos.add(cpuTime() - start);
+			stats.framesCompressed.increment();
+			stats.bytesBeforeCompression.add(length);
+			stats.bytesAfterCompression.add(frame.readableBytes() - 1);
+		}
+		out.add(frame);
+	}
+
+	@Override
+	protected void decode(ChannelHandlerContext ctx, ByteBuf msg, List<Object> out) throws Exception {
+		if (!msg.isReadable())
+			throw new CorruptedFrameException("empty frame without compression flag");
+		byte id = msg.readByte();
+		if (id == 0) {
+			out.add(msg.retain());
+			return;
+		}
+		CompressionCodec frameCodec = CompressionCodec.forId(id);
+		if (frameCodec == null)
+			throw new CorruptedFrameException("unknown compression flag: " + id);
+		if (!frameCodec.isAvailable())
+			throw new DecoderException("compression codec is not available: " + frameCodec);
+		int length = msg.readableBytes();
+		FrameDecompressor decompressor = decompressors[id];
+		if (decompressor == null) {
+			decompressor = frameCodec.newDecompressor(ctx.channel());
+			decompressors[id] = decompressor;
+		}
+		long start = stats == null ? 0 : cpuTime();
+		ByteBuf frame = decompressor.decompress(ctx.alloc(), msg, maxFrameLength);
+		if (stats != null) {
+			stats.decompressNanos.add(cpuTime() - start);
+			stats.framesDecompressed.increment();
+			stats.bytesBeforeDecompression.add(length);
+			stats.bytesAfterDecompression.add(frame.readableBytes());
+		}
+		out.add(frame);
+	}
+
+	@Override
+	public void handlerRemoved(ChannelHandlerContext ctx) throws Exception {
+		if (encoder != null) {
+			encoder.finishAndReleaseAll();
+			encoder = null;
+		}
+		for (int i = 0; i < decompressors.length; i++) {
+			if (decompressors[i] != null) {
+				decompressors[i].close();
+				decompressors[i] = null;
+			}
+		}
+		super.handlerRemoved(ctx);
+	}
+
+	static EmbeddedChannel newEmbeddedChannel(Channel channel, ChannelHandler handler) {
+		// 使用所在channel的config，从而使用相同的ByteBufAllocator
+		return new EmbeddedChannel(channel.id(), channel.metadata().hasDisconnect(), channel.config(), handler);
+	}
+
+	/**
+	 * 当前线程的CPU时间(纳秒)，不支持时为System.nanoTime()
+	 */
+	private static long cpuTime() {
+		return CPU_TIME ? THREADS.getCurrentThreadCpuTime() : System.nanoTime();
+	}
+
+	/**
+	 * 把EmbeddedChannel中已经压缩好的ByteBuf都加入frame
+	 */
+	private static void drain(EmbeddedChannel channel, CompositeByteBuf frame) {
+		for (;;) {
+			ByteBuf buf = channel.readOutbound();
+			if (buf == null)
+				return;
+			if (buf.isReadable())
+				frame.addComponent(true, buf);
+			else
+				buf.release();
+		}
+	}
+}
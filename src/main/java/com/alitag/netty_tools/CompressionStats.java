@@ -0,0 +1,136 @@
+package com.alitag.netty_tools;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>
+ * 一组连接的压缩统计：压缩和跳过的帧数、压缩前后的字节数、压缩和解压花费的时间。
+ * </p>
+ * <p>
+ * 把它赋给{@link NettyConfig#compressionStats}后，每个连接的{@link CompressionHandler}都会把数据记入其中；多个NettyConfig可以共用一个CompressionStats。
+ * 时间是EventLoop线程在压缩/解压中花费的CPU时间(ThreadMXBean.getCurrentThreadCpuTime()的差)；JVM不支持或关闭了线程CPU时间时，为System.nanoTime()的差。
+ * </p>
+ * <p>
+ * 线程安全：该类线程安全。计数器使用LongAdder，各个EventLoop线程更新时互不竞争。
+ * </p>
+ *
+ * @author gchangyi
+ * @version 1.0
+ */
+public class CompressionStats {
+
+	final LongAdder framesCompressed = new LongAdder();
+
+	final LongAdder framesSkipped = new LongAdder();
+
+	final LongAdder bytesBeforeCompression = new LongAdder();
+
+	final LongAdder bytesAfterCompression = new LongAdder();
+
+	final LongAdder compressNanos = new LongAdder();
+
+	final LongAdder framesDecompressed = new LongAdder();
+
+	final LongAdder bytesBeforeDecompression = new LongAdder();
+
+	final LongAdder bytesAfterDecompression = new LongAdder();
+
+	final LongAdder decompressNanos = new LongAdder();
+
+	/**
+	 * @return 压缩后发送的帧数
+	 */
+	public long getFramesCompressed() {
+		return framesCompressed.sum();
+	}
+
+	/**
+	 * @return 因为小于{@link NettyConfig#compressionThreshold}而没有压缩的帧数
+	 */
+	public long getFramesSkipped() {
+		return framesSkipped.sum();
+	}
+
+	/**
+	 * @return 压缩的帧在压缩前的字节数
+	 */
+	public long getBytesBeforeCompression() {
+		return bytesBeforeCompression.sum();
+	}
+
+	/**
+	 * @return 压缩的帧在压缩后的字节数
+	 */
+	public long getBytesAfterCompression() {
+		return bytesAfterCompression.sum();
+	}
+
+	/**
+	 * @return 压缩花费的CPU时间(纳秒)
+	 */
+	public long getCompressNanos() {
+		return compressNanos.sum();
+	}
+
+	/**
+	 * @return 解压的帧数
+	 */
+	public long getFramesDecompressed() {
+		return framesDecompressed.sum();
+	}
+
+	/**
+	 * @return 解压的帧在解压前的字节数
+	 */
+	public long getBytesBeforeDecompression() {
+		return bytesBeforeDecompression.sum();
+	}
+
+	/**
+	 * @return 解压的帧在解压后的字节数
+	 */
+	public long getBytesAfterDecompression() {
+		return bytesAfterDecompression.sum();
+	}
+
+	/**
+	 * @return 解压花费的CPU时间(纳秒)
+	 */
+	public long getDecompressNanos() {
+		return decompressNanos.sum();
+	}
+
+	/**
+	 * @return 压缩率，即压缩前的字节数/压缩后的字节数，没有压缩过时为0
+	 */
+	public double getCompressionRatio() {
+		long after = bytesAfterCompression.sum();
+		return after == 0 ? 0 : (double) bytesBeforeCompression.sum() / after;
+	}
+
+	/**
+	 * <p>
+	 * 清空所有计数器。
+	 * </p>
+	 */
+	public void reset() {
+		framesCompressed.reset();
+		framesSkipped.reset();
+		bytesBeforeCompression.reset();
+		bytesAfterCompression.reset();
+		compressNanos.reset();
+		framesDecompressed.reset();
+		bytesBeforeDecompression.reset();
+		bytesAfterDecompression.reset();
+		decompressNanos.reset();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("compressed=%d frames %d->%d bytes (ratio %.2f, %.1f ms), skipped=%d frames, "
+				+ "decompressed=%d frames %d->%d bytes (%.1f ms)", getFramesCompressed(), getBytesBeforeCompression(),
+				getBytesAfterCompression(), getCompressionRatio(), getCompressNanos() / 1e6, getFramesSkipped(),
+				getFramesDecompressed(), getBytesBeforeDecompression(), getBytesAfterDecompression(),
+				getDecompressNanos() / 1e6);
+	}
+}
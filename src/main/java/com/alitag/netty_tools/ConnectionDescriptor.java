@@ -0,0 +1,161 @@
+package com.alitag.netty_tools;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelId;
+
+import java.net.InetSocketAddress;
+
+/**
+ * <p>
+ * 连接的描述信息：本机和对方的地址、预先生成好的字符串、channel id和连接建立的时间。
+ * </p>
+ * <p>
+ * 在channel变为active时生成一次，保存在channel的属性中(AcceptorBuilder和ConnectorBuilder生成的channel自动生成，其他channel在第一次调用
+ * {@link ChannelHelper#getDescriptor(Channel)}时生成)，之后ChannelHelper中的各个方法直接返回其中的值，不再解析地址，也不再拼接字符串。
+ * </p>
+ * <p>
+ * 线程安全：该类线程安全，因为它是不可变的。
+ * </p>
+ *
+ * @author gchangyi
+ * @version 1.0
+ */
+public final class ConnectionDescriptor {
+
+	private final ChannelId channelId;
+
+	private final String id;
+
+	private final InetSocketAddress localAddress;
+
+	private final String localIp;
+
+	private final int localPort;
+
+	private final InetSocketAddress remoteAddress;
+
+	private final String remoteIp;
+
+	private final int remotePort;
+
+	private final String remoteIpPort1;
+
+	private final String remoteIpPort2;
+
+	private final long connectTimeMillis;
+
+	private final String text;
+
+	/**
+	 * <p>
+	 * 根据channel当前的状态生成描述信息。
+	 * </p>
+	 *
+	 * @param channel
+	 *            当前的连接对象
+	 */
+	ConnectionDescriptor(Channel channel) {
+		this.channelId = channel.id();
+		this.id = channelId.asShortText();
+		this.localAddress = ChannelHelper.resolveLocalAddress(channel);
+		this.localIp = ChannelHelper.resolveLocalIp(localAddress);
+		this.localPort = localAddress == null ? -1 : localAddress.getPort();
+		this.remoteAddress = ChannelHelper.resolveRemoteAddress(channel);
+		this.remoteIp = ChannelHelper.resolveHostAddress(remoteAddress);
+		this.remotePort = remoteAddress == null ? -1 : remoteAddress.getPort();
+		this.remoteIpPort1 = "[/" + remoteIp + ": " + remotePort + "]";
+		this.remoteIpPort2 = remoteIp + ": " + remotePort;
+		this.connectTimeMillis = System.currentTimeMillis();
+		this.text = "[id: 0x" + id + ", L:/" + ChannelHelper.resolveHostAddress(localAddress) + ":" + localPort + " - R:/" + remoteIp
+				+ ":" + remotePort + "]";
+	}
+
+	/**
+	 * @return channel的id
+	 */
+	public ChannelId getChannelId() {
+		return channelId;
+	}
+
+	/**
+	 * @return channel id的短格式，即ChannelId.asShortText()
+	 */
+	public String getId() {
+		return id;
+	}
+
+	/**
+	 * @return 本机的地址，没有时为null
+	 */
+	public InetSocketAddress getLocalAddress() {
+		return localAddress;
+	}
+
+	/**
+	 * @return 本机的ipv4地址，没有时为""
+	 */
+	public String getLocalIp() {
+		return localIp;
+	}
+
+	/**
+	 * @return 本机的端口，没有时为-1
+	 */
+	public int getLocalPort() {
+		return localPort;
+	}
+
+	/**
+	 * @return 对方的地址，没有时为null
+	 */
+	public InetSocketAddress getRemoteAddress() {
+		return remoteAddress;
+	}
+
+	/**
+	 * @return 对方的ip，没有时为""
+	 */
+	public String getRemoteIp() {
+		return remoteIp;
+	}
+
+	/**
+	 * @return 对方的端口，没有时为-1
+	 */
+	public int getRemotePort() {
+		return remotePort;
+	}
+
+	/**
+	 * @return 对方的ip和port，格式为[/xxx.xxx.xxx.xxx: port]
+	 */
+	public String getRemoteIpPort1() {
+		return remoteIpPort1;
+	}
+
+	/**
+	 * @return 对方的ip和port，格式为xxx.xxx.xxx.xxx: port
+	 */
+	public String getRemoteIpPort2() {
+		return remoteIpPort2;
+	}
+
+	/**
+	 * @return 连接建立(channel变为active)的时间，即System.currentTimeMillis()
+	 */
+	public long getConnectTimeMillis() {
+		return connectTimeMillis;
+	}
+
+	/**
+	 * <p>
+	 * 返回用于日志的描述，格式为[id: 0xid, L:/ip:port - R:/ip:port]。
+	 * </p>
+	 *
+	 * @return 连接的描述
+	 */
+	@Override
+	public String toString() {
+		return text;
+	}
+}
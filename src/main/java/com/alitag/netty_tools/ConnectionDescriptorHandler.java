@@ -0,0 +1,44 @@
+package com.alitag.netty_tools;
+
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+
+/**
+ * <p>
+ * 在channel变为active时生成{@link ConnectionDescriptor}，然后把自己从pipeline中移除。由AcceptorBuilder和ConnectorBuilder加入。
+ * </p>
+ * <p>
+ * 线程安全：该类线程安全，所有channel共用一个实例。
+ * </p>
+ * 
+ * @author gchangyi
+ * @version 1.0
+ */
+@Sharable
+class ConnectionDescriptorHandler extends ChannelInboundHandlerAdapter {
+
+	static final String NAME = "connection_descriptor";
+
+	static final ConnectionDescriptorHandler INSTANCE = new ConnectionDescriptorHandler();
+
+	private ConnectionDescriptorHandler() {
+		// do nothing
+	}
+
+	@Override
+	public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+		// 服务端接受的channel在初始化时已经是active的
+		if (ctx.channel().isActive()) {
+			ChannelHelper.initDescriptor(ctx.channel());
+			ctx.pipeline().remove(this);
+		}
+	}
+
+	@Override
+	public void channelActive(ChannelHandlerContext ctx) throws Exception {
+		ChannelHelper.initDescriptor(ctx.channel());
+		ctx.pipeline().remove(this);
+		ctx.fireChannelActive();
+	}
+}
@@ -0,0 +1,349 @@
+package com.alitag.netty_tools;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.pool.AbstractChannelPoolHandler;
+import io.netty.channel.pool.AbstractChannelPoolMap;
+import io.netty.channel.pool.ChannelHealthChecker;
+import io.netty.channel.pool.FixedChannelPool;
+import io.netty.util.AttributeKey;
+import io.netty.util.Timeout;
+import io.netty.util.TimerTask;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.FutureListener;
+
+import java.io.Closeable;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * 按远端地址分组的连接池，建立在ConnectorBuilder生成的Bootstrap之上。每个远端地址一个池，池的参数由NettyConfig中pool开头的字段决定。
+ * </p>
+ * <p>
+ * 每个池是一个{@link FixedChannelPool}：空闲连接保存在无锁队列中，计数在池的EventLoop中串行处理，acquire和release不使用锁。
+ * 空闲超过{@link NettyConfig#poolIdleTimeoutMillis}的连接由{@link SharedWheelTimer}关闭，但每个池至少保留{@link NettyConfig#poolMinConnections}个连接。
+ * </p>
+ * <p>
+ * 使用示例：
+ * 
+ * <pre>
+ * ConnectionPool pool = connectorBuilder.getConnectionPool();
+ * Channel channel = pool.acquire(remoteAddress).sync().getNow();
+ * try {
+ * 	channel.writeAndFlush(request);
+ * } finally {
+ * 	pool.release(channel);
+ * }
+ * </pre>
+ * </p>
+ * <p>
+ * 线程安全：该类线程安全。
+ * </p>
+ * 
+ * @author gchangyi
+ * @version 1.0
+ */
+public class ConnectionPool implements Closeable {
+
+	private static final String PREFIX = ConnectionPool.class.getName();
+
+	/** 连接在池中的状态 */
+	private static final AttributeKey<PooledState> KEY_STATE = AttributeKey.valueOf(PREFIX + ".state");
+
+	private final NettyConfig config;
+
+	private final Bootstrap bootstrap;
+
+	private final ChannelInitializer<?> channelInitializer;
+
+	private final AbstractChannelPoolMap<SocketAddress, KeyedPool> pools = new AbstractChannelPoolMap<SocketAddress, KeyedPool>() {
+		@Override
+		protected KeyedPool newPool(SocketAddress key) {
+			PoolHandler handler = new PoolHandler();
+			KeyedPool pool = new KeyedPool(bootstrap.clone().remoteAddress(key), handler);
+			handler.pool = pool;
+			pool.prewarm();
+			return pool;
+		}
+	};
+
+	/**
+	 * <p>
+	 * 构造函数。将使用builder生成的Bootstrap和其NettyConfig。
+	 * </p>
+	 * 
+	 * @param builder
+	 *            用于建立连接的ConnectorBuilder
+	 * @throws IllegalArgumentException
+	 *             如果builder为null，或者池的参数不合法
+	 */
+	public ConnectionPool(ConnectorBuilder builder) {
+		ArgumentValidator.notNull(builder, "builder");
+		this.config = builder.getNettyConfig();
+		ArgumentValidator.isTrue(config.poolMaxConnections > 0, "poolMaxConnections should be >0: " + config.poolMaxConnections);
+		ArgumentValidator.isTrue(config.poolMinConnections >= 0 && config.poolMinConnections <= config.poolMaxConnections,
+				"poolMinConnections should be in [0, poolMaxConnections]: " + config.poolMinConnections);
+		ArgumentValidator.isTrue(config.poolMaxPendingAcquires > 0, "poolMaxPendingAcquires should be >0: " + config.poolMaxPendingAcquires);
+		ArgumentValidator.isTrue(config.poolAcquireTimeoutMillis >= 0, "poolAcquireTimeoutMillis should be >=0: "
+				+ config.poolAcquireTimeoutMillis);
+		ArgumentValidator.isTrue(config.poolIdleTimeoutMillis >= 0, "poolIdleTimeoutMillis should be >=0: " + config.poolIdleTimeoutMillis);
+		ArgumentValidator.notNull(config.poolHealthChecker, "poolHealthChecker");
+		this.bootstrap = builder.getConnector();
+		this.channelInitializer = builder.getChannelInitializer();
+	}
+
+	/**
+	 * <p>
+	 * 从remote对应的池中取得一个连接。如果没有空闲连接且未达到上限，会新建一个连接。
+	 * </p>
+	 * 
+	 * @param remote
+	 *            远端地址
+	 * @return 取得连接的Future。超过poolAcquireTimeoutMillis时以TimeoutException失败
+	 * @throws IllegalArgumentException
+	 *             如果remote为null
+	 */
+	public Future<Channel> acquire(SocketAddress remote) {
+		ArgumentValidator.notNull(remote, "remote");
+		return pools.get(remote).acquire();
+	}
+
+	/**
+	 * <p>
+	 * 把连接归还到它所属的池中。
+	 * </p>
+	 * 
+	 * @param channel
+	 *            通过{@link #acquire(SocketAddress)}得到的连接
+	 * @return 归还的Future
+	 * @throws IllegalArgumentException
+	 *             如果channel为null，或者不是从该连接池得到的
+	 */
+	public Future<Void> release(Channel channel) {
+		ArgumentValidator.notNull(channel, "channel");
+		PooledState state = channel.attr(KEY_STATE).get();
+		ArgumentValidator.isTrue(state != null && state.pool.owner() == this, "channel is not acquired from this pool: " + channel);
+		return state.pool.release(channel);
+	}
+
+	/**
+	 * <p>
+	 * 得到到remote的已打开的连接数(包括空闲的和正在使用的)。
+	 * </p>
+	 * 
+	 * @param remote
+	 *            远端地址
+	 * @return 已打开的连接数。如果还没有到remote的池，返回0
+	 */
+	public int getOpenConnections(SocketAddress remote) {
+		if (remote == null || !pools.contains(remote))
+			return 0;
+		return pools.get(remote).handler.open.get();
+	}
+
+	/**
+	 * <p>
+	 * 关闭所有池和池中的连接。等待中的acquire将会失败。
+	 * </p>
+	 */
+	public void close() {
+		pools.close();
+	}
+
+	private class KeyedPool extends FixedChannelPool {
+
+		private final PoolHandler handler;
+
+		KeyedPool(Bootstrap bootstrap, PoolHandler handler) {
+			super(bootstrap, handler, new IdleClaimingHealthChecker(config.poolHealthChecker),
+					config.poolAcquireTimeoutMillis > 0 ? AcquireTimeoutAction.FAIL : null,
+					config.poolAcquireTimeoutMillis > 0 ? config.poolAcquireTimeoutMillis : -1, config.poolMaxConnections,
+					config.poolMaxPendingAcquires, config.poolHealthCheckOnRelease);
+			this.handler = handler;
+		}
+
+		ConnectionPool owner() {
+			return ConnectionPool.this;
+		}
+
+		/**
+		 * 预先建立poolMinConnections个连接，建立完毕后全部放回池中
+		 */
+		void prewarm() {
+			final int min = config.poolMinConnections;
+			if (min == 0)
+				return;
+			final List<Channel> channels = new ArrayList<Channel>(min);
+			final AtomicInteger remaining = new AtomicInteger(min);
+			for (int i = 0; i < min; i++) {
+				acquire().addListener(new FutureListener<Channel>() {
+					public void operationComplete(Future<Channel> future) throws Exception {
+						if (future.isSuccess()) {
+							synchronized (channels) {
+								channels.add(future.getNow());
+							}
+						}
+						if (remaining.decrementAndGet() == 0) {
+							synchronized (channels) {
+								for (Channel channel : channels) {
+									release(channel);
+								}
+							}
+						}
+					}
+				});
+			}
+		}
+	}
+
+	private class PoolHandler extends AbstractChannelPoolHandler {
+
+		/** 已打开的连接数 */
+		final AtomicInteger open = new AtomicInteger();
+
+		volatile KeyedPool pool;
+
+		@Override
+		public void channelCreated(Channel ch) throws Exception {
+			open.incrementAndGet();
+			final PooledState state = new PooledState(pool);
+			ch.attr(KEY_STATE).set(state);
+			ch.closeFuture().addListener(new ChannelFutureListener() {
+				public void operationComplete(ChannelFuture future) throws Exception {
+					if (state.uncount())
+						open.decrementAndGet();
+				}
+			});
+			ch.pipeline().addLast(channelInitializer);
+		}
+
+		@Override
+		public void channelAcquired(Channel ch) throws Exception {
+			PooledState state = ch.attr(KEY_STATE).get();
+			Timeout timeout = state.idleTimeout;
+			state.idleTimeout = null;
+			if (timeout != null)
+				timeout.cancel();
+		}
+
+		@Override
+		public void channelReleased(Channel ch) throws Exception {
+			ch.attr(KEY_STATE).get().phase.set(PooledState.IDLE);
+			if (config.poolIdleTimeoutMillis > 0 && ch.isActive())
+				scheduleEviction(ch);
+		}
+
+		/**
+		 * 在时间轮的线程中执行，与取得连接的EventLoop线程并发。先把连接从IDLE改为EVICTING，之后的acquire会把它当作不健康的连接关闭并重新取得
+		 */
+		private void scheduleEviction(final Channel ch) {
+			final PooledState state = ch.attr(KEY_STATE).get();
+			state.idleTimeout = SharedWheelTimer.get().newTimeout(new TimerTask() {
+				public void run(Timeout timeout) throws Exception {
+					if (state.idleTimeout != timeout || !ch.isActive())
+						return;
+					if (!state.phase.compareAndSet(PooledState.IDLE, PooledState.EVICTING))
+						return;
+					if (tryEvict(state)) {
+						ch.close();
+					} else {
+						state.phase.set(PooledState.IDLE);
+						scheduleEviction(ch);
+					}
+				}
+			}, config.poolIdleTimeoutMillis, TimeUnit.MILLISECONDS);
+		}
+
+		/**
+		 * 如果连接数大于poolMinConnections，则立刻把连接数减一并返回true。同一时刻到期的多个连接不会使连接数低于下限
+		 */
+		private boolean tryEvict(PooledState state) {
+			for (;;) {
+				int n = open.get();
+				if (n <= config.poolMinConnections)
+					return false;
+				if (open.compareAndSet(n, n - 1)) {
+					if (state.uncount())
+						return true;
+					// 连接已经被关闭并且已经计数过
+					open.incrementAndGet();
+					return false;
+				}
+			}
+		}
+	}
+
+	/**
+	 * <p>
+	 * 在池的健康检查之前把空闲的连接标记为使用中。与空闲连接的关闭竞争：已经被标记为EVICTING的连接视为不健康，池会关闭它并取得另一个连接。
+	 * </p>
+	 * <p>
+	 * acquire和release时的健康检查都在连接的EventLoop中执行，release时连接仍处于IN_USE，只使用原来的健康检查。
+	 * </p>
+	 */
+	private static class IdleClaimingHealthChecker implements ChannelHealthChecker {
+		private final ChannelHealthChecker checker;
+
+		IdleClaimingHealthChecker(ChannelHealthChecker checker) {
+			this.checker = checker;
+		}
+
+		public Future<Boolean> isHealthy(Channel channel) {
+			PooledState state = channel.attr(KEY_STATE).get();
+			if (state != null && !state.claim())
+				return channel.eventLoop().newSucceededFuture(Boolean.FALSE);
+			return checker.isHealthy(channel);
+		}
+	}
+
+	/**
+	 * 连接在池中的状态，保存在channel的属性中
+	 */
+	private static class PooledState {
+		/** 正在被使用，或者正在建立 */
+		static final int IN_USE = 0;
+
+		/** 在池中空闲 */
+		static final int IDLE = 1;
+
+		/** 空闲超时，正在被关闭 */
+		static final int EVICTING = 2;
+
+		final KeyedPool pool;
+
+		/** 连接空闲时用于关闭它的定时器句柄 */
+		volatile Timeout idleTimeout;
+
+		/** 连接的状态，IN_USE、IDLE或EVICTING */
+		final AtomicInteger phase = new AtomicInteger(IN_USE);
+
+		/** 连接是否还计入池的连接数 */
+		private final AtomicBoolean counted = new AtomicBoolean(true);
+
+		PooledState(KeyedPool pool) {
+			this.pool = pool;
+		}
+
+		/**
+		 * 不再计入连接数。只有第一次调用返回true
+		 */
+		boolean uncount() {
+			return counted.compareAndSet(true, false);
+		}
+
+		/**
+		 * 标记为使用中。连接正在被关闭时返回false
+		 */
+		boolean claim() {
+			return phase.get() == IN_USE || phase.compareAndSet(IDLE, IN_USE);
+		}
+	}
+}
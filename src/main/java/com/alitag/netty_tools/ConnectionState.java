@@ -0,0 +1,19 @@
+package com.alitag.netty_tools;
+
+/**
+ * <p>
+ * {@link ManagedConnection}的连接状态。
+ * </p>
+ * <ul>
+ * <li>CONNECTING: 正在建立连接(第一次连接或重连)</li>
+ * <li>CONNECTED: 连接可用。从备用连接切换过来时也是该状态</li>
+ * <li>DISCONNECTED: 连接断开或建立失败，并且没有可用的备用连接，等待退避时间之后重连</li>
+ * <li>CLOSED: 已经被关闭，不再重连</li>
+ * </ul>
+ * 
+ * @author gchangyi
+ * @version 1.0
+ */
+public enum ConnectionState {
+	CONNECTING, CONNECTED, DISCONNECTED, CLOSED
+}
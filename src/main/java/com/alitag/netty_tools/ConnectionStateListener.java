@@ -0,0 +1,29 @@
+package com.alitag.netty_tools;
+
+/**
+ * <p>
+ * {@link ManagedConnection}的连接状态变化的通知。
+ * </p>
+ * <p>
+ * 线程安全：通知在ManagedConnection使用的EventLoop中发出，实现中不要阻塞。
+ * </p>
+ * 
+ * @author gchangyi
+ * @version 1.0
+ */
+public interface ConnectionStateListener {
+
+	/**
+	 * <p>
+	 * 连接状态发生了变化，或者切换到了另一个连接(state为CONNECTED，{@link ManagedConnection#getChannel()}是新的连接)。
+	 * </p>
+	 * 
+	 * @param connection
+	 *            发生变化的ManagedConnection
+	 * @param state
+	 *            新的状态
+	 * @param cause
+	 *            DISCONNECTED时为连接失败的原因，连接正常关闭时及其他状态为null
+	 */
+	void stateChanged(ManagedConnection connection, ConnectionState state, Throwable cause);
+}
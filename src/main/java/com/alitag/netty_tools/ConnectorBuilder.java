@@ -1,10 +1,17 @@
 package com.alitag.netty_tools;
 
 import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoop;
 import io.netty.channel.EventLoopGroup;
-import io.netty.channel.nio.NioEventLoopGroup;
-import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.channel.WriteBufferWaterMark;
+
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * <p>
@@ -27,6 +34,27 @@ public class ConnectorBuilder {
 
 	private EventLoopGroup group;
 
+	/** 线程组是否由NettyConfig从外部提供，外部提供的线程组不会被关闭 */
+	private boolean externalGroup;
+
+	/** 实际使用的传输方式，在生成Bootstrap时确定 */
+	private TransportMode transportMode;
+
+	/** 实际使用的ChannelInitializer，在生成Bootstrap时确定 */
+	private BuilderChannelInitializer channelInitializer;
+
+	/** 启用TLS时的SslContext和卸载握手的线程组，在生成Bootstrap时确定 */
+	private TlsSupport tls;
+
+	/** 所有channel使用的ByteBufAllocator，在生成Bootstrap时确定 */
+	private ByteBufAllocator allocator;
+
+	/** 建立在生成的Bootstrap之上的连接池 */
+	private ConnectionPool connectionPool;
+
+	/** 生成的所有自动重连的连接，关闭线程池时关闭 */
+	private final List<ManagedConnection> managedConnections = new ArrayList<ManagedConnection>();
+
 	/**
 	 * <p>
 	 * 默认构造函数。将产生一个NettyConfig对象并使用其默认值。
@@ -61,52 +89,216 @@ public class ConnectorBuilder {
 	@SuppressWarnings("deprecation")
 	public synchronized Bootstrap getConnector() {
 		if (connector == null) {
-			connector = new Bootstrap();
-			if (config.threadPool) {
-				group = new NioEventLoopGroup();
-				connector.group(group);
-			} else {
-				connector.group();
+			ArgumentValidator.notNull(config.transportMode, "transportMode");
+			ArgumentValidator.isTrue(config.workerThreads >= 0, "workerThreads should be >=0: " + config.workerThreads);
+			CompressionHandler.validate(config);
+			tls = TlsSupport.of(config, false);
+			// 之后的步骤抛出异常时关闭本次生成的线程组并恢复到没有生成的状态，以免线程泄漏，下次调用时重新生成
+			boolean ok = false;
+			try {
+				// 使用外部线程组时，传输方式由线程组决定
+				if (config.threadPool && config.workerGroup != null) {
+					transportMode = TransportHelper.transportOf(config.workerGroup);
+				} else {
+					transportMode = config.transportMode.resolve();
+				}
+				connector = new Bootstrap();
+				if (config.threadPool) {
+					externalGroup = config.workerGroup != null;
+					if (externalGroup) {
+						group = config.workerGroup;
+					} else {
+						group = TransportHelper.newEventLoopGroup(transportMode, config.workerThreads,
+								TransportHelper.newThreadFactory(config, "connector"));
+					}
+					connector.group(group);
+				} else {
+					connector.group();
+				}
+				connector.channel(TransportHelper.channelClass(transportMode));
+				allocator = AllocatorHelper.newAllocator(config);
+				channelInitializer = new BuilderChannelInitializer(config, tls);
+				configure(connector);
+				ok = true;
+			} finally {
+				if (!ok)
+					abandon();
 			}
-			connector.channel(NioSocketChannel.class);
-			connector.option(ChannelOption.SO_KEEPALIVE, config.socket_keepAlive);
-			connector.option(ChannelOption.SO_REUSEADDR, config.reuseAddress);
-			connector.option(ChannelOption.TCP_NODELAY, config.tcp_no_delay);
-			connector.option(ChannelOption.SO_RCVBUF, config.receiver_buffer_size);
-			connector.option(ChannelOption.SO_LINGER, config.socket_soLinger); // 如果soLinger为0，当连接断开后，可以很快重用该端口
-			connector.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, config.connectTimeout); // 多少秒没有连上服务器则返回
-			connector.handler(config.channelInitializer);
 		}
 		return connector;
 	}
 
+	/**
+	 * getConnector()失败时关闭已经生成的线程组，清除生成到一半的状态
+	 */
+	@SuppressWarnings("deprecation")
+	private void abandon() {
+		if (group != null && !externalGroup)
+			group.shutdownNow();
+		if (tls != null)
+			tls.shutdownNow();
+		connector = null;
+		group = null;
+		tls = null;
+		transportMode = null;
+		allocator = null;
+		channelInitializer = null;
+	}
+
+	/**
+	 * 把NettyConfig中的参数设置到bootstrap中
+	 */
+	private void configure(Bootstrap bootstrap) {
+		bootstrap.option(ChannelOption.SO_KEEPALIVE, config.socket_keepAlive);
+		bootstrap.option(ChannelOption.SO_REUSEADDR, config.reuseAddress);
+		bootstrap.option(ChannelOption.TCP_NODELAY, config.tcp_no_delay);
+		bootstrap.option(ChannelOption.SO_RCVBUF, config.receiver_buffer_size);
+		bootstrap.option(ChannelOption.SO_LINGER, config.socket_soLinger); // 如果soLinger为0，当连接断开后，可以很快重用该端口
+		bootstrap.option(ChannelOption.CONNECT_TIMEOUT_MILLIS, config.connectTimeout); // 多少秒没有连上服务器则返回
+		bootstrap.option(ChannelOption.ALLOCATOR, allocator);
+		bootstrap.option(ChannelOption.RCVBUF_ALLOCATOR, AllocatorHelper.newRecvByteBufAllocator(config));
+		bootstrap.option(ChannelOption.WRITE_BUFFER_WATER_MARK, new WriteBufferWaterMark(config.writeBufferLowWaterMark,
+				config.writeBufferHighWaterMark));
+		bootstrap.attr(ChannelTaskHelper.KEY_TASK_SCHEDULER, config.taskScheduler);
+		bootstrap.attr(WriteHelper.KEY_WRITE_POLICY, config.writePolicy);
+		bootstrap.handler(channelInitializer);
+	}
+
 	/**
 	 * <p>
-	 * 关闭线程池。如果没有启用或者已经关闭，不会有任何影响。
+	 * 在inbound所在的EventLoop中建立一个到remoteAddress的连接。用于代理：入站连接和它对应的出站连接在同一个线程中处理，两者之间转发数据时不需要切换线程。
+	 * </p>
+	 * <p>
+	 * 出站连接使用与inbound相同的传输方式，其余参数与{@link #getConnector()}相同。
+	 * </p>
+	 * 
+	 * @param inbound
+	 *            入站连接
+	 * @param remoteAddress
+	 *            远端地址
+	 * @return 连接的Future
+	 * @throws IllegalArgumentException
+	 *             如果inbound或remoteAddress为null
+	 */
+	public synchronized ChannelFuture connect(Channel inbound, SocketAddress remoteAddress) {
+		ArgumentValidator.notNull(inbound, "inbound");
+		ArgumentValidator.notNull(remoteAddress, "remoteAddress");
+		getConnector();
+		EventLoop loop = inbound.eventLoop();
+		Bootstrap bootstrap = new Bootstrap();
+		bootstrap.group(loop);
+		bootstrap.channel(TransportHelper.channelClass(TransportHelper.transportOf(loop)));
+		configure(bootstrap);
+		return bootstrap.connect(remoteAddress);
+	}
+
+	/**
+	 * 得到实际使用的ChannelInitializer，它会先加入工具类需要的handler，再加入NettyConfig中的channelInitializer
+	 */
+	synchronized BuilderChannelInitializer getChannelInitializer() {
+		getConnector();
+		return channelInitializer;
+	}
+
+	/**
+	 * <p>
+	 * 得到所有channel使用的ByteBufAllocator，可用{@link AllocatorHelper#snapshot(ByteBufAllocator)}得到其统计信息。如果还没有生成Bootstrap，返回null。
+	 * </p>
+	 * 
+	 * @return 使用的ByteBufAllocator
+	 */
+	public synchronized ByteBufAllocator getAllocator() {
+		return allocator;
+	}
+
+	/**
+	 * <p>
+	 * 得到建立在生成的Bootstrap之上的连接池。连接池会在关闭线程池时被关闭。
+	 * </p>
+	 * 
+	 * @return 连接池
+	 * @throws IllegalArgumentException
+	 *             如果NettyConfig中连接池的参数不合法
+	 * @see ConnectionPool
+	 */
+	public synchronized ConnectionPool getConnectionPool() {
+		if (connectionPool == null) {
+			connectionPool = new ConnectionPool(this);
+		}
+		return connectionPool;
+	}
+
+	/**
+	 * <p>
+	 * 生成一个到remoteAddress的自动重连的连接，立即开始建立连接。重连的退避时间和备用连接数由NettyConfig中reconnect开头的字段和
+	 * {@link NettyConfig#standbyConnections}决定。关闭线程池时该连接也被关闭。
+	 * </p>
+	 * 
+	 * @param remoteAddress
+	 *            远端地址
+	 * @param listener
+	 *            状态变化的监听器，可以为null。在生成时传入可以收到第一次建立连接的通知
+	 * @return 自动重连的连接
+	 * @throws IllegalArgumentException
+	 *             如果remoteAddress为null，或者重连的参数不合法
+	 * @see ManagedConnection
+	 */
+	public synchronized ManagedConnection newManagedConnection(SocketAddress remoteAddress, ConnectionStateListener listener) {
+		ArgumentValidator.notNull(remoteAddress, "remoteAddress");
+		ManagedConnection connection = new ManagedConnection(this, remoteAddress, listener);
+		managedConnections.add(connection);
+		return connection;
+	}
+
+	/**
+	 * <p>
+	 * 关闭线程池。如果没有启用或者已经关闭，不会有任何影响。由NettyConfig从外部提供的线程组不会被关闭。
 	 * </p>
 	 * 
 	 * @see EventLoopGroup#shutdownGracefully()
 	 */
 	public synchronized void shutdownGracefully() {
+		closeConnectionPool();
 		if (group != null) {
-			group.shutdownGracefully();
+			if (!externalGroup)
+				group.shutdownGracefully();
 			group = null;
 		}
+		if (tls != null) {
+			tls.shutdownGracefully();
+			tls = null;
+		}
 	}
 
 	/**
 	 * <p>
-	 * 立刻关闭线程池。池中未运行的任务将会被取消。
+	 * 立刻关闭线程池。池中未运行的任务将会被取消。由NettyConfig从外部提供的线程组不会被关闭。
 	 * </p>
 	 * 
 	 * @see EventLoopGroup#shutdownNow()
 	 */
 	@SuppressWarnings("deprecation")
 	public synchronized void shutdownNow() {
+		closeConnectionPool();
 		if (group != null) {
-			group.shutdownNow();
+			if (!externalGroup)
+				group.shutdownNow();
 			group = null;
 		}
+		if (tls != null) {
+			tls.shutdownNow();
+			tls = null;
+		}
+	}
+
+	private void closeConnectionPool() {
+		if (connectionPool != null) {
+			connectionPool.close();
+			connectionPool = null;
+		}
+		for (ManagedConnection connection : managedConnections)
+			connection.close();
+		managedConnections.clear();
 	}
 
 	/**
@@ -118,6 +310,17 @@ public class ConnectorBuilder {
 		return group == null || group.isTerminated();
 	}
 
+	/**
+	 * <p>
+	 * 得到实际使用的传输方式(NIO或EPOLL)。如果还没有生成Bootstrap，返回null。
+	 * </p>
+	 * 
+	 * @return 实际使用的传输方式
+	 */
+	public synchronized TransportMode getTransportMode() {
+		return transportMode;
+	}
+
 	/**
 	 * <p>
 	 * 得到持有的NettyConfig对象。对于该config的修改不会对已经生成的Bootstrap对象产生影响。
@@ -0,0 +1,103 @@
+package com.alitag.netty_tools;
+
+import io.netty.channel.Channel;
+import io.netty.util.AttributeKey;
+
+/**
+ * <p>
+ * 服务端排空({@link AcceptorBuilder#drain(long)})时使用的未完成请求数。排空会等待每个连接上未完成的请求数降到0之后再关闭该连接。
+ * </p>
+ * <p>
+ * 请求数有两种维护方式：使用默认的ChannelInitializeBuilder并设置{@link NettyConfig#trackInFlightRequests}时，按"一条请求对应一条响应"自动计数；
+ * 否则由业务代码在收到请求时调用{@link #requestStarted(Channel)}，在响应写出之后(例如在writeAndFlush返回的future的listener中)调用
+ * {@link #requestCompleted(Channel)}。两种方式不要同时使用。
+ * </p>
+ * <p>
+ * 只有AcceptorBuilder生成的channel有计数，其他channel上调用这些方法没有任何效果。
+ * </p>
+ * <p>
+ * 线程安全：该类线程安全，因为它只提供了无状态的工具函数。
+ * </p>
+ * 
+ * @author gchangyi
+ * @version 1.0
+ */
+public class DrainHelper {
+
+	static final AttributeKey<InFlightCounter> KEY_COUNTER = AttributeKey.valueOf(DrainHelper.class.getName() + ".in_flight");
+
+	/**
+	 * 私有构造函数。防止被实例化。
+	 */
+	private DrainHelper() {
+		// do nothing
+	}
+
+	/**
+	 * <p>
+	 * 开始处理一个请求，未完成的请求数加1。
+	 * </p>
+	 * 
+	 * @param channel
+	 *            当前的连接对象
+	 * @throws IllegalArgumentException
+	 *             如果channel为null
+	 */
+	public static void requestStarted(Channel channel) {
+		ArgumentValidator.notNull(channel, "channel");
+		InFlightCounter counter = channel.attr(KEY_COUNTER).get();
+		if (counter != null)
+			counter.increment();
+	}
+
+	/**
+	 * <p>
+	 * 一个请求处理完毕，未完成的请求数减1(不会小于0)。如果channel正在排空并且这是最后一个请求，channel将被关闭，因此应当在响应写出之后再调用。
+	 * </p>
+	 * 
+	 * @param channel
+	 *            当前的连接对象
+	 * @throws IllegalArgumentException
+	 *             如果channel为null
+	 */
+	public static void requestCompleted(Channel channel) {
+		ArgumentValidator.notNull(channel, "channel");
+		InFlightCounter counter = channel.attr(KEY_COUNTER).get();
+		if (counter != null)
+			counter.decrement();
+	}
+
+	/**
+	 * <p>
+	 * 得到channel上未完成的请求数。
+	 * </p>
+	 * 
+	 * @param channel
+	 *            当前的连接对象
+	 * @return 未完成的请求数，没有计数时为0
+	 * @throws IllegalArgumentException
+	 *             如果channel为null
+	 */
+	public static int getInFlight(Channel channel) {
+		ArgumentValidator.notNull(channel, "channel");
+		InFlightCounter counter = channel.attr(KEY_COUNTER).get();
+		return counter == null ? 0 : counter.get();
+	}
+
+	/**
+	 * <p>
+	 * channel是否正在排空。正在排空的channel不应再接受新的请求，例如可以直接回复错误让客户端到别处重试。
+	 * </p>
+	 * 
+	 * @param channel
+	 *            当前的连接对象
+	 * @return 是否正在排空
+	 * @throws IllegalArgumentException
+	 *             如果channel为null
+	 */
+	public static boolean isDraining(Channel channel) {
+		ArgumentValidator.notNull(channel, "channel");
+		InFlightCounter counter = channel.attr(KEY_COUNTER).get();
+		return counter != null && counter.isDraining();
+	}
+}
@@ -0,0 +1,69 @@
+package com.alitag.netty_tools;
+
+/**
+ * <p>
+ * 服务端排空({@link AcceptorBuilder#drain(long)})的统计结果。
+ * </p>
+ * <p>
+ * 线程安全：该类线程安全，因为它是不可变类。
+ * </p>
+ * 
+ * @author gchangyi
+ * @version 1.0
+ */
+public class DrainResult {
+
+	private final int channels;
+	private final int drainedChannels;
+	private final int forceClosedChannels;
+	private final long inFlightAtStart;
+	private final long abandonedRequests;
+	private final long elapsedMillis;
+
+	DrainResult(int channels, int drainedChannels, int forceClosedChannels, long inFlightAtStart, long abandonedRequests,
+			long elapsedMillis) {
+		this.channels = channels;
+		this.drainedChannels = drainedChannels;
+		this.forceClosedChannels = forceClosedChannels;
+		this.inFlightAtStart = inFlightAtStart;
+		this.abandonedRequests = abandonedRequests;
+		this.elapsedMillis = elapsedMillis;
+	}
+
+	/** @return 排空的连接数，即开始排空时的连接数加上排空过程中才完成初始化的连接数 */
+	public int getChannels() {
+		return channels;
+	}
+
+	/** @return 在期限之前关闭的连接数(处理完所有请求后关闭，或者被客户端关闭) */
+	public int getDrainedChannels() {
+		return drainedChannels;
+	}
+
+	/** @return 到期限时仍有未完成的请求、被强制关闭的连接数 */
+	public int getForceClosedChannels() {
+		return forceClosedChannels;
+	}
+
+	/** @return 开始排空时所有连接上未完成的请求数 */
+	public long getInFlightAtStart() {
+		return inFlightAtStart;
+	}
+
+	/** @return 强制关闭时仍未完成的请求数 */
+	public long getAbandonedRequests() {
+		return abandonedRequests;
+	}
+
+	/** @return 排空所用的时间(毫秒) */
+	public long getElapsedMillis() {
+		return elapsedMillis;
+	}
+
+	@Override
+	public String toString() {
+		return "channels=" + channels + ", drained=" + drainedChannels + ", forceClosed=" + forceClosedChannels
+				+ ", inFlightAtStart=" + inFlightAtStart + ", abandonedRequests=" + abandonedRequests + ", elapsedMillis="
+				+ elapsedMillis;
+	}
+}
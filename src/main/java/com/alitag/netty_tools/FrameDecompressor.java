@@ -0,0 +1,42 @@
+package com.alitag.netty_tools;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+
+/**
+ * <p>
+ * {@link CompressionHandler}中一种算法的解压，每个连接每种算法一个实例，由{@link CompressionCodec#newDecompressor(io.netty.channel.Channel)}生成。
+ * </p>
+ * <p>
+ * 线程安全：实现不需要是线程安全的。
+ * </p>
+ *
+ * @author gchangyi
+ * @version 1.0
+ */
+interface FrameDecompressor {
+
+	/**
+	 * <p>
+	 * 解压一帧。
+	 * </p>
+	 *
+	 * @param alloc
+	 *            分配输出的缓冲区
+	 * @param in
+	 *            压缩后的一帧(不含标志)，全部读取
+	 * @param maxLength
+	 *            解压后的最大长度
+	 * @return 解压后的数据
+	 * @throws io.netty.handler.codec.TooLongFrameException
+	 *             如果解压后超过maxLength
+	 * @throws io.netty.handler.codec.CorruptedFrameException
+	 *             如果数据不合法
+	 */
+	ByteBuf decompress(ByteBufAllocator alloc, ByteBuf in, int maxLength);
+
+	/**
+	 * 释放占用的资源，连接关闭或handler被移除时调用
+	 */
+	void close();
+}
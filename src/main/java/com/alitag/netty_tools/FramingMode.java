@@ -0,0 +1,21 @@
+package com.alitag.netty_tools;
+
+/**
+ * <p>
+ * ChannelInitializeBuilder对收到的数据的分帧和解码方式。
+ * </p>
+ * <ul>
+ * <li>LINE_STRING: 按行分帧，每行解码成String。兼容旧版本的默认方式</li>
+ * <li>LINE: 按行分帧，每行是原缓冲区的一个ByteBuf slice，不复制也不解码，由handler在需要时解码并负责release</li>
+ * <li>LINE_ASCII: 按行分帧，每行是一个AsciiString，不做字符解码，适合纯ASCII的文本协议</li>
+ * <li>LENGTH_FIELD: 每帧以长度字段开头，长度字段的字节数和字节序见{@link NettyConfig#lengthFieldLength}和{@link NettyConfig#lengthFieldByteOrder}。
+ * 收到的每帧(不含长度字段)是原缓冲区的一个ByteBuf slice，由handler负责release；写出的ByteBuf和CharSequence会自动加上长度字段。适合二进制协议</li>
+ * </ul>
+ * 
+ * @author gchangyi
+ * @version 1.0
+ * @see LineFrameDecoder
+ */
+public enum FramingMode {
+	LINE_STRING, LINE, LINE_ASCII, LENGTH_FIELD
+}
@@ -0,0 +1,31 @@
+package com.alitag.netty_tools;
+
+import io.netty.channel.Channel;
+
+/**
+ * <p>
+ * 服务端排空({@link AcceptorBuilder#drain(long)})时发给每个客户端的"即将关闭"消息，客户端收到后应当停止在该连接上发送新请求，并在别处重新建立连接。
+ * </p>
+ * <p>
+ * 返回的消息经过pipeline中的编码器写出，因此应当是编码器能处理的类型，例如默认的ChannelInitializeBuilder可以写出CharSequence。
+ * </p>
+ * <p>
+ * 线程安全：该接口的实现必须是线程安全的，会在各个channel的EventLoop中被调用。
+ * </p>
+ * 
+ * @author gchangyi
+ * @version 1.0
+ */
+public interface GoAwayMessage {
+
+	/**
+	 * <p>
+	 * 生成发给channel的消息。
+	 * </p>
+	 * 
+	 * @param channel
+	 *            即将关闭的连接
+	 * @return 欲发送的消息，为null时不发送
+	 */
+	Object create(Channel channel);
+}
@@ -0,0 +1,67 @@
+package com.alitag.netty_tools;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.TooLongFrameException;
+
+/**
+ * <p>
+ * 用Netty自带的解码器(SnappyFrameDecoder、Lz4FrameDecoder)解压，解码器放在EmbeddedChannel中执行。
+ * 解码器每次输出一块(Snappy每块最多64KB)，累计超过maxLength时停止读取并丢弃剩下的输出。
+ * </p>
+ * <p>
+ * 线程安全：该类不是线程安全的，每个连接的每种算法一个实例。
+ * </p>
+ *
+ * @author gchangyi
+ * @version 1.0
+ */
+final class HandlerFrameDecompressor implements FrameDecompressor {
+
+	private final EmbeddedChannel decoder;
+
+	/**
+	 * @param channel
+	 *            所在的连接
+	 * @param handler
+	 *            解码器
+	 */
+	HandlerFrameDecompressor(Channel channel, ChannelHandler handler) {
+		this.decoder = CompressionHandler.newEmbeddedChannel(channel, handler);
+	}
+
+	@Override
+	public ByteBuf decompress(ByteBufAllocator alloc, ByteBuf in, int maxLength) {
+		CompositeByteBuf frame = alloc.compositeBuffer();
+		try {
+			decoder.writeInbound(in.retain());
+			for (;;) {
+				ByteBuf buf = decoder.readInbound();
+				if (buf == null)
+					return frame;
+				if (!buf.isReadable()) {
+					buf.release();
+					continue;
+				}
+				frame.addComponent(true, buf);
+				if (frame.readableBytes() > maxLength) {
+					decoder.releaseInbound();
+					throw new TooLongFrameException("decompressed frame length exceeds the allowed maximum (" + maxLength
+							+ ')');
+				}
+			}
+		} catch (RuntimeException e) {
+			frame.release();
+			throw e;
+		}
+	}
+
+	@Override
+	public void close() {
+		decoder.finishAndReleaseAll();
+	}
+}
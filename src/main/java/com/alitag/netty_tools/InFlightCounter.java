@@ -0,0 +1,84 @@
+package com.alitag.netty_tools;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * 一个channel上未完成的请求数，以及该channel是否正在排空。排空开始后，未完成的请求数降到0时关闭channel。
+ * </p>
+ * <p>
+ * 线程安全：该类线程安全。
+ * </p>
+ * 
+ * @author gchangyi
+ * @version 1.0
+ */
+final class InFlightCounter {
+
+	private final Channel channel;
+
+	private final AtomicInteger count = new AtomicInteger();
+
+	private volatile boolean draining;
+
+	/** InFlightHandler的context，从这里写出GoAwayMessage可以不被当作请求的响应计数；没有InFlightHandler时为null */
+	volatile ChannelHandlerContext context;
+
+	InFlightCounter(Channel channel) {
+		this.channel = channel;
+	}
+
+	int get() {
+		return count.get();
+	}
+
+	boolean isDraining() {
+		return draining;
+	}
+
+	void increment() {
+		count.incrementAndGet();
+	}
+
+	void decrement() {
+		int current;
+		do {
+			current = count.get();
+			if (current == 0)
+				return;
+		} while (!count.compareAndSet(current, current - 1));
+		if (current == 1 && draining)
+			channel.close();
+	}
+
+	/**
+	 * <p>
+	 * 在channel的EventLoop中开始排空：发出GoAwayMessage，如果没有未完成的请求，在消息写出后关闭channel。
+	 * </p>
+	 */
+	void drain(final GoAwayMessage goAwayMessage) {
+		channel.eventLoop().execute(new Runnable() {
+			@Override
+			public void run() {
+				draining = true;
+				ChannelFuture future = null;
+				Object msg = goAwayMessage == null || !channel.isActive() ? null : goAwayMessage.create(channel);
+				if (msg != null) {
+					ChannelHandlerContext ctx = context;
+					future = ctx == null ? channel.writeAndFlush(msg) : ctx.writeAndFlush(msg);
+				}
+				if (count.get() == 0) {
+					if (future == null)
+						channel.close();
+					else
+						future.addListener(ChannelFutureListener.CLOSE);
+				}
+			}
+		});
+	}
+}
@@ -0,0 +1,55 @@
+package com.alitag.netty_tools;
+
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+
+/**
+ * <p>
+ * 位于编解码器之后，按"一条请求对应一条响应"统计未完成的请求数：每读到一条解码后的消息加1，每写出(写入socket成功或失败)一条消息减1。
+ * 由{@link NettyConfig#trackInFlightRequests}启用。
+ * </p>
+ * <p>
+ * 线程安全：该类不是线程安全的，每个channel需要一个新的实例。
+ * </p>
+ * 
+ * @author gchangyi
+ * @version 1.0
+ */
+class InFlightHandler extends ChannelDuplexHandler {
+
+	static final String NAME = "in_flight";
+
+	private final InFlightCounter counter;
+
+	private final ChannelFutureListener completed = new ChannelFutureListener() {
+		@Override
+		public void operationComplete(ChannelFuture future) throws Exception {
+			counter.decrement();
+		}
+	};
+
+	InFlightHandler(InFlightCounter counter) {
+		this.counter = counter;
+	}
+
+	@Override
+	public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+		counter.context = ctx;
+	}
+
+	@Override
+	public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+		counter.increment();
+		ctx.fireChannelRead(msg);
+	}
+
+	@Override
+	public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+		promise = promise.unvoid();
+		promise.addListener(completed);
+		ctx.write(msg, promise);
+	}
+}
@@ -0,0 +1,206 @@
+package com.alitag.netty_tools;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>
+ * 记录延时(或其他非负整数)分布的直方图，用于统计p50、p99、p999等分位数。
+ * </p>
+ * <p>
+ * 与HdrHistogram的思路相同：小于128的值每个值一个桶；更大的值按2的幂分段，每段再平分为64个桶，所以任何值的误差都不超过1/64(约1.6%)，而桶的总数只与最大值的位数有关。
+ * 大于highestTrackableValue的值记入最后一个桶，最大值仍然准确记录。
+ * </p>
+ * <p>
+ * 线程安全：该类线程安全。record()只对一个桶做原子加，可以在多个EventLoop中同时调用；读取时不加锁，读到的是近似同一时刻的数据。
+ * </p>
+ *
+ * @author gchangyi
+ * @version 1.0
+ */
+public class LatencyHistogram {
+
+	/** 小于该值的值每个值一个桶 */
+	private static final int LINEAR_BUCKETS = 128;
+
+	/** 每个2的幂分段中的桶数 */
+	private static final int SUB_BUCKETS = 64;
+
+	private static final int SUB_BUCKET_BITS = 6;
+
+	private final long highestTrackableValue;
+
+	private final AtomicLongArray counts;
+
+	private final LongAdder totalCount = new LongAdder();
+
+	private final LongAdder totalValue = new LongAdder();
+
+	private final AtomicLong max = new AtomicLong();
+
+	/**
+	 * <p>
+	 * 构造函数。
+	 * </p>
+	 *
+	 * @param highestTrackableValue
+	 *            需要准确区分的最大值，例如以微秒记录延时时，60000000表示1分钟
+	 * @throws IllegalArgumentException
+	 *             如果highestTrackableValue<1
+	 */
+	public LatencyHistogram(long highestTrackableValue) {
+		ArgumentValidator.isTrue(highestTrackableValue >= 1, "highestTrackableValue should be >=1: " + highestTrackableValue);
+		this.highestTrackableValue = highestTrackableValue;
+		this.counts = new AtomicLongArray(indexOf(highestTrackableValue) + 1);
+	}
+
+	/**
+	 * @return 需要准确区分的最大值
+	 */
+	public long getHighestTrackableValue() {
+		return highestTrackableValue;
+	}
+
+	/**
+	 * <p>
+	 * 记录一个值。小于0的值按0记录。
+	 * </p>
+	 *
+	 * @param value
+	 *            欲记录的值
+	 */
+	public void record(long value) {
+		if (value < 0)
+			value = 0;
+		counts.incrementAndGet(Math.min(indexOf(value), counts.length() - 1));
+		totalCount.increment();
+		totalValue.add(value);
+		long m;
+		while (value > (m = max.get()) && !max.compareAndSet(m, value))
+			;
+	}
+
+	/**
+	 * <p>
+	 * 把另一个直方图中的数据加到当前直方图中。
+	 * </p>
+	 *
+	 * @param other
+	 *            另一个直方图
+	 * @throws IllegalArgumentException
+	 *             如果other为null，或者两者的highestTrackableValue不同
+	 */
+	public void add(LatencyHistogram other) {
+		ArgumentValidator.notNull(other, "other");
+		ArgumentValidator.isTrue(other.counts.length() == counts.length(), "highestTrackableValue mismatch: "
+				+ other.highestTrackableValue + " vs " + highestTrackableValue);
+		for (int i = 0; i < counts.length(); i++) {
+			long c = other.counts.get(i);
+			if (c != 0)
+				counts.addAndGet(i, c);
+		}
+		totalCount.add(other.totalCount.sum());
+		totalValue.add(other.totalValue.sum());
+		long value = other.max.get();
+		long m;
+		while (value > (m = max.get()) && !max.compareAndSet(m, value))
+			;
+	}
+
+	/**
+	 * <p>
+	 * 清空所有数据。
+	 * </p>
+	 */
+	public void reset() {
+		for (int i = 0; i < counts.length(); i++)
+			counts.set(i, 0);
+		totalCount.reset();
+		totalValue.reset();
+		max.set(0);
+	}
+
+	/**
+	 * @return 记录的值的个数
+	 */
+	public long getTotalCount() {
+		return totalCount.sum();
+	}
+
+	/**
+	 * @return 记录的最大值，没有记录时为0
+	 */
+	public long getMax() {
+		return max.get();
+	}
+
+	/**
+	 * @return 记录的值的平均值，没有记录时为0
+	 */
+	public double getMean() {
+		long count = totalCount.sum();
+		return count == 0 ? 0 : (double) totalValue.sum() / count;
+	}
+
+	/**
+	 * <p>
+	 * 得到分位数：不超过percentile%的值都小于等于返回值。返回值是所在桶的上界，但不超过记录的最大值。
+	 * </p>
+	 *
+	 * @param percentile
+	 *            百分比，例如99.9
+	 * @return 分位数，没有记录时为0
+	 * @throws IllegalArgumentException
+	 *             如果percentile不在0到100之间
+	 */
+	public long getValueAtPercentile(double percentile) {
+		ArgumentValidator.isTrue(percentile >= 0 && percentile <= 100, "percentile should be in [0, 100]: " + percentile);
+		long[] snapshot = new long[counts.length()];
+		long total = 0;
+		for (int i = 0; i < snapshot.length; i++) {
+			snapshot[i] = counts.get(i);
+			total += snapshot[i];
+		}
+		if (total == 0)
+			return 0;
+		long target = Math.max(1, (long) Math.ceil(percentile / 100 * total));
+		long seen = 0;
+		for (int i = 0; i < snapshot.length; i++) {
+			seen += snapshot[i];
+			if (seen >= target)
+				return Math.min(highestValueOf(i), max.get());
+		}
+		return max.get();
+	}
+
+	/**
+	 * <p>
+	 * 返回统计的摘要，格式为count=..., mean=..., p50=..., p90=..., p99=..., p999=..., max=...
+	 * </p>
+	 *
+	 * @return 统计的摘要
+	 */
+	@Override
+	public String toString() {
+		return String.format("count=%d, mean=%.1f, p50=%d, p90=%d, p99=%d, p999=%d, max=%d", getTotalCount(), getMean(),
+				getValueAtPercentile(50), getValueAtPercentile(90), getValueAtPercentile(99), getValueAtPercentile(99.9),
+				getMax());
+	}
+
+	private static int indexOf(long value) {
+		if (value < LINEAR_BUCKETS)
+			return (int) value;
+		// value >> shift 落在[64, 128)
+		int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+		return LINEAR_BUCKETS + (shift - 1) * SUB_BUCKETS + (int) ((value >>> shift) - SUB_BUCKETS);
+	}
+
+	private static long highestValueOf(int index) {
+		if (index < LINEAR_BUCKETS)
+			return index;
+		int shift = (index - LINEAR_BUCKETS) / SUB_BUCKETS + 1;
+		long lowest = (long) ((index - LINEAR_BUCKETS) % SUB_BUCKETS + SUB_BUCKETS) << shift;
+		return lowest + (1L << shift) - 1;
+	}
+}
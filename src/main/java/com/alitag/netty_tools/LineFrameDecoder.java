@@ -0,0 +1,129 @@
+package com.alitag.netty_tools;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.TooLongFrameException;
+import io.netty.util.AsciiString;
+import io.netty.util.ByteProcessor;
+
+import java.util.List;
+
+/**
+ * <p>
+ * 按行切分的解码器，以"\n"或"\r\n"为行结束符，输出的行不含行结束符。
+ * </p>
+ * <p>
+ * 与DelimiterBasedFrameDecoder(lineDelimiter)加StringDecoder相比：用ByteProcessor对缓冲区只扫描一遍，数据不完整时记住已扫描的位置，下次从该位置继续；
+ * 输出的是原缓冲区的retained slice，不复制数据也不解码成String，由后面的handler在需要时再解码(例如ByteBuf.toString(charset))。
+ * 后面的handler负责release收到的ByteBuf，使用SimpleChannelInboundHandler时会自动release。
+ * </p>
+ * <p>
+ * asciiString为true时输出{@link AsciiString}：每行复制一次字节，但不做字符解码，适合纯ASCII的文本协议。
+ * </p>
+ * <p>
+ * 超过maxLength的行会被丢弃直到下一个行结束符，并抛出TooLongFrameException。
+ * </p>
+ * <p>
+ * 线程安全：该类不是线程安全的，每个channel需要一个新的实例。
+ * </p>
+ *
+ * @author gchangyi
+ * @version 1.0
+ */
+public class LineFrameDecoder extends ByteToMessageDecoder {
+
+	private final int maxLength;
+
+	private final boolean asciiString;
+
+	/** 从readerIndex开始已经扫描过、不含"\n"的字节数 */
+	private int scanned;
+
+	/** 正在丢弃过长的行 */
+	private boolean discarding;
+
+	private long discardedBytes;
+
+	/**
+	 * <p>
+	 * 构造函数。输出ByteBuf。
+	 * </p>
+	 *
+	 * @param maxLength
+	 *            一行的最大长度(不含行结束符)
+	 * @throws IllegalArgumentException
+	 *             如果maxLength<=0
+	 */
+	public LineFrameDecoder(int maxLength) {
+		this(maxLength, false);
+	}
+
+	/**
+	 * <p>
+	 * 构造函数。
+	 * </p>
+	 *
+	 * @param maxLength
+	 *            一行的最大长度(不含行结束符)
+	 * @param asciiString
+	 *            为true时输出AsciiString，否则输出ByteBuf
+	 * @throws IllegalArgumentException
+	 *             如果maxLength<=0
+	 */
+	public LineFrameDecoder(int maxLength, boolean asciiString) {
+		ArgumentValidator.isTrue(maxLength > 0, "maxLength must be positive: " + maxLength);
+		this.maxLength = maxLength;
+		this.asciiString = asciiString;
+	}
+
+	@Override
+	protected void decode(ChannelHandlerContext ctx, ByteBuf in, List<Object> out) throws Exception {
+		while (in.isReadable()) {
+			int start = in.readerIndex();
+			int end = in.writerIndex();
+			int eol = in.forEachByte(start + scanned, end - start - scanned, ByteProcessor.FIND_LF);
+			if (eol < 0) {
+				scanned = end - start;
+				if (scanned > maxLength + 1) {
+					// 一行中可能还有"\r"没到，所以多留一个字节
+					discardedBytes += scanned;
+					in.skipBytes(scanned);
+					scanned = 0;
+					discarding = true;
+				}
+				return;
+			}
+			scanned = 0;
+			int length = eol - start;
+			if (length > 0 && in.getByte(eol - 1) == '\r')
+				length--;
+			if (discarding) {
+				long tooLong = discardedBytes + length;
+				discarding = false;
+				discardedBytes = 0;
+				in.readerIndex(eol + 1);
+				fail(ctx, tooLong);
+				continue;
+			}
+			if (length > maxLength) {
+				in.readerIndex(eol + 1);
+				fail(ctx, length);
+				continue;
+			}
+			if (asciiString) {
+				byte[] bytes = new byte[length];
+				in.getBytes(start, bytes);
+				out.add(new AsciiString(bytes, false));
+			} else {
+				out.add(in.retainedSlice(start, length));
+			}
+			in.readerIndex(eol + 1);
+		}
+	}
+
+	private void fail(ChannelHandlerContext ctx, long length) {
+		ctx.fireExceptionCaught(new TooLongFrameException("frame length (" + length + ") exceeds the allowed maximum ("
+				+ maxLength + ')'));
+	}
+}
@@ -0,0 +1,51 @@
+package com.alitag.netty_tools;
+
+/**
+ * <p>
+ * 基于文本行的{@link RequestCorrelator}：请求和响应都是一行，格式为"关联id 内容"，关联id为十进制数。
+ * 适用于默认的ChannelInitializeBuilder({@link FramingMode#LINE_STRING})，收到的行不含行结束符，写出的行以"\n"结束。
+ * </p>
+ * <p>
+ * 不以数字和空格开头的行不是响应，将被传给pipeline中后面的handler。
+ * </p>
+ * <p>
+ * 线程安全：该类线程安全，因为它是无状态的。
+ * </p>
+ * 
+ * @author gchangyi
+ * @version 1.0
+ */
+public class LineRequestCorrelator implements RequestCorrelator<String, String> {
+
+	/** 共享的实例 */
+	public static final LineRequestCorrelator INSTANCE = new LineRequestCorrelator();
+
+	@Override
+	public Object encode(long id, String request) {
+		return new StringBuilder(request.length() + 21).append(id).append(' ').append(request).append('\n');
+	}
+
+	@Override
+	public long idOf(Object msg) {
+		if (!(msg instanceof CharSequence))
+			return -1;
+		CharSequence line = (CharSequence) msg;
+		long id = 0;
+		int length = line.length();
+		for (int i = 0; i < length && i < 19; i++) {
+			char c = line.charAt(i);
+			if (c == ' ')
+				return i == 0 ? -1 : id;
+			if (c < '0' || c > '9')
+				return -1;
+			id = id * 10 + (c - '0');
+		}
+		return -1;
+	}
+
+	@Override
+	public String decode(Object msg) {
+		String line = msg.toString();
+		return line.substring(line.indexOf(' ') + 1);
+	}
+}
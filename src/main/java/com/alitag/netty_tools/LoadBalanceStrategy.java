@@ -0,0 +1,250 @@
+package com.alitag.netty_tools;
+
+import io.netty.util.CharsetUtil;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>
+ * {@link LoadBalancedClient}为每个请求选择服务端的方式。可以继承该类实现自己的选择方式。
+ * </p>
+ * <ul>
+ * <li>{@link #roundRobin()}: 轮流选择</li>
+ * <li>{@link #leastOutstanding()}: 选择未完成的请求数最少的服务端</li>
+ * <li>{@link #powerOfTwoChoices()}: 随机选两个，取未完成的请求数较少的一个(相同时取延时较低的一个)。与leastOutstanding效果接近，但不需要遍历所有服务端，
+ * 也不会让所有客户端同时涌向同一个最空闲的服务端</li>
+ * <li>{@link #consistentHash()}: 按请求的key做一致性哈希，同一个key总是落在同一个服务端上；服务端不可用时，只有它的key被分散到其他服务端</li>
+ * </ul>
+ * <p>
+ * 所有方式都只选择{@link LoadBalancedClient.Endpoint#isAvailable() 可用}的服务端(已经连接并且没有被剔除)，没有可用的服务端时返回null。
+ * </p>
+ * <p>
+ * 线程安全：该类的实现必须是线程安全的。每个LoadBalancedClient需要一个新的实例，不要在多个LoadBalancedClient之间共享。
+ * </p>
+ * 
+ * @author gchangyi
+ * @version 1.0
+ */
+public abstract class LoadBalanceStrategy {
+
+	/**
+	 * @return 轮流选择的方式
+	 */
+	public static LoadBalanceStrategy roundRobin() {
+		return new LoadBalanceStrategy() {
+			private final AtomicInteger next = new AtomicInteger();
+
+			@Override
+			protected LoadBalancedClient.Endpoint select(List<LoadBalancedClient.Endpoint> endpoints, Object key) {
+				// 跳过不可用的服务端时计数器也前进，它的份额平均分给其他服务端，而不是都落到下一个服务端上
+				int size = endpoints.size();
+				for (int i = 0; i < size; i++) {
+					LoadBalancedClient.Endpoint endpoint = endpoints.get((next.getAndIncrement() & Integer.MAX_VALUE) % size);
+					if (endpoint.isAvailable())
+						return endpoint;
+				}
+				return null;
+			}
+
+			@Override
+			public String toString() {
+				return "ROUND_ROBIN";
+			}
+		};
+	}
+
+	/**
+	 * @return 选择未完成的请求数最少的服务端的方式
+	 */
+	public static LoadBalanceStrategy leastOutstanding() {
+		return new LoadBalanceStrategy() {
+			private final AtomicInteger next = new AtomicInteger();
+
+			@Override
+			protected LoadBalancedClient.Endpoint select(List<LoadBalancedClient.Endpoint> endpoints, Object key) {
+				// 从轮流变化的位置开始，请求数相同时不总是选第一个
+				int size = endpoints.size();
+				int start = next.getAndIncrement() & Integer.MAX_VALUE;
+				LoadBalancedClient.Endpoint best = null;
+				for (int i = 0; i < size; i++) {
+					LoadBalancedClient.Endpoint endpoint = endpoints.get((start + i) % size);
+					if (endpoint.isAvailable() && (best == null || endpoint.getOutstanding() < best.getOutstanding()))
+						best = endpoint;
+				}
+				return best;
+			}
+
+			@Override
+			public String toString() {
+				return "LEAST_OUTSTANDING";
+			}
+		};
+	}
+
+	/**
+	 * @return 随机选两个、取较空闲的一个的方式
+	 */
+	public static LoadBalanceStrategy powerOfTwoChoices() {
+		return new LoadBalanceStrategy() {
+			@Override
+			protected LoadBalancedClient.Endpoint select(List<LoadBalancedClient.Endpoint> endpoints, Object key) {
+				int size = endpoints.size();
+				ThreadLocalRandom random = ThreadLocalRandom.current();
+				LoadBalancedClient.Endpoint a = pickAvailable(endpoints, random.nextInt(size));
+				if (a == null || size == 1)
+					return a;
+				LoadBalancedClient.Endpoint b = pickAvailable(endpoints, random.nextInt(size));
+				if (b == a) {
+					// 随机位置重复或者只有一个可用时，b取a之后的下一个可用的服务端
+					b = pickAvailable(endpoints, (endpoints.indexOf(a) + 1) % size);
+				}
+				if (b == null || b == a)
+					return a;
+				int diff = a.getOutstanding() - b.getOutstanding();
+				if (diff != 0)
+					return diff < 0 ? a : b;
+				return a.getLatencyNanos() <= b.getLatencyNanos() ? a : b;
+			}
+
+			@Override
+			public String toString() {
+				return "POWER_OF_TWO_CHOICES";
+			}
+		};
+	}
+
+	/**
+	 * <p>
+	 * 按请求的key做一致性哈希。每个服务端在哈希环上有160个虚拟节点，key为null时按轮流选择。
+	 * </p>
+	 * 
+	 * @return 一致性哈希的方式
+	 */
+	public static LoadBalanceStrategy consistentHash() {
+		return new ConsistentHash(160);
+	}
+
+	/**
+	 * <p>
+	 * LoadBalancedClient生成时调用一次，endpoints是所有服务端，顺序与构造LoadBalancedClient时的地址相同，之后不会改变。
+	 * </p>
+	 * 
+	 * @param endpoints
+	 *            所有服务端
+	 */
+	protected void init(List<LoadBalancedClient.Endpoint> endpoints) {
+		// do nothing
+	}
+
+	/**
+	 * <p>
+	 * 为一个请求选择服务端。
+	 * </p>
+	 * 
+	 * @param endpoints
+	 *            所有服务端，包括不可用的
+	 * @param key
+	 *            请求的key，可能为null
+	 * @return 选择的服务端，必须是可用的，没有可用的服务端时返回null
+	 */
+	protected abstract LoadBalancedClient.Endpoint select(List<LoadBalancedClient.Endpoint> endpoints, Object key);
+
+	/**
+	 * 从index开始找到第一个可用的服务端
+	 */
+	static LoadBalancedClient.Endpoint pickAvailable(List<LoadBalancedClient.Endpoint> endpoints, int index) {
+		int size = endpoints.size();
+		for (int i = 0; i < size; i++) {
+			LoadBalancedClient.Endpoint endpoint = endpoints.get((index + i) % size);
+			if (endpoint.isAvailable())
+				return endpoint;
+		}
+		return null;
+	}
+
+	/**
+	 * 64位的FNV-1a哈希，再经过murmur3的fmix64使各位分布均匀
+	 */
+	static long hash(String s) {
+		long h = 0xcbf29ce484222325L;
+		byte[] bytes = s.getBytes(CharsetUtil.UTF_8);
+		for (byte b : bytes) {
+			h ^= b & 0xff;
+			h *= 0x100000001b3L;
+		}
+		h ^= h >>> 33;
+		h *= 0xff51afd7ed558ccdL;
+		h ^= h >>> 33;
+		h *= 0xc4ceb9fe1a85ec53L;
+		h ^= h >>> 33;
+		return h;
+	}
+
+	private static class ConsistentHash extends LoadBalanceStrategy {
+
+		private final int virtualNodes;
+
+		private final AtomicInteger next = new AtomicInteger();
+
+		/** 哈希环：按哈希值排序的虚拟节点及其所属的服务端 */
+		private long[] ring;
+
+		private LoadBalancedClient.Endpoint[] owners;
+
+		ConsistentHash(int virtualNodes) {
+			this.virtualNodes = virtualNodes;
+		}
+
+		@Override
+		protected void init(List<LoadBalancedClient.Endpoint> endpoints) {
+			int n = endpoints.size() * virtualNodes;
+			long[] hashes = new long[n];
+			long[][] pairs = new long[n][];
+			int k = 0;
+			for (int i = 0; i < endpoints.size(); i++) {
+				String name = endpoints.get(i).getAddress().toString();
+				for (int v = 0; v < virtualNodes; v++) {
+					pairs[k++] = new long[] { hash(name + "#" + v), i };
+				}
+			}
+			Arrays.sort(pairs, new Comparator<long[]>() {
+				@Override
+				public int compare(long[] x, long[] y) {
+					return Long.compare(x[0], y[0]);
+				}
+			});
+			LoadBalancedClient.Endpoint[] ownerArray = new LoadBalancedClient.Endpoint[n];
+			for (int i = 0; i < n; i++) {
+				hashes[i] = pairs[i][0];
+				ownerArray[i] = endpoints.get((int) pairs[i][1]);
+			}
+			this.ring = hashes;
+			this.owners = ownerArray;
+		}
+
+		@Override
+		protected LoadBalancedClient.Endpoint select(List<LoadBalancedClient.Endpoint> endpoints, Object key) {
+			if (key == null)
+				return pickAvailable(endpoints, next.getAndIncrement() & Integer.MAX_VALUE);
+			int index = Arrays.binarySearch(ring, hash(key.toString()));
+			if (index < 0)
+				index = -index - 1;
+			// 顺时针找到第一个可用的服务端
+			for (int i = 0; i < ring.length; i++) {
+				LoadBalancedClient.Endpoint endpoint = owners[(index + i) % ring.length];
+				if (endpoint.isAvailable())
+					return endpoint;
+			}
+			return null;
+		}
+
+		@Override
+		public String toString() {
+			return "CONSISTENT_HASH(" + virtualNodes + ")";
+		}
+	}
+}
@@ -0,0 +1,460 @@
+package com.alitag.netty_tools;
+
+import io.netty.util.Timeout;
+import io.netty.util.TimerTask;
+
+import java.io.Closeable;
+import java.net.ConnectException;
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+
+/**
+ * <p>
+ * 在多个服务端之间做负载均衡的异步客户端。每个服务端一个{@link ManagedConnection}(自动重连)，连接上使用{@link PipelinedClient}同时发出多个请求，
+ * 每个请求由{@link LoadBalanceStrategy}选择服务端。
+ * </p>
+ * <p>
+ * 异常剔除：每个服务端统计延时的指数移动平均(EWMA)和连续失败的次数(超时、连接断开等，未完成请求数超过上限不算失败)。
+ * </p>
+ * <ul>
+ * <li>连续失败{@link NettyConfig#balancerEjectConsecutiveFailures}次时立即剔除；</li>
+ * <li>每隔{@link NettyConfig#balancerCheckIntervalMillis}检查一次，在这段时间内完成了至少{@link NettyConfig#balancerMinSamples}个请求、
+ * 并且延时超过所有这样的服务端延时中位数的{@link NettyConfig#balancerEjectLatencyFactor}倍时剔除；</li>
+ * <li>被剔除的服务端在{@link NettyConfig#balancerEjectMillis}之后恢复，延时的统计重新开始；</li>
+ * <li>被剔除的服务端不超过总数的{@link NettyConfig#balancerMaxEjectedPercent}%，避免所有服务端同时变慢时全部被剔除。</li>
+ * </ul>
+ * <p>
+ * 连接参数、重连参数、未完成请求数上限和请求的期限都来自ConnectorBuilder的NettyConfig。
+ * </p>
+ * <p>
+ * 线程安全：该类线程安全。
+ * </p>
+ * 
+ * @param <Q>
+ *            请求的类型
+ * @param <R>
+ *            响应的类型
+ * @author gchangyi
+ * @version 1.0
+ */
+public class LoadBalancedClient<Q, R> implements Closeable {
+
+	/** 延时EWMA的平滑系数 */
+	private static final double EWMA_ALPHA = 0.1;
+
+	private final List<Endpoint> endpoints;
+
+	private final LoadBalanceStrategy strategy;
+
+	private final int ejectConsecutiveFailures;
+
+	private final double ejectLatencyFactor;
+
+	private final long ejectNanos;
+
+	private final int maxEjected;
+
+	private final long checkIntervalMillis;
+
+	private final int minSamples;
+
+	private volatile boolean closed;
+
+	private volatile Timeout check;
+
+	/**
+	 * <p>
+	 * 构造函数。立即开始建立到所有服务端的连接。
+	 * </p>
+	 * 
+	 * @param builder
+	 *            用于建立连接的ConnectorBuilder
+	 * @param addresses
+	 *            所有服务端的地址
+	 * @param correlator
+	 *            请求和响应的对应方式
+	 * @param strategy
+	 *            选择服务端的方式，不要与其他LoadBalancedClient共用
+	 * @throws IllegalArgumentException
+	 *             如果任何参数为null，addresses为空或包含null，或者NettyConfig中的参数不合法
+	 */
+	public LoadBalancedClient(ConnectorBuilder builder, List<? extends SocketAddress> addresses,
+			final RequestCorrelator<Q, R> correlator, LoadBalanceStrategy strategy) {
+		ArgumentValidator.notNull(builder, "builder");
+		ArgumentValidator.notNull(addresses, "addresses");
+		ArgumentValidator.isTrue(!addresses.isEmpty(), "addresses should not be empty");
+		ArgumentValidator.notNull(correlator, "correlator");
+		ArgumentValidator.notNull(strategy, "strategy");
+		NettyConfig config = builder.getNettyConfig();
+		ArgumentValidator.isTrue(config.pipelineMaxOutstanding > 0, "pipelineMaxOutstanding should be >0: "
+				+ config.pipelineMaxOutstanding);
+		ArgumentValidator.isTrue(config.pipelineRequestTimeoutMillis >= 0, "pipelineRequestTimeoutMillis should be >=0: "
+				+ config.pipelineRequestTimeoutMillis);
+		ArgumentValidator.isTrue(config.balancerEjectConsecutiveFailures >= 0, "balancerEjectConsecutiveFailures should be >=0: "
+				+ config.balancerEjectConsecutiveFailures);
+		ArgumentValidator.isTrue(config.balancerEjectLatencyFactor == 0 || config.balancerEjectLatencyFactor > 1,
+				"balancerEjectLatencyFactor should be 0 or >1: " + config.balancerEjectLatencyFactor);
+		ArgumentValidator.isTrue(config.balancerEjectMillis > 0, "balancerEjectMillis should be >0: " + config.balancerEjectMillis);
+		ArgumentValidator.isTrue(config.balancerMaxEjectedPercent >= 0 && config.balancerMaxEjectedPercent <= 100,
+				"balancerMaxEjectedPercent should be in [0, 100]: " + config.balancerMaxEjectedPercent);
+		ArgumentValidator.isTrue(config.balancerCheckIntervalMillis > 0, "balancerCheckIntervalMillis should be >0: "
+				+ config.balancerCheckIntervalMillis);
+		ArgumentValidator.isTrue(config.balancerMinSamples > 0, "balancerMinSamples should be >0: " + config.balancerMinSamples);
+		for (SocketAddress address : addresses)
+			ArgumentValidator.notNull(address, "address");
+		this.strategy = strategy;
+		this.ejectConsecutiveFailures = config.balancerEjectConsecutiveFailures;
+		this.ejectLatencyFactor = config.balancerEjectLatencyFactor;
+		this.ejectNanos = TimeUnit.MILLISECONDS.toNanos(config.balancerEjectMillis);
+		this.maxEjected = addresses.size() * config.balancerMaxEjectedPercent / 100;
+		this.checkIntervalMillis = config.balancerCheckIntervalMillis;
+		this.minSamples = config.balancerMinSamples;
+		final int maxOutstanding = config.pipelineMaxOutstanding;
+		final long requestTimeoutMillis = config.pipelineRequestTimeoutMillis;
+		List<Endpoint> list = new ArrayList<Endpoint>(addresses.size());
+		for (SocketAddress address : addresses)
+			list.add(new Endpoint(address));
+		this.endpoints = Collections.unmodifiableList(list);
+		strategy.init(endpoints);
+		for (final Endpoint endpoint : endpoints) {
+			endpoint.connection = builder.newManagedConnection(endpoint.address, new ConnectionStateListener() {
+				@Override
+				public void stateChanged(ManagedConnection connection, ConnectionState state, Throwable cause) {
+					if (state == ConnectionState.CONNECTED) {
+						endpoint.client = new PipelinedClient<Q, R>(connection.getChannel(), correlator, maxOutstanding,
+								requestTimeoutMillis);
+					} else {
+						endpoint.client = null;
+					}
+				}
+			});
+		}
+		scheduleCheck();
+	}
+
+	/**
+	 * <p>
+	 * 发出请求，key为null。
+	 * </p>
+	 * 
+	 * @param request
+	 *            请求
+	 * @return 收到响应时完成的future
+	 * @throws IllegalArgumentException
+	 *             如果request为null
+	 * @see #send(Object, Object)
+	 */
+	public CompletableFuture<R> send(Q request) {
+		return send(null, request);
+	}
+
+	/**
+	 * <p>
+	 * 选择一个服务端并发出请求。没有可用的服务端时，返回的future以ConnectException失败；其他失败见{@link PipelinedClient#send(Object)}。
+	 * </p>
+	 * 
+	 * @param key
+	 *            请求的key，用于一致性哈希，可以为null
+	 * @param request
+	 *            请求
+	 * @return 收到响应时完成的future
+	 * @throws IllegalArgumentException
+	 *             如果request为null
+	 */
+	@SuppressWarnings("unchecked")
+	public CompletableFuture<R> send(Object key, Q request) {
+		ArgumentValidator.notNull(request, "request");
+		Endpoint endpoint = closed ? null : strategy.select(endpoints, key);
+		PipelinedClient<Q, R> client = endpoint == null ? null : (PipelinedClient<Q, R>) endpoint.client;
+		if (client == null) {
+			CompletableFuture<R> future = new CompletableFuture<R>();
+			future.completeExceptionally(new ConnectException("no available endpoint"));
+			return future;
+		}
+		endpoint.outstanding.incrementAndGet();
+		return client.send(request).whenComplete(new Recorder(endpoint, System.nanoTime()));
+	}
+
+	/**
+	 * <p>
+	 * 得到所有服务端，顺序与构造时的地址相同。
+	 * </p>
+	 * 
+	 * @return 所有服务端
+	 */
+	public List<Endpoint> getEndpoints() {
+		return endpoints;
+	}
+
+	/**
+	 * <p>
+	 * 得到一个在至少有一个服务端可以连接时完成的future。
+	 * </p>
+	 * 
+	 * @return 至少有一个服务端已经连接时完成的future
+	 */
+	public CompletableFuture<Void> whenConnected() {
+		final CompletableFuture<Void> future = new CompletableFuture<Void>();
+		for (Endpoint endpoint : endpoints) {
+			endpoint.connection.whenConnected().thenRun(new Runnable() {
+				@Override
+				public void run() {
+					future.complete(null);
+				}
+			});
+		}
+		return future;
+	}
+
+	/**
+	 * <p>
+	 * 关闭所有连接。
+	 * </p>
+	 */
+	@Override
+	public void close() {
+		closed = true;
+		Timeout current = check;
+		if (current != null)
+			current.cancel();
+		for (Endpoint endpoint : endpoints)
+			endpoint.connection.close();
+	}
+
+	@Override
+	public String toString() {
+		return "LoadBalancedClient(" + strategy + ", " + endpoints + ")";
+	}
+
+	private void scheduleCheck() {
+		if (closed)
+			return;
+		check = SharedWheelTimer.get().newTimeout(new TimerTask() {
+			@Override
+			public void run(Timeout timeout) throws Exception {
+				try {
+					checkEndpoints();
+				} finally {
+					scheduleCheck();
+				}
+			}
+		}, checkIntervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * 恢复到期的服务端，并剔除延时过高的服务端
+	 */
+	private synchronized void checkEndpoints() {
+		long now = System.nanoTime();
+		for (Endpoint endpoint : endpoints) {
+			if (endpoint.ejected && now - endpoint.ejectedAt >= ejectNanos)
+				endpoint.reinstate();
+		}
+		if (ejectLatencyFactor > 0) {
+			List<Endpoint> candidates = new ArrayList<Endpoint>(endpoints.size());
+			for (Endpoint endpoint : endpoints) {
+				if (!endpoint.ejected && endpoint.intervalSamples >= minSamples)
+					candidates.add(endpoint);
+			}
+			if (candidates.size() >= 2) {
+				double[] latencies = new double[candidates.size()];
+				for (int i = 0; i < latencies.length; i++)
+					latencies[i] = candidates.get(i).latencyNanos;
+				Arrays.sort(latencies);
+				int mid = latencies.length / 2;
+				double median = latencies.length % 2 == 1 ? latencies[mid] : (latencies[mid - 1] + latencies[mid]) / 2;
+				for (Endpoint endpoint : candidates) {
+					if (endpoint.latencyNanos > median * ejectLatencyFactor)
+						eject(endpoint, now);
+				}
+			}
+		}
+		for (Endpoint endpoint : endpoints)
+			endpoint.intervalSamples = 0;
+	}
+
+	/**
+	 * 剔除服务端，被剔除的服务端已经达到上限时不剔除
+	 */
+	private synchronized void eject(Endpoint endpoint, long now) {
+		if (endpoint.ejected)
+			return;
+		int ejected = 0;
+		for (Endpoint e : endpoints) {
+			if (e.ejected)
+				ejected++;
+		}
+		if (ejected >= maxEjected)
+			return;
+		endpoint.ejectedAt = now;
+		endpoint.ejections++;
+		endpoint.ejected = true;
+	}
+
+	/**
+	 * 请求完成时更新服务端的统计信息，连续失败过多时剔除该服务端
+	 */
+	private final class Recorder implements BiConsumer<R, Throwable> {
+
+		private final Endpoint endpoint;
+
+		private final long start;
+
+		Recorder(Endpoint endpoint, long start) {
+			this.endpoint = endpoint;
+			this.start = start;
+		}
+
+		@Override
+		public void accept(R response, Throwable cause) {
+			endpoint.outstanding.decrementAndGet();
+			if (cause instanceof RejectedExecutionException)
+				return;
+			endpoint.requests.incrementAndGet();
+			if (cause == null) {
+				long elapsed = System.nanoTime() - start;
+				double current = endpoint.latencyNanos;
+				endpoint.latencyNanos = current == 0 ? elapsed : current + (elapsed - current) * EWMA_ALPHA;
+				endpoint.intervalSamples++;
+				endpoint.consecutiveFailures.set(0);
+			} else {
+				endpoint.failures.incrementAndGet();
+				if (endpoint.consecutiveFailures.incrementAndGet() >= ejectConsecutiveFailures && ejectConsecutiveFailures > 0)
+					eject(endpoint, System.nanoTime());
+			}
+		}
+	}
+
+	/**
+	 * <p>
+	 * 一个服务端及其统计信息。统计信息在请求完成的线程(通常是该服务端的连接所在的EventLoop)中更新，延时的统计不加锁，是近似值。
+	 * </p>
+	 * 
+	 * @author gchangyi
+	 * @version 1.0
+	 */
+	public static final class Endpoint {
+
+		private final SocketAddress address;
+
+		private volatile ManagedConnection connection;
+
+		private volatile PipelinedClient<?, ?> client;
+
+		private final AtomicInteger outstanding = new AtomicInteger();
+
+		private volatile double latencyNanos;
+
+		private volatile int intervalSamples;
+
+		private final AtomicInteger consecutiveFailures = new AtomicInteger();
+
+		private final AtomicLong requests = new AtomicLong();
+
+		private final AtomicLong failures = new AtomicLong();
+
+		private volatile boolean ejected;
+
+		private volatile long ejectedAt;
+
+		private volatile long ejections;
+
+		Endpoint(SocketAddress address) {
+			this.address = address;
+		}
+
+		/**
+		 * @return 服务端的地址
+		 */
+		public SocketAddress getAddress() {
+			return address;
+		}
+
+		/**
+		 * @return 到该服务端的自动重连的连接
+		 */
+		public ManagedConnection getConnection() {
+			return connection;
+		}
+
+		/**
+		 * @return 是否可用：已经连接并且没有被剔除
+		 */
+		public boolean isAvailable() {
+			PipelinedClient<?, ?> current = client;
+			return !ejected && current != null && current.isActive();
+		}
+
+		/**
+		 * @return 是否被剔除
+		 */
+		public boolean isEjected() {
+			return ejected;
+		}
+
+		/**
+		 * @return 未完成的请求数
+		 */
+		public int getOutstanding() {
+			return outstanding.get();
+		}
+
+		/**
+		 * @return 延时的指数移动平均(纳秒)，还没有请求完成时为0
+		 */
+		public double getLatencyNanos() {
+			return latencyNanos;
+		}
+
+		/**
+		 * @return 连续失败的次数
+		 */
+		public int getConsecutiveFailures() {
+			return consecutiveFailures.get();
+		}
+
+		/**
+		 * @return 完成(成功或失败)的请求数
+		 */
+		public long getRequests() {
+			return requests.get();
+		}
+
+		/**
+		 * @return 失败的请求数
+		 */
+		public long getFailures() {
+			return failures.get();
+		}
+
+		/**
+		 * @return 被剔除的次数
+		 */
+		public long getEjections() {
+			return ejections;
+		}
+
+		@Override
+		public String toString() {
+			return address + "(available: " + isAvailable() + ", outstanding: " + outstanding.get() + ", latencyMicros: "
+					+ (long) (latencyNanos / 1000) + ", requests: " + requests + ", failures: " + failures + ", ejections: "
+					+ ejections + ")";
+		}
+
+		private void reinstate() {
+			latencyNanos = 0;
+			intervalSamples = 0;
+			consecutiveFailures.set(0);
+			ejected = false;
+		}
+	}
+}
@@ -0,0 +1,404 @@
+package com.alitag.netty_tools;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.EventLoop;
+import io.netty.util.concurrent.ScheduledFuture;
+
+import java.io.Closeable;
+import java.net.SocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * 自动重连的连接，由{@link ConnectorBuilder#newManagedConnection(SocketAddress, ConnectionStateListener)}生成。
+ * </p>
+ * <p>
+ * 连接断开或建立失败时，按指数退避加随机抖动的时间重连：第n次重连前等待的时间在[d/2, d]之间随机，d =
+ * min({@link NettyConfig#reconnectInitialDelayMillis} * 2^n, {@link NettyConfig#reconnectMaxDelayMillis})，
+ * 避免服务端重启后所有客户端同时重连。连接成功后n清零。
+ * </p>
+ * <p>
+ * {@link NettyConfig#standbyConnections}大于0时，连接可用期间另外保持这些数量的备用连接(已经建立并完成pipeline初始化)。
+ * 当前连接断开时立即切换到一个备用连接，不需要在请求路径上等待建立连接，之后再补充备用连接。
+ * </p>
+ * <p>
+ * 所有状态变化都在一个固定的EventLoop中处理，该ManagedConnection的所有channel也注册在这个EventLoop上，因此不需要加锁。
+ * 状态变化通过{@link ConnectionStateListener}通知。
+ * </p>
+ * <p>
+ * 线程安全：该类线程安全。
+ * </p>
+ * 
+ * @author gchangyi
+ * @version 1.0
+ */
+public class ManagedConnection implements Closeable {
+
+	private final SocketAddress remoteAddress;
+
+	private final EventLoop eventLoop;
+
+	private final Bootstrap bootstrap;
+
+	private final long initialDelayMillis;
+
+	private final long maxDelayMillis;
+
+	private final int standbyConnections;
+
+	private final List<ConnectionStateListener> listeners = new CopyOnWriteArrayList<ConnectionStateListener>();
+
+	/** 以下字段只在eventLoop中修改 */
+	private volatile ConnectionState state = ConnectionState.CONNECTING;
+
+	private volatile Channel channel;
+
+	private final ArrayDeque<Channel> standbys = new ArrayDeque<Channel>();
+
+	private volatile int standbyCount;
+
+	/** 正在建立的备用连接数 */
+	private int standbyConnecting;
+
+	/** 连续失败的次数 */
+	private int attempts;
+
+	private int standbyAttempts;
+
+	private volatile long reconnects;
+
+	private volatile long failovers;
+
+	private ScheduledFuture<?> retry;
+
+	private ScheduledFuture<?> standbyRetry;
+
+	private List<CompletableFuture<Channel>> waiters = new ArrayList<CompletableFuture<Channel>>();
+
+	ManagedConnection(ConnectorBuilder builder, SocketAddress remoteAddress, ConnectionStateListener listener) {
+		NettyConfig config = builder.getNettyConfig();
+		ArgumentValidator.isTrue(config.reconnectInitialDelayMillis > 0, "reconnectInitialDelayMillis should be >0: "
+				+ config.reconnectInitialDelayMillis);
+		ArgumentValidator.isTrue(config.reconnectMaxDelayMillis >= config.reconnectInitialDelayMillis,
+				"reconnectMaxDelayMillis should be >=reconnectInitialDelayMillis: " + config.reconnectMaxDelayMillis);
+		ArgumentValidator.isTrue(config.standbyConnections >= 0, "standbyConnections should be >=0: "
+				+ config.standbyConnections);
+		this.remoteAddress = remoteAddress;
+		this.initialDelayMillis = config.reconnectInitialDelayMillis;
+		this.maxDelayMillis = config.reconnectMaxDelayMillis;
+		this.standbyConnections = config.standbyConnections;
+		Bootstrap connector = builder.getConnector();
+		ArgumentValidator.notNull(connector.config().group(), "group");
+		this.eventLoop = connector.config().group().next();
+		this.bootstrap = connector.clone(eventLoop).remoteAddress(remoteAddress);
+		if (listener != null)
+			listeners.add(listener);
+		eventLoop.execute(new Runnable() {
+			@Override
+			public void run() {
+				connect();
+			}
+		});
+	}
+
+	/**
+	 * <p>
+	 * 增加一个状态变化的监听器。
+	 * </p>
+	 * 
+	 * @param listener
+	 *            监听器
+	 * @throws IllegalArgumentException
+	 *             如果listener为null
+	 */
+	public void addListener(ConnectionStateListener listener) {
+		ArgumentValidator.notNull(listener, "listener");
+		listeners.add(listener);
+	}
+
+	/**
+	 * <p>
+	 * 删除一个状态变化的监听器。
+	 * </p>
+	 * 
+	 * @param listener
+	 *            监听器
+	 */
+	public void removeListener(ConnectionStateListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * @return 远端地址
+	 */
+	public SocketAddress getRemoteAddress() {
+		return remoteAddress;
+	}
+
+	/**
+	 * @return 当前的状态
+	 */
+	public ConnectionState getState() {
+		return state;
+	}
+
+	/**
+	 * <p>
+	 * 得到当前可用的连接。连接断开后会变为另一个连接，因此不要长期保存返回值。
+	 * </p>
+	 * 
+	 * @return 当前可用的连接，没有时为null
+	 */
+	public Channel getChannel() {
+		return channel;
+	}
+
+	/**
+	 * <p>
+	 * 得到一个在有可用连接时完成的future。当前有可用连接时返回已经完成的future。
+	 * </p>
+	 * 
+	 * @return 有可用连接时完成的future，关闭时以ClosedChannelException失败
+	 */
+	public CompletableFuture<Channel> whenConnected() {
+		final CompletableFuture<Channel> future = new CompletableFuture<Channel>();
+		Channel current = channel;
+		if (current != null && current.isActive()) {
+			future.complete(current);
+			return future;
+		}
+		eventLoop.execute(new Runnable() {
+			@Override
+			public void run() {
+				if (state == ConnectionState.CLOSED)
+					future.completeExceptionally(new ClosedChannelException());
+				else if (state == ConnectionState.CONNECTED)
+					future.complete(channel);
+				else
+					waiters.add(future);
+			}
+		});
+		return future;
+	}
+
+	/**
+	 * @return 当前的备用连接数
+	 */
+	public int getStandbyCount() {
+		return standbyCount;
+	}
+
+	/**
+	 * @return 重连(连接断开或建立失败之后再次尝试建立连接)的次数
+	 */
+	public long getReconnects() {
+		return reconnects;
+	}
+
+	/**
+	 * @return 切换到备用连接的次数
+	 */
+	public long getFailovers() {
+		return failovers;
+	}
+
+	/**
+	 * <p>
+	 * 关闭当前连接和所有备用连接，不再重连。
+	 * </p>
+	 */
+	@Override
+	public void close() {
+		eventLoop.execute(new Runnable() {
+			@Override
+			public void run() {
+				if (state == ConnectionState.CLOSED)
+					return;
+				state = ConnectionState.CLOSED;
+				if (retry != null)
+					retry.cancel(false);
+				if (standbyRetry != null)
+					standbyRetry.cancel(false);
+				Channel current = channel;
+				channel = null;
+				if (current != null)
+					current.close();
+				for (Channel standby : standbys)
+					standby.close();
+				standbys.clear();
+				standbyCount = 0;
+				setState(ConnectionState.CLOSED, null);
+				List<CompletableFuture<Channel>> failed = waiters;
+				waiters = new ArrayList<CompletableFuture<Channel>>();
+				for (CompletableFuture<Channel> waiter : failed)
+					waiter.completeExceptionally(new ClosedChannelException());
+			}
+		});
+	}
+
+	@Override
+	public String toString() {
+		return "ManagedConnection(" + remoteAddress + ", " + state + ", channel: " + channel + ")";
+	}
+
+	/**
+	 * 建立主连接
+	 */
+	private void connect() {
+		if (state == ConnectionState.CLOSED)
+			return;
+		setState(ConnectionState.CONNECTING, null);
+		bootstrap.connect().addListener(new ChannelFutureListener() {
+			@Override
+			public void operationComplete(ChannelFuture future) throws Exception {
+				if (future.isSuccess()) {
+					activate(future.channel());
+				} else {
+					disconnected(future.cause());
+				}
+			}
+		});
+	}
+
+	/**
+	 * 把ch作为当前连接
+	 */
+	private void activate(final Channel ch) {
+		if (state == ConnectionState.CLOSED) {
+			ch.close();
+			return;
+		}
+		attempts = 0;
+		channel = ch;
+		ch.closeFuture().addListener(new ChannelFutureListener() {
+			@Override
+			public void operationComplete(ChannelFuture future) throws Exception {
+				if (channel == ch)
+					lost();
+			}
+		});
+		setState(ConnectionState.CONNECTED, null);
+		List<CompletableFuture<Channel>> ready = waiters;
+		waiters = new ArrayList<CompletableFuture<Channel>>();
+		for (CompletableFuture<Channel> waiter : ready)
+			waiter.complete(ch);
+		fillStandbys();
+	}
+
+	/**
+	 * 当前连接断开，切换到备用连接或者重连
+	 */
+	private void lost() {
+		channel = null;
+		if (state == ConnectionState.CLOSED)
+			return;
+		Channel standby;
+		while ((standby = standbys.poll()) != null) {
+			standbyCount = standbys.size();
+			if (standby.isActive()) {
+				failovers++;
+				activate(standby);
+				return;
+			}
+		}
+		disconnected(null);
+	}
+
+	/**
+	 * 主连接断开或建立失败，在退避时间之后重连
+	 */
+	private void disconnected(Throwable cause) {
+		if (state == ConnectionState.CLOSED)
+			return;
+		setState(ConnectionState.DISCONNECTED, cause);
+		long delay = backoff(attempts++);
+		retry = eventLoop.schedule(new Runnable() {
+			@Override
+			public void run() {
+				reconnects++;
+				connect();
+			}
+		}, delay, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * 补充备用连接。只在主连接可用时进行，主连接不可用时由主连接的重连负责
+	 */
+	private void fillStandbys() {
+		while (state == ConnectionState.CONNECTED && standbys.size() + standbyConnecting < standbyConnections) {
+			standbyConnecting++;
+			bootstrap.connect().addListener(new ChannelFutureListener() {
+				@Override
+				public void operationComplete(ChannelFuture future) throws Exception {
+					standbyConnecting--;
+					if (future.isSuccess())
+						addStandby(future.channel());
+					else
+						retryStandbys();
+				}
+			});
+		}
+	}
+
+	private void addStandby(final Channel ch) {
+		if (state == ConnectionState.CLOSED) {
+			ch.close();
+			return;
+		}
+		standbyAttempts = 0;
+		standbys.add(ch);
+		standbyCount = standbys.size();
+		ch.closeFuture().addListener(new ChannelFutureListener() {
+			@Override
+			public void operationComplete(ChannelFuture future) throws Exception {
+				if (standbys.remove(ch)) {
+					standbyCount = standbys.size();
+					retryStandbys();
+				}
+			}
+		});
+	}
+
+	private void retryStandbys() {
+		if (state == ConnectionState.CLOSED || (standbyRetry != null && !standbyRetry.isDone()))
+			return;
+		standbyRetry = eventLoop.schedule(new Runnable() {
+			@Override
+			public void run() {
+				fillStandbys();
+			}
+		}, backoff(standbyAttempts++), TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * 第attempt次重试前等待的时间(毫秒)，在[d/2, d]之间随机
+	 */
+	private long backoff(int attempt) {
+		long delay = attempt >= 31 ? maxDelayMillis : Math.min(maxDelayMillis, initialDelayMillis << attempt);
+		if (delay <= 0 || delay > maxDelayMillis)
+			delay = maxDelayMillis;
+		long half = delay / 2;
+		return half + ThreadLocalRandom.current().nextLong(delay - half + 1);
+	}
+
+	private void setState(ConnectionState newState, Throwable cause) {
+		state = newState;
+		for (ConnectionStateListener listener : listeners) {
+			try {
+				listener.stateChanged(this, newState, cause);
+			} catch (Throwable e) {
+				// 监听器的异常不影响重连
+			}
+		}
+	}
+}
@@ -1,10 +1,16 @@
 package com.alitag.netty_tools;
 
 import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.pool.ChannelHealthChecker;
 
+import java.io.File;
 import java.io.IOException;
 import java.net.Socket;
 import java.net.SocketException;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * <p>
@@ -38,7 +44,7 @@ public class NettyConfig {
 	 * 使用的ChannelInitializer
 	 * </p>
 	 */
-	public ChannelInitializer<?> channelInitializer = new ChannelInitializeBuilder();
+	public ChannelInitializer<?> channelInitializer = new ChannelInitializeBuilder(this);
 
 	/**
 	 * <p>
@@ -47,6 +53,65 @@ public class NettyConfig {
 	 */
 	public boolean threadPool = true;
 
+	/**
+	 * <p>
+	 * 服务端boss线程(接受连接)的数量，为0时使用默认值：使用SO_REUSEPORT时与监听socket数相同，否则为netty的默认值。
+	 * </p>
+	 */
+	public int bossThreads = 0;
+
+	/**
+	 * <p>
+	 * 服务端worker线程(处理连接)或客户端线程的数量，为0时使用netty的默认值(CPU核数的2倍)。
+	 * </p>
+	 */
+	public int workerThreads = 0;
+
+	/**
+	 * <p>
+	 * 线程名的前缀，线程名形如"prefix-boss-1-1"，为null时使用"netty-tools"。指定了threadFactory时无效。
+	 * </p>
+	 */
+	public String threadNamePrefix = null;
+
+	/**
+	 * <p>
+	 * 线程的优先级，默认为Thread.NORM_PRIORITY。指定了threadFactory时无效。
+	 * </p>
+	 */
+	public int threadPriority = Thread.NORM_PRIORITY;
+
+	/**
+	 * <p>
+	 * 是否为守护线程，默认为false。指定了threadFactory时无效。
+	 * </p>
+	 */
+	public boolean daemonThreads = false;
+
+	/**
+	 * <p>
+	 * 用于生成EventLoop线程的ThreadFactory，默认为null，即根据threadNamePrefix、threadPriority和daemonThreads生成。
+	 * </p>
+	 * 需要把线程绑定到指定CPU时，可以在这里使用支持CPU亲和性的ThreadFactory(如OpenHFT Java-Thread-Affinity的AffinityThreadFactory)。
+	 */
+	public ThreadFactory threadFactory = null;
+
+	/**
+	 * <p>
+	 * 外部提供的服务端boss线程组，默认为null，即由AcceptorBuilder自己生成。外部提供的线程组不会被builder关闭。
+	 * </p>
+	 * 没有外部提供的workerGroup时传输方式由该线程组决定；两者都提供时必须使用相同的传输方式。
+	 */
+	public EventLoopGroup bossGroup = null;
+
+	/**
+	 * <p>
+	 * 外部提供的服务端worker线程组或客户端线程组，默认为null，即由builder自己生成。外部提供的线程组不会被builder关闭。
+	 * </p>
+	 * 把同一个线程组同时设置给AcceptorBuilder和ConnectorBuilder使用的NettyConfig，服务端和客户端就可以共用一组线程。此时传输方式由该线程组决定。
+	 */
+	public EventLoopGroup workerGroup = null;
+
 	/**
 	 * <p>
 	 * 客户端连接到服务器时的超时时间，默认为1秒。仅对ConnectorBuilder有效。
@@ -98,6 +163,657 @@ public class NettyConfig {
 	 */
 	public boolean tcp_no_delay = TCP_NO_DELAY;
 
+	/**
+	 * <p>
+	 * 传输层实现方式，默认为AUTO：Linux下epoll可用时使用epoll，否则使用NIO。
+	 * </p>
+	 * 
+	 * @see TransportMode
+	 */
+	public TransportMode transportMode = TransportMode.AUTO;
+
+	/**
+	 * <p>
+	 * ChannelTaskHelper中自动任务的调度方式，默认为HASHED_WHEEL：所有连接共用一个时间轮线程。
+	 * </p>
+	 * 
+	 * @see TaskSchedulerType
+	 */
+	public TaskSchedulerType taskScheduler = TaskSchedulerType.HASHED_WHEEL;
+
+	/**
+	 * <p>
+	 * 写缓冲区的低水位线(字节)，默认为32KB。channel变为不可写后，待发送的数据低于该值时重新变为可写。
+	 * </p>
+	 */
+	public int writeBufferLowWaterMark = 32 * 1024;
+
+	/**
+	 * <p>
+	 * 写缓冲区的高水位线(字节)，默认为64KB。待发送的数据超过该值时channel变为不可写，见Channel.isWritable()。
+	 * </p>
+	 */
+	public int writeBufferHighWaterMark = 64 * 1024;
+
+	/**
+	 * <p>
+	 * channel不可写时WriteHelper的默认处理方式，默认为继续写入直到积压1MB后丢弃。
+	 * </p>
+	 * 
+	 * @see WritePolicy
+	 */
+	public WritePolicy writePolicy = WritePolicy.bufferUpTo(1024 * 1024);
+
+	/**
+	 * <p>
+	 * 合并flush：读循环中的flush推迟到读完后一起执行，但每flushConsolidateAfter次flush至少执行一次。为0时不合并，默认为0。仅对默认的
+	 * ChannelInitializeBuilder有效。
+	 * </p>
+	 * 消息多而小、每条消息都writeAndFlush时，合并flush可以大量减少write系统调用；需要立即发送的消息可用WriteHelper.flushNow()。
+	 */
+	public int flushConsolidateAfter = 0;
+
+	/**
+	 * <p>
+	 * 合并flush：不在读循环中时(例如在其他线程中写入)是否也合并flush，默认为false，即立即flush。为true时未达到flushConsolidateAfter次的flush
+	 * 会被推迟到event loop的下一个任务中执行。
+	 * </p>
+	 */
+	public boolean flushConsolidateWhenNoRead = false;
+
+	/**
+	 * <p>
+	 * 收到的数据的分帧和解码方式，默认为每行解码成String。仅对默认的ChannelInitializeBuilder有效。
+	 * </p>
+	 * 
+	 * @see FramingMode
+	 */
+	public FramingMode framingMode = FramingMode.LINE_STRING;
+
+	/**
+	 * <p>
+	 * 一帧的最大长度(字节，不含行结束符或长度字段)，默认为8192，超过时丢弃该帧并触发TooLongFrameException。仅对默认的ChannelInitializeBuilder有效。
+	 * </p>
+	 */
+	public int maxFrameLength = 8192;
+
+	/**
+	 * <p>
+	 * LENGTH_FIELD分帧时长度字段的字节数，可以是1、2、3、4或8，默认为4。仅对默认的ChannelInitializeBuilder有效。
+	 * </p>
+	 */
+	public int lengthFieldLength = 4;
+
+	/**
+	 * <p>
+	 * LENGTH_FIELD分帧时长度字段的字节序，默认为BIG_ENDIAN(网络字节序)。仅对默认的ChannelInitializeBuilder有效。
+	 * </p>
+	 */
+	public ByteOrder lengthFieldByteOrder = ByteOrder.BIG_ENDIAN;
+
+	/**
+	 * <p>
+	 * 按帧压缩使用的算法，默认为NONE，即不压缩。只能与LENGTH_FIELD分帧方式一起使用，两端都需要设置(可以是不同的算法)，仅对默认的ChannelInitializeBuilder有效。
+	 * </p>
+	 * 
+	 * @see CompressionHandler
+	 */
+	public CompressionCodec compression = CompressionCodec.NONE;
+
+	/**
+	 * <p>
+	 * 按帧压缩：不小于该字节数的帧才压缩，更小的帧只加一个字节的标志，默认为1024。
+	 * </p>
+	 */
+	public int compressionThreshold = 1024;
+
+	/**
+	 * <p>
+	 * 按帧压缩：ZLIB和GZIP的压缩级别，0-9，默认为6。
+	 * </p>
+	 */
+	public int compressionLevel = 6;
+
+	/**
+	 * <p>
+	 * 按帧压缩的统计，默认为null，即不统计。多个NettyConfig可以共用一个CompressionStats。
+	 * </p>
+	 */
+	public CompressionStats compressionStats = null;
+
+	/**
+	 * <p>
+	 * 是否使用TLS，默认为false。为true时AcceptorBuilder和ConnectorBuilder生成的每个连接的pipeline最前面都会加入SslHandler，使用JDK的SSLEngine。
+	 * 服务端必须设置{@link #tlsCertChainFile}和{@link #tlsKeyFile}。
+	 * </p>
+	 * 
+	 * @see TlsHelper
+	 */
+	public boolean tls = false;
+
+	/**
+	 * <p>
+	 * TLS：PEM格式的证书链文件。服务端必须设置；客户端设置时用于双向认证。
+	 * </p>
+	 */
+	public File tlsCertChainFile = null;
+
+	/**
+	 * <p>
+	 * TLS：PEM格式的PKCS#8私钥文件，与{@link #tlsCertChainFile}一起设置。
+	 * </p>
+	 */
+	public File tlsKeyFile = null;
+
+	/**
+	 * <p>
+	 * TLS：私钥的密码，私钥没有加密时为null。
+	 * </p>
+	 */
+	public String tlsKeyPassword = null;
+
+	/**
+	 * <p>
+	 * TLS：PEM格式的信任的证书文件。客户端为null时使用JDK默认的信任库，本地测试时可以设为服务端的自签名证书；服务端设置时要求客户端提供证书(双向认证)。
+	 * </p>
+	 */
+	public File tlsTrustCertFile = null;
+
+	/**
+	 * <p>
+	 * TLS：启用的协议，例如{"TLSv1.2"}，为null时只使用TLSv1.2。当前版本的Netty的SslHandler不支持TLSv1.3，指定时生成builder会抛出IllegalArgumentException。
+	 * </p>
+	 */
+	public String[] tlsProtocols = null;
+
+	/**
+	 * <p>
+	 * TLS：会话缓存的最大会话数，0表示使用JDK的默认值(20480)。服务端和客户端各有一个缓存，同一个builder的所有连接共用。
+	 * </p>
+	 */
+	public long tlsSessionCacheSize = 0;
+
+	/**
+	 * <p>
+	 * TLS：缓存的会话的有效期(秒)，0表示使用JDK的默认值(86400)。
+	 * </p>
+	 */
+	public long tlsSessionTimeoutSeconds = 0;
+
+	/**
+	 * <p>
+	 * TLS：期望是否使用session ticket恢复会话，默认为true。使用时服务端不需要在缓存中保存会话，会话加密后交给客户端保存。
+	 * </p>
+	 * <p>
+	 * JDK的这个开关是JVM级别的系统属性(jdk.tls.server/client.enableSessionTicketExtension，JDK 13及以上有效，默认为true)，在JSSE第一次初始化时读取，
+	 * 影响JVM中所有使用TLS的代码，builder不会修改它。需要关闭时在命令行中指定：
+	 * -Djdk.tls.server.enableSessionTicketExtension=false -Djdk.tls.client.enableSessionTicketExtension=false。
+	 * 该字段只用于检查：与这两个属性实际的值不一致时，生成builder时记录警告。
+	 * </p>
+	 */
+	public boolean tlsSessionTickets = true;
+
+	/**
+	 * <p>
+	 * TLS：客户端是否按远端地址恢复会话，默认为true。客户端用远端的host和port生成SSLEngine，重连同一个服务端时可以恢复之前的会话，不需要完整握手；为false时每次都完整握手。
+	 * </p>
+	 */
+	public boolean tlsClientSessionReuse = true;
+
+	/**
+	 * <p>
+	 * TLS：客户端是否校验服务端证书中的主机名或ip与连接的地址一致，默认为true。使用自签名证书测试时，证书的subjectAltName中需要包含连接的地址(例如IP:127.0.0.1)。
+	 * </p>
+	 */
+	public boolean tlsVerifyHostname = true;
+
+	/**
+	 * <p>
+	 * TLS：握手的超时时间(毫秒)，默认为10000，0表示不超时。超时后连接被关闭。
+	 * </p>
+	 */
+	public long tlsHandshakeTimeoutMillis = 10000;
+
+	/**
+	 * <p>
+	 * TLS：卸载加解密和握手的线程数，默认为0，即在EventLoop中执行。大于0时SslHandler在单独的线程组中执行，握手时的CPU计算不会阻塞EventLoop中的其他连接，
+	 * 但每次读写多两次线程切换，适合短连接多、握手频繁的场景。
+	 * </p>
+	 */
+	public int tlsOffloadThreads = 0;
+
+	/**
+	 * <p>
+	 * TLS握手的统计，默认为null，即不统计。多个NettyConfig可以共用一个TlsStats。
+	 * </p>
+	 */
+	public TlsStats tlsStats = null;
+
+	/**
+	 * <p>
+	 * 流量统计，默认为null，即不统计。不为null时，每个连接的读写字节数、消息数、消息处理时间等都会记入其中。多个NettyConfig可以共用一个TrafficMetrics。
+	 * 仅对默认的ChannelInitializeBuilder有效。
+	 * </p>
+	 * 
+	 * @see TrafficMetrics
+	 */
+	public TrafficMetrics trafficMetrics = null;
+
+	/**
+	 * <p>
+	 * 读流量限制：所有连接合计每秒最多读多少字节，为0时不限制，默认为0。仅对AcceptorBuilder有效。
+	 * </p>
+	 * 超过限制时不丢弃数据，而是暂停读取(关闭autoRead)，由TCP的流量控制让对方放慢发送。每级限制都允许1秒的突发。
+	 */
+	public long readBytesPerSecond = 0;
+
+	/**
+	 * <p>
+	 * 读流量限制：同一个对方ip的所有连接合计每秒最多读多少字节，为0时不限制，默认为0。仅对AcceptorBuilder有效。
+	 * </p>
+	 */
+	public long readBytesPerSecondPerIp = 0;
+
+	/**
+	 * <p>
+	 * 读流量限制：每个连接每秒最多读多少字节，为0时不限制，默认为0。仅对AcceptorBuilder有效。
+	 * </p>
+	 */
+	public long readBytesPerSecondPerChannel = 0;
+
+	/**
+	 * <p>
+	 * 读流量限制：所有连接合计每秒最多读多少条消息(解码后)，为0时不限制，默认为0。仅对AcceptorBuilder和默认的ChannelInitializeBuilder有效。
+	 * </p>
+	 */
+	public long readMessagesPerSecond = 0;
+
+	/**
+	 * <p>
+	 * 读流量限制：同一个对方ip的所有连接合计每秒最多读多少条消息，为0时不限制，默认为0。仅对AcceptorBuilder和默认的ChannelInitializeBuilder有效。
+	 * </p>
+	 */
+	public long readMessagesPerSecondPerIp = 0;
+
+	/**
+	 * <p>
+	 * 读流量限制：每个连接每秒最多读多少条消息，为0时不限制，默认为0。仅对AcceptorBuilder和默认的ChannelInitializeBuilder有效。
+	 * </p>
+	 */
+	public long readMessagesPerSecondPerChannel = 0;
+
+	/**
+	 * <p>
+	 * 服务端监听socket的SO_BACKLOG，即已完成握手、等待accept的连接队列的长度，为0时使用netty的默认值(系统的somaxconn)，默认为0。仅对AcceptorBuilder有效。
+	 * </p>
+	 */
+	public int backlog = 0;
+
+	/**
+	 * <p>
+	 * 准入控制：服务端最多同时保持的连接数，超过时新连接被直接关闭，为0时不限制，默认为0。仅对AcceptorBuilder有效。
+	 * </p>
+	 * 
+	 * @see AdmissionControl
+	 */
+	public int maxConnections = 0;
+
+	/**
+	 * <p>
+	 * 准入控制：同一个对方ip最多同时保持的连接数，为0时不限制，默认为0。仅对AcceptorBuilder有效。
+	 * </p>
+	 */
+	public int maxConnectionsPerIp = 0;
+
+	/**
+	 * <p>
+	 * 准入控制：每秒最多接受的连接数(允许1秒的突发)，为0时不限制，默认为0。仅对AcceptorBuilder有效。
+	 * </p>
+	 */
+	public long acceptRatePerSecond = 0;
+
+	/**
+	 * <p>
+	 * 排空：{@link AcceptorBuilder#drain(long)}时发给每个连接的"即将关闭"消息，为null时不发送，默认为null。仅对AcceptorBuilder有效。
+	 * </p>
+	 */
+	public GoAwayMessage goAwayMessage = null;
+
+	/**
+	 * <p>
+	 * 排空：是否由默认的ChannelInitializeBuilder按"一条请求对应一条响应"自动统计每个连接上未完成的请求数，默认为false。
+	 * 为false时，未完成的请求数由业务代码通过{@link DrainHelper}维护。仅对AcceptorBuilder有效。
+	 * </p>
+	 */
+	public boolean trackInFlightRequests = false;
+
+	/**
+	 * <p>
+	 * 是否使用池化的ByteBufAllocator，默认为true。
+	 * </p>
+	 */
+	public boolean allocatorPooled = true;
+
+	/**
+	 * <p>
+	 * allocator是否优先分配直接内存，默认为true。
+	 * </p>
+	 */
+	public boolean allocatorPreferDirect = true;
+
+	/**
+	 * <p>
+	 * 池化allocator的堆内存arena数，小于0时使用netty的默认值(默认为-1，下同)。
+	 * </p>
+	 */
+	public int allocatorHeapArenas = -1;
+
+	/**
+	 * <p>
+	 * 池化allocator的直接内存arena数，小于0时使用netty的默认值。一般不少于worker线程数，以减少arena的竞争。
+	 * </p>
+	 */
+	public int allocatorDirectArenas = -1;
+
+	/**
+	 * <p>
+	 * 池化allocator的page大小(字节，必须是2的幂)，小于0时使用netty的默认值8192。
+	 * </p>
+	 */
+	public int allocatorPageSize = -1;
+
+	/**
+	 * <p>
+	 * 池化allocator的maxOrder，chunk大小为 pageSize &lt;&lt; maxOrder，小于0时使用netty的默认值11(即chunk为16MB)。
+	 * </p>
+	 */
+	public int allocatorMaxOrder = -1;
+
+	/**
+	 * <p>
+	 * 每个线程本地缓存中tiny(小于512字节)缓存的大小，小于0时使用netty的默认值，为0时不缓存。
+	 * </p>
+	 */
+	public int allocatorTinyCacheSize = -1;
+
+	/**
+	 * <p>
+	 * 每个线程本地缓存中small(小于pageSize)缓存的大小，小于0时使用netty的默认值，为0时不缓存。
+	 * </p>
+	 */
+	public int allocatorSmallCacheSize = -1;
+
+	/**
+	 * <p>
+	 * 每个线程本地缓存中normal(不大于chunk)缓存的大小，小于0时使用netty的默认值，为0时不缓存。
+	 * </p>
+	 */
+	public int allocatorNormalCacheSize = -1;
+
+	/**
+	 * <p>
+	 * 读数据时使用的缓冲区的最小值(字节)，默认为64。读缓冲区的大小在recvBufferMin和recvBufferMax之间根据实际读到的数据量自动调整。
+	 * </p>
+	 */
+	public int recvBufferMin = 64;
+
+	/**
+	 * <p>
+	 * 读数据时使用的缓冲区的初始值(字节)，默认为1024。
+	 * </p>
+	 */
+	public int recvBufferInitial = 1024;
+
+	/**
+	 * <p>
+	 * 读数据时使用的缓冲区的最大值(字节)，默认为65536。
+	 * </p>
+	 */
+	public int recvBufferMax = 65536;
+
+	/**
+	 * <p>
+	 * 服务端在同一端口上以SO_REUSEPORT绑定的监听socket数，默认为1。仅在使用epoll时有效，仅对AcceptorBuilder.bind()有效。
+	 * </p>
+	 * 大于1时，每个监听socket有自己的boss线程，由内核把新连接均衡地分配到各个socket上，可提高大量连接同时接入时的accept能力。一般设置为CPU核数。
+	 */
+	public int reusePortListeners = 1;
+
+	/**
+	 * <p>
+	 * 连接池：每个远端地址最多的连接数，默认为8。仅对ConnectionPool有效。
+	 * </p>
+	 */
+	public int poolMaxConnections = 8;
+
+	/**
+	 * <p>
+	 * 连接池：每个远端地址至少保持的连接数，默认为0。池建立时会预先建立这些连接，空闲回收也不会低于该值。仅对ConnectionPool有效。
+	 * </p>
+	 */
+	public int poolMinConnections = 0;
+
+	/**
+	 * <p>
+	 * 连接池：连接数达到上限时，最多可以等待的acquire数，默认不限制。仅对ConnectionPool有效。
+	 * </p>
+	 */
+	public int poolMaxPendingAcquires = Integer.MAX_VALUE;
+
+	/**
+	 * <p>
+	 * 连接池：acquire的超时时间(毫秒)，为0时一直等待，默认为0。仅对ConnectionPool有效。
+	 * </p>
+	 */
+	public long poolAcquireTimeoutMillis = 0;
+
+	/**
+	 * <p>
+	 * 连接池：连接在池中空闲多久(毫秒)之后被关闭，为0时不关闭，默认为60秒。仅对ConnectionPool有效。
+	 * </p>
+	 */
+	public long poolIdleTimeoutMillis = 60000;
+
+	/**
+	 * <p>
+	 * 连接池：检查连接是否可用的方式，默认为检查channel是否active。仅对ConnectionPool有效。
+	 * </p>
+	 */
+	public ChannelHealthChecker poolHealthChecker = ChannelHealthChecker.ACTIVE;
+
+	/**
+	 * <p>
+	 * 连接池：归还连接时是否也进行检查，不可用的连接会被关闭而不是放回池中，默认为true。仅对ConnectionPool有效。
+	 * </p>
+	 */
+	public boolean poolHealthCheckOnRelease = true;
+
+	/**
+	 * <p>
+	 * 同时发出多个请求的客户端：一个连接上最多同时未完成的请求数，默认为1024。仅对{@link PipelinedClient#connect}有效。
+	 * </p>
+	 */
+	public int pipelineMaxOutstanding = 1024;
+
+	/**
+	 * <p>
+	 * 同时发出多个请求的客户端：请求的默认期限(毫秒)，为0时不限制，默认为30秒。仅对{@link PipelinedClient#connect}有效。
+	 * </p>
+	 */
+	public long pipelineRequestTimeoutMillis = 30000;
+
+	/**
+	 * <p>
+	 * 自动重连：第一次重连前等待的时间(毫秒)，之后每次失败加倍，默认为100。实际等待的时间在该值的一半到该值之间随机。仅对{@link ManagedConnection}有效。
+	 * </p>
+	 */
+	public long reconnectInitialDelayMillis = 100;
+
+	/**
+	 * <p>
+	 * 自动重连：重连前等待的最长时间(毫秒)，默认为30秒。仅对{@link ManagedConnection}有效。
+	 * </p>
+	 */
+	public long reconnectMaxDelayMillis = 30000;
+
+	/**
+	 * <p>
+	 * 自动重连：连接可用时另外保持的备用连接数，当前连接断开时立即切换到备用连接，默认为0。仅对{@link ManagedConnection}有效。
+	 * </p>
+	 */
+	public int standbyConnections = 0;
+
+	/**
+	 * <p>
+	 * 负载均衡：连续失败多少次的服务端被剔除，为0时不按失败剔除，默认为5。仅对{@link LoadBalancedClient}有效。
+	 * </p>
+	 */
+	public int balancerEjectConsecutiveFailures = 5;
+
+	/**
+	 * <p>
+	 * 负载均衡：延时超过所有服务端延时中位数的多少倍时被剔除，为0时不按延时剔除，默认为3。仅对{@link LoadBalancedClient}有效。
+	 * </p>
+	 */
+	public double balancerEjectLatencyFactor = 3;
+
+	/**
+	 * <p>
+	 * 负载均衡：被剔除的服务端多久(毫秒)之后恢复，默认为10秒。仅对{@link LoadBalancedClient}有效。
+	 * </p>
+	 */
+	public long balancerEjectMillis = 10000;
+
+	/**
+	 * <p>
+	 * 负载均衡：最多剔除服务端总数的百分之多少，默认为50。仅对{@link LoadBalancedClient}有效。
+	 * </p>
+	 */
+	public int balancerMaxEjectedPercent = 50;
+
+	/**
+	 * <p>
+	 * 负载均衡：检查延时和恢复被剔除的服务端的间隔(毫秒)，默认为1秒。仅对{@link LoadBalancedClient}有效。
+	 * </p>
+	 */
+	public long balancerCheckIntervalMillis = 1000;
+
+	/**
+	 * <p>
+	 * 负载均衡：一个检查间隔内至少完成多少个请求的服务端才参与按延时剔除，默认为10。仅对{@link LoadBalancedClient}有效。
+	 * </p>
+	 */
+	public int balancerMinSamples = 10;
+
+	/**
+	 * <p>
+	 * 复制出一个新的NettyConfig，所有参数与当前对象相同，用于在{@link AcceptorBuilder#reconfigure(NettyConfig, java.net.SocketAddress)}之前修改参数。
+	 * </p>
+	 * <p>
+	 * 如果channelInitializer是按当前对象生成pipeline的ChannelInitializeBuilder(即默认值)，新对象使用按新对象生成pipeline的ChannelInitializeBuilder；
+	 * 其他channelInitializer原样复制。
+	 * </p>
+	 * 
+	 * @return 新的NettyConfig
+	 */
+	public NettyConfig copy() {
+		NettyConfig copy = new NettyConfig();
+		if (!(channelInitializer instanceof ChannelInitializeBuilder && ((ChannelInitializeBuilder) channelInitializer)
+				.getConfig() == this && channelInitializer.getClass() == ChannelInitializeBuilder.class)) {
+			copy.channelInitializer = channelInitializer;
+		}
+		copy.threadPool = threadPool;
+		copy.bossThreads = bossThreads;
+		copy.workerThreads = workerThreads;
+		copy.threadNamePrefix = threadNamePrefix;
+		copy.threadPriority = threadPriority;
+		copy.daemonThreads = daemonThreads;
+		copy.threadFactory = threadFactory;
+		copy.bossGroup = bossGroup;
+		copy.workerGroup = workerGroup;
+		copy.connectTimeout = connectTimeout;
+		copy.reuseAddress = reuseAddress;
+		copy.socket_keepAlive = socket_keepAlive;
+		copy.socket_soLinger = socket_soLinger;
+		copy.receiver_buffer_size = receiver_buffer_size;
+		copy.send_buffer_size = send_buffer_size;
+		copy.tcp_no_delay = tcp_no_delay;
+		copy.transportMode = transportMode;
+		copy.taskScheduler = taskScheduler;
+		copy.writeBufferLowWaterMark = writeBufferLowWaterMark;
+		copy.writeBufferHighWaterMark = writeBufferHighWaterMark;
+		copy.writePolicy = writePolicy;
+		copy.flushConsolidateAfter = flushConsolidateAfter;
+		copy.flushConsolidateWhenNoRead = flushConsolidateWhenNoRead;
+		copy.framingMode = framingMode;
+		copy.maxFrameLength = maxFrameLength;
+		copy.lengthFieldLength = lengthFieldLength;
+		copy.lengthFieldByteOrder = lengthFieldByteOrder;
+		copy.compression = compression;
+		copy.compressionThreshold = compressionThreshold;
+		copy.compressionLevel = compressionLevel;
+		copy.compressionStats = compressionStats;
+		copy.tls = tls;
+		copy.tlsCertChainFile = tlsCertChainFile;
+		copy.tlsKeyFile = tlsKeyFile;
+		copy.tlsKeyPassword = tlsKeyPassword;
+		copy.tlsTrustCertFile = tlsTrustCertFile;
+		copy.tlsProtocols = tlsProtocols == null ? null : tlsProtocols.clone();
+		copy.tlsSessionCacheSize = tlsSessionCacheSize;
+		copy.tlsSessionTimeoutSeconds = tlsSessionTimeoutSeconds;
+		copy.tlsSessionTickets = tlsSessionTickets;
+		copy.tlsClientSessionReuse = tlsClientSessionReuse;
+		copy.tlsVerifyHostname = tlsVerifyHostname;
+		copy.tlsHandshakeTimeoutMillis = tlsHandshakeTimeoutMillis;
+		copy.tlsOffloadThreads = tlsOffloadThreads;
+		copy.tlsStats = tlsStats;
+		copy.trafficMetrics = trafficMetrics;
+		copy.readBytesPerSecond = readBytesPerSecond;
+		copy.readBytesPerSecondPerIp = readBytesPerSecondPerIp;
+		copy.readBytesPerSecondPerChannel = readBytesPerSecondPerChannel;
+		copy.readMessagesPerSecond = readMessagesPerSecond;
+		copy.readMessagesPerSecondPerIp = readMessagesPerSecondPerIp;
+		copy.readMessagesPerSecondPerChannel = readMessagesPerSecondPerChannel;
+		copy.backlog = backlog;
+		copy.maxConnections = maxConnections;
+		copy.maxConnectionsPerIp = maxConnectionsPerIp;
+		copy.acceptRatePerSecond = acceptRatePerSecond;
+		copy.goAwayMessage = goAwayMessage;
+		copy.trackInFlightRequests = trackInFlightRequests;
+		copy.allocatorPooled = allocatorPooled;
+		copy.allocatorPreferDirect = allocatorPreferDirect;
+		copy.allocatorHeapArenas = allocatorHeapArenas;
+		copy.allocatorDirectArenas = allocatorDirectArenas;
+		copy.allocatorPageSize = allocatorPageSize;
+		copy.allocatorMaxOrder = allocatorMaxOrder;
+		copy.allocatorTinyCacheSize = allocatorTinyCacheSize;
+		copy.allocatorSmallCacheSize = allocatorSmallCacheSize;
+		copy.allocatorNormalCacheSize = allocatorNormalCacheSize;
+		copy.recvBufferMin = recvBufferMin;
+		copy.recvBufferInitial = recvBufferInitial;
+		copy.recvBufferMax = recvBufferMax;
+		copy.reusePortListeners = reusePortListeners;
+		copy.poolMaxConnections = poolMaxConnections;
+		copy.poolMinConnections = poolMinConnections;
+		copy.poolMaxPendingAcquires = poolMaxPendingAcquires;
+		copy.poolAcquireTimeoutMillis = poolAcquireTimeoutMillis;
+		copy.poolIdleTimeoutMillis = poolIdleTimeoutMillis;
+		copy.poolHealthChecker = poolHealthChecker;
+		copy.poolHealthCheckOnRelease = poolHealthCheckOnRelease;
+		copy.pipelineMaxOutstanding = pipelineMaxOutstanding;
+		copy.pipelineRequestTimeoutMillis = pipelineRequestTimeoutMillis;
+		copy.reconnectInitialDelayMillis = reconnectInitialDelayMillis;
+		copy.reconnectMaxDelayMillis = reconnectMaxDelayMillis;
+		copy.standbyConnections = standbyConnections;
+		copy.balancerEjectConsecutiveFailures = balancerEjectConsecutiveFailures;
+		copy.balancerEjectLatencyFactor = balancerEjectLatencyFactor;
+		copy.balancerEjectMillis = balancerEjectMillis;
+		copy.balancerMaxEjectedPercent = balancerMaxEjectedPercent;
+		copy.balancerCheckIntervalMillis = balancerCheckIntervalMillis;
+		copy.balancerMinSamples = balancerMinSamples;
+		return copy;
+	}
+
 	/**
 	 * <p>
 	 * 显示出当前的配置内容，格式为每行一个参数，每行形如：
@@ -111,13 +827,80 @@ public class NettyConfig {
 	@Override
 	public String toString() {
 		StringBuilder sb = new StringBuilder();
+		sb.append("bossThreads: " + bossThreads).append(System.lineSeparator());
+		sb.append("workerThreads: " + workerThreads).append(System.lineSeparator());
+		sb.append("threadNamePrefix: " + threadNamePrefix).append(System.lineSeparator());
+		sb.append("threadPriority: " + threadPriority).append(System.lineSeparator());
+		sb.append("daemonThreads: " + daemonThreads).append(System.lineSeparator());
 		sb.append("connectTimeout: " + connectTimeout).append(System.lineSeparator());
 		sb.append("socket_reuseAddress: " + reuseAddress).append(System.lineSeparator());
 		sb.append("socket_keepAlive: " + socket_keepAlive).append(System.lineSeparator());
 		sb.append("socket_soLinger: " + socket_soLinger).append(System.lineSeparator());
 		sb.append("receiver_buffer_size: " + receiver_buffer_size).append(System.lineSeparator());
 		sb.append("send_buffer_size: " + send_buffer_size).append(System.lineSeparator());
-		sb.append("tcp_no_delay: " + tcp_no_delay);
+		sb.append("tcp_no_delay: " + tcp_no_delay).append(System.lineSeparator());
+		sb.append("transportMode: " + transportMode).append(System.lineSeparator());
+		sb.append("taskScheduler: " + taskScheduler).append(System.lineSeparator());
+		sb.append("writeBufferWaterMark(low/high): " + writeBufferLowWaterMark + "/" + writeBufferHighWaterMark).append(
+				System.lineSeparator());
+		sb.append("writePolicy: " + writePolicy).append(System.lineSeparator());
+		sb.append("flushConsolidateAfter: " + flushConsolidateAfter).append(System.lineSeparator());
+		sb.append("flushConsolidateWhenNoRead: " + flushConsolidateWhenNoRead).append(System.lineSeparator());
+		sb.append("framingMode: " + framingMode).append(System.lineSeparator());
+		sb.append("maxFrameLength: " + maxFrameLength).append(System.lineSeparator());
+		sb.append("lengthField(length/byteOrder): " + lengthFieldLength + "/" + lengthFieldByteOrder).append(
+				System.lineSeparator());
+		sb.append("compression(codec/threshold/level): " + compression + "/" + compressionThreshold + "/" + compressionLevel)
+				.append(System.lineSeparator());
+		sb.append("tls: " + tls).append(System.lineSeparator());
+		sb.append("tlsCertChainFile: " + tlsCertChainFile).append(System.lineSeparator());
+		sb.append("tlsTrustCertFile: " + tlsTrustCertFile).append(System.lineSeparator());
+		sb.append("tlsProtocols: " + (tlsProtocols == null ? null : Arrays.toString(tlsProtocols))).append(
+				System.lineSeparator());
+		sb.append("tlsSession(cacheSize/timeoutSeconds/tickets/clientReuse): " + tlsSessionCacheSize + "/"
+				+ tlsSessionTimeoutSeconds + "/" + tlsSessionTickets + "/" + tlsClientSessionReuse).append(
+				System.lineSeparator());
+		sb.append("tlsVerifyHostname: " + tlsVerifyHostname).append(System.lineSeparator());
+		sb.append("tlsHandshakeTimeoutMillis: " + tlsHandshakeTimeoutMillis).append(System.lineSeparator());
+		sb.append("tlsOffloadThreads: " + tlsOffloadThreads).append(System.lineSeparator());
+		sb.append("readBytesPerSecond(global/ip/channel): " + readBytesPerSecond + "/" + readBytesPerSecondPerIp + "/"
+				+ readBytesPerSecondPerChannel).append(System.lineSeparator());
+		sb.append("readMessagesPerSecond(global/ip/channel): " + readMessagesPerSecond + "/" + readMessagesPerSecondPerIp
+				+ "/" + readMessagesPerSecondPerChannel).append(System.lineSeparator());
+		sb.append("backlog: " + backlog).append(System.lineSeparator());
+		sb.append("maxConnections(global/ip): " + maxConnections + "/" + maxConnectionsPerIp).append(System.lineSeparator());
+		sb.append("acceptRatePerSecond: " + acceptRatePerSecond).append(System.lineSeparator());
+		sb.append("goAwayMessage: " + goAwayMessage).append(System.lineSeparator());
+		sb.append("trackInFlightRequests: " + trackInFlightRequests).append(System.lineSeparator());
+		sb.append("trafficMetrics: " + (trafficMetrics == null ? null : trafficMetrics.getName())).append(
+				System.lineSeparator());
+		sb.append("allocatorPooled: " + allocatorPooled).append(System.lineSeparator());
+		sb.append("allocatorPreferDirect: " + allocatorPreferDirect).append(System.lineSeparator());
+		sb.append("allocatorHeapArenas: " + allocatorHeapArenas).append(System.lineSeparator());
+		sb.append("allocatorDirectArenas: " + allocatorDirectArenas).append(System.lineSeparator());
+		sb.append("allocatorPageSize: " + allocatorPageSize).append(System.lineSeparator());
+		sb.append("allocatorMaxOrder: " + allocatorMaxOrder).append(System.lineSeparator());
+		sb.append("allocatorTinyCacheSize: " + allocatorTinyCacheSize).append(System.lineSeparator());
+		sb.append("allocatorSmallCacheSize: " + allocatorSmallCacheSize).append(System.lineSeparator());
+		sb.append("allocatorNormalCacheSize: " + allocatorNormalCacheSize).append(System.lineSeparator());
+		sb.append("recvBuffer(min/initial/max): " + recvBufferMin + "/" + recvBufferInitial + "/" + recvBufferMax).append(
+				System.lineSeparator());
+		sb.append("reusePortListeners: " + reusePortListeners).append(System.lineSeparator());
+		sb.append("poolMaxConnections: " + poolMaxConnections).append(System.lineSeparator());
+		sb.append("poolMinConnections: " + poolMinConnections).append(System.lineSeparator());
+		sb.append("poolMaxPendingAcquires: " + poolMaxPendingAcquires).append(System.lineSeparator());
+		sb.append("poolAcquireTimeoutMillis: " + poolAcquireTimeoutMillis).append(System.lineSeparator());
+		sb.append("poolIdleTimeoutMillis: " + poolIdleTimeoutMillis).append(System.lineSeparator());
+		sb.append("poolHealthCheckOnRelease: " + poolHealthCheckOnRelease).append(System.lineSeparator());
+		sb.append("pipelineMaxOutstanding: " + pipelineMaxOutstanding).append(System.lineSeparator());
+		sb.append("pipelineRequestTimeoutMillis: " + pipelineRequestTimeoutMillis).append(System.lineSeparator());
+		sb.append("reconnectDelayMillis(initial/max): " + reconnectInitialDelayMillis + "/" + reconnectMaxDelayMillis).append(
+				System.lineSeparator());
+		sb.append("standbyConnections: " + standbyConnections).append(System.lineSeparator());
+		sb.append("balancerEject(failures/latencyFactor/millis/maxPercent): " + balancerEjectConsecutiveFailures + "/"
+				+ balancerEjectLatencyFactor + "/" + balancerEjectMillis + "/" + balancerMaxEjectedPercent).append(
+				System.lineSeparator());
+		sb.append("balancerCheck(intervalMillis/minSamples): " + balancerCheckIntervalMillis + "/" + balancerMinSamples);
 		return sb.toString();
 	}
 
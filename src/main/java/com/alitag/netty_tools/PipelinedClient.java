@@ -0,0 +1,405 @@
+package com.alitag.netty_tools;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.EventLoop;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.Timeout;
+import io.netty.util.TimerTask;
+import io.netty.util.collection.LongObjectHashMap;
+import io.netty.util.collection.LongObjectMap;
+
+import java.net.SocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * 在一个连接上同时发出多个请求的异步客户端。每个请求带有一个关联id，响应按关联id找到对应的请求，因此服务端可以不按顺序响应，
+ * 一个连接可以代替多个"一问一答"的连接。请求和关联id的编码方式由{@link RequestCorrelator}决定。
+ * </p>
+ * <p>
+ * {@link #send(Object)}不等待，返回的CompletableFuture在收到响应时完成，超过请求的期限时以TimeoutException失败，连接关闭时以
+ * ClosedChannelException失败，pipeline中出现异常时以该异常失败并关闭连接。未完成的请求超过上限时，新的请求立即以RejectedExecutionException失败，调用者应当稍后重试或者使用其他连接。
+ * 期限由{@link SharedWheelTimer}检查，精度为10毫秒。
+ * </p>
+ * <p>
+ * 未完成的请求只在channel的EventLoop中访问，不需要加锁。CompletableFuture在EventLoop中完成，因此不要在thenApply等回调中阻塞，
+ * 需要阻塞时使用thenApplyAsync等方法。
+ * </p>
+ * <p>
+ * channel的pipeline中应当只有编解码器(例如默认的ChannelInitializeBuilder生成的pipeline)，该类在pipeline的最后加入处理响应的handler。
+ * </p>
+ * <p>
+ * 使用示例：
+ * 
+ * <pre>
+ * PipelinedClient&lt;String, String&gt; client = PipelinedClient.connect(connectorBuilder, remoteAddress,
+ * 		LineRequestCorrelator.INSTANCE).get();
+ * client.send(&quot;GET key&quot;).thenAccept(response -&gt; ...);
+ * </pre>
+ * </p>
+ * <p>
+ * 线程安全：该类线程安全。
+ * </p>
+ * 
+ * @param <Q>
+ *            请求的类型
+ * @param <R>
+ *            响应的类型
+ * @author gchangyi
+ * @version 1.0
+ */
+public class PipelinedClient<Q, R> {
+
+	/** 处理响应的handler在pipeline中的名字 */
+	public static final String HANDLER_NAME = "pipelined_client";
+
+	private final Channel channel;
+
+	private final EventLoop eventLoop;
+
+	private final RequestCorrelator<Q, R> correlator;
+
+	private final int maxOutstanding;
+
+	private final long requestTimeoutMillis;
+
+	private final AtomicLong nextId = new AtomicLong();
+
+	/** 未完成的请求数，包括还没有交给EventLoop的请求 */
+	private final AtomicInteger outstanding = new AtomicInteger();
+
+	/** 等待响应的请求，只在EventLoop中访问 */
+	private final LongObjectMap<Pending> pending = new LongObjectHashMap<Pending>();
+
+	/** 连接是否已经关闭，只在EventLoop中访问 */
+	private boolean closed;
+
+	/**
+	 * <p>
+	 * 使用builder建立到remoteAddress的连接，并在其上生成PipelinedClient。未完成的请求数上限和请求的期限分别为
+	 * {@link NettyConfig#pipelineMaxOutstanding}和{@link NettyConfig#pipelineRequestTimeoutMillis}。
+	 * </p>
+	 * 
+	 * @param builder
+	 *            用于建立连接的ConnectorBuilder
+	 * @param remoteAddress
+	 *            远端地址
+	 * @param correlator
+	 *            请求和响应的对应方式
+	 * @return 连接建立后完成的future，连接失败时以连接的异常失败
+	 * @throws IllegalArgumentException
+	 *             如果任何参数为null，或者NettyConfig中的参数不合法
+	 */
+	public static <Q, R> CompletableFuture<PipelinedClient<Q, R>> connect(ConnectorBuilder builder,
+			SocketAddress remoteAddress, final RequestCorrelator<Q, R> correlator) {
+		ArgumentValidator.notNull(builder, "builder");
+		ArgumentValidator.notNull(remoteAddress, "remoteAddress");
+		ArgumentValidator.notNull(correlator, "correlator");
+		NettyConfig config = builder.getNettyConfig();
+		final int maxOutstanding = config.pipelineMaxOutstanding;
+		final long requestTimeoutMillis = config.pipelineRequestTimeoutMillis;
+		validate(maxOutstanding, requestTimeoutMillis);
+		Bootstrap bootstrap = builder.getConnector();
+		final CompletableFuture<PipelinedClient<Q, R>> result = new CompletableFuture<PipelinedClient<Q, R>>();
+		bootstrap.connect(remoteAddress).addListener(new ChannelFutureListener() {
+			@Override
+			public void operationComplete(ChannelFuture future) throws Exception {
+				if (future.isSuccess()) {
+					result.complete(new PipelinedClient<Q, R>(future.channel(), correlator, maxOutstanding,
+							requestTimeoutMillis));
+				} else {
+					result.completeExceptionally(future.cause());
+				}
+			}
+		});
+		return result;
+	}
+
+	/**
+	 * <p>
+	 * 在已经建立的连接上生成PipelinedClient，并在pipeline的最后加入处理响应的handler。
+	 * </p>
+	 * 
+	 * @param channel
+	 *            已经建立的连接
+	 * @param correlator
+	 *            请求和响应的对应方式
+	 * @param maxOutstanding
+	 *            最多同时未完成的请求数
+	 * @param requestTimeoutMillis
+	 *            请求的默认期限(毫秒)，为0时不限制
+	 * @throws IllegalArgumentException
+	 *             如果channel或correlator为null，maxOutstanding<=0，或者requestTimeoutMillis<0
+	 */
+	public PipelinedClient(Channel channel, RequestCorrelator<Q, R> correlator, int maxOutstanding,
+			long requestTimeoutMillis) {
+		ArgumentValidator.notNull(channel, "channel");
+		ArgumentValidator.notNull(correlator, "correlator");
+		validate(maxOutstanding, requestTimeoutMillis);
+		this.channel = channel;
+		this.eventLoop = channel.eventLoop();
+		this.correlator = correlator;
+		this.maxOutstanding = maxOutstanding;
+		this.requestTimeoutMillis = requestTimeoutMillis;
+		channel.pipeline().addLast(HANDLER_NAME, new ResponseHandler());
+	}
+
+	private static void validate(int maxOutstanding, long requestTimeoutMillis) {
+		ArgumentValidator.isTrue(maxOutstanding > 0, "maxOutstanding should be >0: " + maxOutstanding);
+		ArgumentValidator.isTrue(requestTimeoutMillis >= 0, "requestTimeoutMillis should be >=0: " + requestTimeoutMillis);
+	}
+
+	/**
+	 * <p>
+	 * 以默认的期限发出请求。
+	 * </p>
+	 * 
+	 * @param request
+	 *            请求
+	 * @return 收到响应时完成的future
+	 * @throws IllegalArgumentException
+	 *             如果request为null
+	 */
+	public CompletableFuture<R> send(Q request) {
+		return send(request, requestTimeoutMillis);
+	}
+
+	/**
+	 * <p>
+	 * 发出请求。
+	 * </p>
+	 * 
+	 * @param request
+	 *            请求
+	 * @param timeoutMillis
+	 *            请求的期限(毫秒)，为0时不限制
+	 * @return 收到响应时完成的future
+	 * @throws IllegalArgumentException
+	 *             如果request为null，或者timeoutMillis<0
+	 */
+	public CompletableFuture<R> send(Q request, long timeoutMillis) {
+		ArgumentValidator.notNull(request, "request");
+		ArgumentValidator.isTrue(timeoutMillis >= 0, "timeoutMillis should be >=0: " + timeoutMillis);
+		CompletableFuture<R> future = new CompletableFuture<R>();
+		if (!channel.isActive()) {
+			future.completeExceptionally(new ClosedChannelException());
+			return future;
+		}
+		int current;
+		do {
+			current = outstanding.get();
+			if (current >= maxOutstanding) {
+				future.completeExceptionally(new RejectedExecutionException("too many outstanding requests: " + current));
+				return future;
+			}
+		} while (!outstanding.compareAndSet(current, current + 1));
+		Pending p = new Pending(nextId.getAndIncrement(), request, future, timeoutMillis);
+		if (eventLoop.inEventLoop()) {
+			p.run();
+		} else {
+			try {
+				eventLoop.execute(p);
+			} catch (RejectedExecutionException e) {
+				outstanding.decrementAndGet();
+				future.completeExceptionally(e);
+			}
+		}
+		return future;
+	}
+
+	/**
+	 * @return 未完成的请求数
+	 */
+	public int getOutstanding() {
+		return outstanding.get();
+	}
+
+	/**
+	 * @return 最多同时未完成的请求数
+	 */
+	public int getMaxOutstanding() {
+		return maxOutstanding;
+	}
+
+	/**
+	 * @return 使用的连接
+	 */
+	public Channel getChannel() {
+		return channel;
+	}
+
+	/**
+	 * @return 连接是否可用
+	 */
+	public boolean isActive() {
+		return channel.isActive();
+	}
+
+	/**
+	 * <p>
+	 * 关闭连接，所有未完成的请求以ClosedChannelException失败。
+	 * </p>
+	 * 
+	 * @return 关闭的future
+	 */
+	public ChannelFuture close() {
+		return channel.close();
+	}
+
+	@Override
+	public String toString() {
+		return "PipelinedClient" + ChannelHelper.getDescriptor(channel) + "(outstanding: " + outstanding.get() + "/"
+				+ maxOutstanding + ")";
+	}
+
+	/**
+	 * 在EventLoop中结束一个请求
+	 */
+	private Pending remove(long id) {
+		Pending p = pending.remove(id);
+		if (p != null) {
+			outstanding.decrementAndGet();
+			if (p.timeout != null)
+				p.timeout.cancel();
+		}
+		return p;
+	}
+
+	/**
+	 * 一个等待响应的请求。run()在EventLoop中发出请求，run(Timeout)在时间轮的线程中处理到期
+	 */
+	private final class Pending implements Runnable, TimerTask, ChannelFutureListener {
+
+		final long id;
+
+		final CompletableFuture<R> future;
+
+		final long timeoutMillis;
+
+		Q request;
+
+		Timeout timeout;
+
+		Pending(long id, Q request, CompletableFuture<R> future, long timeoutMillis) {
+			this.id = id;
+			this.request = request;
+			this.future = future;
+			this.timeoutMillis = timeoutMillis;
+		}
+
+		@Override
+		public void run() {
+			if (closed) {
+				outstanding.decrementAndGet();
+				future.completeExceptionally(new ClosedChannelException());
+				return;
+			}
+			Object msg;
+			try {
+				msg = correlator.encode(id, request);
+			} catch (Throwable e) {
+				outstanding.decrementAndGet();
+				future.completeExceptionally(e);
+				return;
+			}
+			request = null;
+			pending.put(id, this);
+			if (timeoutMillis > 0)
+				timeout = SharedWheelTimer.get().newTimeout(this, timeoutMillis, TimeUnit.MILLISECONDS);
+			channel.writeAndFlush(msg).addListener(this);
+		}
+
+		@Override
+		public void operationComplete(ChannelFuture f) throws Exception {
+			if (!f.isSuccess() && remove(id) != null)
+				future.completeExceptionally(f.cause());
+		}
+
+		@Override
+		public void run(Timeout t) throws Exception {
+			try {
+				eventLoop.execute(new Runnable() {
+					@Override
+					public void run() {
+						if (remove(id) != null)
+							future.completeExceptionally(new TimeoutException("no response in " + timeoutMillis + "ms"));
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				future.completeExceptionally(e);
+			}
+		}
+	}
+
+	private final class ResponseHandler extends ChannelInboundHandlerAdapter {
+
+		@Override
+		public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+			// 加入之前连接已经关闭时不会再收到channelInactive
+			if (!ctx.channel().isActive())
+				closed = true;
+		}
+
+		@Override
+		public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+			long id = correlator.idOf(msg);
+			if (id < 0) {
+				ctx.fireChannelRead(msg);
+				return;
+			}
+			Pending p = remove(id);
+			if (p == null) {
+				// 已经超时的请求
+				ReferenceCountUtil.release(msg);
+				return;
+			}
+			R response;
+			try {
+				response = correlator.decode(msg);
+			} catch (Throwable e) {
+				p.future.completeExceptionally(e);
+				return;
+			}
+			p.future.complete(response);
+		}
+
+		@Override
+		public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+			closed = true;
+			failAll(new ClosedChannelException());
+			ctx.fireChannelInactive();
+		}
+
+		/**
+		 * 该handler在pipeline的最后，异常(例如连接被重置、帧过长)之后响应可能已经无法对应，所有未完成的请求以该异常失败并关闭连接
+		 */
+		@Override
+		public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+			failAll(cause);
+			ctx.close();
+		}
+
+		private void failAll(Throwable cause) {
+			if (pending.isEmpty())
+				return;
+			List<Pending> failed = new ArrayList<Pending>(pending.values());
+			for (Pending p : failed) {
+				remove(p.id);
+				p.future.completeExceptionally(cause);
+			}
+		}
+	}
+}
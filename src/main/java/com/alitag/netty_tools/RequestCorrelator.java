@@ -0,0 +1,58 @@
+package com.alitag.netty_tools;
+
+/**
+ * <p>
+ * {@link PipelinedClient}用来把请求和响应对应起来的协议约定：发送时把请求和关联id编码成写入pipeline的消息，收到消息时从中取出关联id。
+ * 服务端必须在响应中原样带回请求的关联id，但可以不按请求的顺序响应。
+ * </p>
+ * <p>
+ * 写入的消息经过pipeline中的编码器，收到的消息是解码器的输出，因此两者的类型由pipeline决定。{@link LineRequestCorrelator}是基于文本行的实现。
+ * </p>
+ * <p>
+ * 线程安全：该接口的实现必须是线程安全的，同一个实例会被多个channel同时使用。
+ * </p>
+ * 
+ * @param <Q>
+ *            请求的类型
+ * @param <R>
+ *            响应的类型
+ * @author gchangyi
+ * @version 1.0
+ */
+public interface RequestCorrelator<Q, R> {
+
+	/**
+	 * <p>
+	 * 生成带有关联id的、写入pipeline的消息。
+	 * </p>
+	 * 
+	 * @param id
+	 *            关联id，从0开始递增
+	 * @param request
+	 *            请求
+	 * @return 写入pipeline的消息
+	 */
+	Object encode(long id, Q request);
+
+	/**
+	 * <p>
+	 * 得到收到的消息中的关联id。
+	 * </p>
+	 * 
+	 * @param msg
+	 *            解码后的消息
+	 * @return 关联id，小于0表示该消息不是响应(例如服务端推送的消息)，它将被传给pipeline中后面的handler
+	 */
+	long idOf(Object msg);
+
+	/**
+	 * <p>
+	 * 从收到的消息中得到响应。如果消息是引用计数的对象，返回的响应(或者该方法)负责release它。
+	 * </p>
+	 * 
+	 * @param msg
+	 *            关联id不小于0的消息
+	 * @return 响应
+	 */
+	R decode(Object msg);
+}
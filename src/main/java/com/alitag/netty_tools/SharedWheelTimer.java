@@ -0,0 +1,53 @@
+package com.alitag.netty_tools;
+
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timer;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * 进程内共享的HashedWheelTimer。所有连接的定时任务共用一个线程，线程数不会随连接数增长。
+ * </p>
+ * <p>
+ * 时间轮的精度为10毫秒，线程为守护线程，第一次使用时才会启动。
+ * </p>
+ * <p>
+ * 线程安全：该类线程安全。
+ * </p>
+ * 
+ * @author gchangyi
+ * @version 1.0
+ */
+public class SharedWheelTimer {
+
+	/** 时间轮每一格的时长(毫秒) */
+	public static final long TICK_MILLIS = 10;
+
+	/** 时间轮的格数 */
+	private static final int TICKS_PER_WHEEL = 512;
+
+	/**
+	 * 私有构造函数。防止被实例化。
+	 */
+	private SharedWheelTimer() {
+		// do nothing
+	}
+
+	/**
+	 * <p>
+	 * 得到共享的时间轮。该时间轮不可被stop。
+	 * </p>
+	 * 
+	 * @return 共享的时间轮
+	 */
+	public static Timer get() {
+		return Holder.TIMER;
+	}
+
+	private static class Holder {
+		static final Timer TIMER = new HashedWheelTimer(new DefaultThreadFactory("netty-tools-wheel", true), TICK_MILLIS,
+				TimeUnit.MILLISECONDS, TICKS_PER_WHEEL);
+	}
+}
@@ -0,0 +1,18 @@
+package com.alitag.netty_tools;
+
+/**
+ * <p>
+ * ChannelTaskHelper中自动任务的调度方式。
+ * </p>
+ * <ul>
+ * <li>TIMER: 每个任务使用一个独立的java.util.Timer，即每个任务一个线程。仅为兼容旧版本保留</li>
+ * <li>HASHED_WHEEL: 所有任务共用一个HashedWheelTimer，见{@link SharedWheelTimer}。任务在时间轮线程中执行，所以任务应当短小，不可阻塞</li>
+ * <li>EVENT_LOOP: 任务在channel自己的EventLoop中调度和执行，任务中不可有阻塞操作</li>
+ * </ul>
+ * 
+ * @author gchangyi
+ * @version 1.0
+ */
+public enum TaskSchedulerType {
+	TIMER, HASHED_WHEEL, EVENT_LOOP
+}
@@ -1,11 +1,15 @@
 package com.alitag.netty_tools;
 
+import io.netty.util.Timeout;
+import io.netty.util.concurrent.ScheduledFuture;
+
 import java.util.Timer;
 import java.util.TimerTask;
 
 /**
  * 该类扩展了TimerTask。增加了一个指定Timer的引用和一个getName()的虚方法。
  * <p>
+ * 使用{@link TaskSchedulerType#TIMER}调度时，owner为运行该任务的Timer；使用其它方式调度时，owner为null。无论哪种调度方式，调用{@link #cancel()}都会停止该任务。
  *
  * @author gchangyi
  * @version 1.0
@@ -13,6 +17,17 @@ import java.util.TimerTask;
 public abstract class TimerTaskExt extends TimerTask {
 	private Timer owner;
 
+	/** 使用HashedWheelTimer调度时的句柄 */
+	private volatile Timeout timeout;
+
+	/** 使用EventLoop调度时的句柄 */
+	private volatile ScheduledFuture<?> future;
+
+	/** 使用Timer调度只运行一次的任务时，实际加入Timer的包装任务 */
+	private volatile TimerTask onceTask;
+
+	private volatile boolean cancelled;
+
 	public Timer getOwner() {
 		return owner;
 	}
@@ -21,6 +36,54 @@ public abstract class TimerTaskExt extends TimerTask {
 		this.owner = owner;
 	}
 
+	void setTimeout(Timeout timeout) {
+		this.timeout = timeout;
+		if (cancelled)
+			timeout.cancel();
+	}
+
+	void setFuture(ScheduledFuture<?> future) {
+		this.future = future;
+		if (cancelled)
+			future.cancel(false);
+	}
+
+	void setOnceTask(TimerTask onceTask) {
+		this.onceTask = onceTask;
+		if (cancelled) {
+			onceTask.cancel();
+			owner.cancel();
+		}
+	}
+
+	boolean isCancelled() {
+		return cancelled;
+	}
+
+	/**
+	 * 取消该任务。如果任务正在运行，它会运行完毕，但不会再被调度。
+	 *
+	 * @return 如果阻止了至少一次尚未开始的运行，返回true
+	 */
+	@Override
+	public boolean cancel() {
+		cancelled = true;
+		boolean result = super.cancel();
+		Timeout t = timeout;
+		if (t != null)
+			result |= t.cancel();
+		ScheduledFuture<?> f = future;
+		if (f != null)
+			result |= f.cancel(false);
+		TimerTask o = onceTask;
+		if (o != null) {
+			// 该Timer只为这一次运行而创建
+			result |= o.cancel();
+			owner.cancel();
+		}
+		return result;
+	}
+
 	/**
 	 * 得到task的名字
 	 *
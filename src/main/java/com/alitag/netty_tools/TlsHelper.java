@@ -0,0 +1,91 @@
+package com.alitag.netty_tools;
+
+import io.netty.channel.Channel;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.util.AttributeKey;
+import io.netty.util.concurrent.Future;
+
+import javax.net.ssl.SSLSession;
+
+/**
+ * <p>
+ * 读取AcceptorBuilder和ConnectorBuilder生成的TLS连接的状态。TLS的参数见NettyConfig中tls开头的字段。
+ * </p>
+ *
+ * @author gchangyi
+ * @version 1.0
+ */
+public class TlsHelper {
+
+	/** 握手是否恢复了之前的会话，握手成功后设置 */
+	static final AttributeKey<Boolean> KEY_RESUMED = AttributeKey.valueOf(TlsHelper.class.getName() + ".resumed");
+
+	private TlsHelper() {
+	}
+
+	/**
+	 * <p>
+	 * 得到channel中的SslHandler。
+	 * </p>
+	 *
+	 * @param channel
+	 *            当前的连接对象
+	 * @return SslHandler，不是TLS连接或者客户端还没有开始连接时为null
+	 * @throws IllegalArgumentException
+	 *             如果channel为null
+	 */
+	public static SslHandler getSslHandler(Channel channel) {
+		ArgumentValidator.notNull(channel, "channel");
+		return channel.pipeline().get(SslHandler.class);
+	}
+
+	/**
+	 * <p>
+	 * 得到握手完成的Future，可以在其上等待后再发送数据或者读取会话信息。
+	 * </p>
+	 *
+	 * @param channel
+	 *            当前的连接对象
+	 * @return 握手完成的Future，不是TLS连接或者客户端还没有开始连接时为null
+	 * @throws IllegalArgumentException
+	 *             如果channel为null
+	 */
+	public static Future<Channel> handshakeFuture(Channel channel) {
+		SslHandler handler = getSslHandler(channel);
+		return handler == null ? null : handler.handshakeFuture();
+	}
+
+	/**
+	 * <p>
+	 * 得到连接的TLS会话。
+	 * </p>
+	 *
+	 * @param channel
+	 *            当前的连接对象
+	 * @return TLS会话，不是TLS连接或者握手还没有完成时为null
+	 * @throws IllegalArgumentException
+	 *             如果channel为null
+	 */
+	public static SSLSession getSession(Channel channel) {
+		SslHandler handler = getSslHandler(channel);
+		if (handler == null || !handler.handshakeFuture().isSuccess())
+			return null;
+		return handler.engine().getSession();
+	}
+
+	/**
+	 * <p>
+	 * 握手是否恢复了之前的会话(通过服务端的会话缓存或者session ticket)，而不是完整握手。
+	 * </p>
+	 *
+	 * @param channel
+	 *            当前的连接对象
+	 * @return 恢复了会话时为true，完整握手、不是TLS连接或者握手还没有完成时为false
+	 * @throws IllegalArgumentException
+	 *             如果channel为null
+	 */
+	public static boolean isResumed(Channel channel) {
+		ArgumentValidator.notNull(channel, "channel");
+		return Boolean.TRUE.equals(channel.attr(KEY_RESUMED).get());
+	}
+}
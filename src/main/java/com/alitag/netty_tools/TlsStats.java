@@ -0,0 +1,111 @@
+package com.alitag.netty_tools;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>
+ * 一组连接的TLS握手统计：完整握手和会话恢复的次数、失败次数，以及两种握手各自的耗时分布。
+ * </p>
+ * <p>
+ * 把它赋给{@link NettyConfig#tlsStats}后，AcceptorBuilder和ConnectorBuilder生成的每个TLS连接在握手结束时记入其中；多个NettyConfig可以共用一个TlsStats。
+ * 耗时从服务端接受连接、或客户端TCP连接建立开始，到握手完成为止，单位为微秒。
+ * </p>
+ * <p>
+ * 线程安全：该类线程安全。
+ * </p>
+ *
+ * @author gchangyi
+ * @version 1.0
+ */
+public class TlsStats {
+
+	final LongAdder fullHandshakes = new LongAdder();
+
+	final LongAdder resumedHandshakes = new LongAdder();
+
+	final LongAdder failedHandshakes = new LongAdder();
+
+	/** 完整握手的耗时(微秒)，最大区分到1分钟 */
+	final LatencyHistogram fullHandshakeTime = new LatencyHistogram(TimeUnit.MINUTES.toMicros(1));
+
+	/** 恢复会话的握手的耗时(微秒)，最大区分到1分钟 */
+	final LatencyHistogram resumedHandshakeTime = new LatencyHistogram(TimeUnit.MINUTES.toMicros(1));
+
+	/**
+	 * 记录一次成功的握手
+	 */
+	void record(boolean resumed, long micros) {
+		if (resumed) {
+			resumedHandshakes.increment();
+			resumedHandshakeTime.record(micros);
+		} else {
+			fullHandshakes.increment();
+			fullHandshakeTime.record(micros);
+		}
+	}
+
+	/**
+	 * @return 完整握手的次数
+	 */
+	public long getFullHandshakes() {
+		return fullHandshakes.sum();
+	}
+
+	/**
+	 * @return 恢复会话的握手次数
+	 */
+	public long getResumedHandshakes() {
+		return resumedHandshakes.sum();
+	}
+
+	/**
+	 * @return 失败的握手次数，包括超时和握手完成前连接被关闭
+	 */
+	public long getFailedHandshakes() {
+		return failedHandshakes.sum();
+	}
+
+	/**
+	 * @return 会话恢复的命中率，即恢复会话的握手次数/成功的握手次数，没有握手时为0
+	 */
+	public double getResumptionRate() {
+		long resumed = resumedHandshakes.sum();
+		long total = resumed + fullHandshakes.sum();
+		return total == 0 ? 0 : (double) resumed / total;
+	}
+
+	/**
+	 * @return 完整握手的耗时分布(微秒)
+	 */
+	public LatencyHistogram getFullHandshakeTime() {
+		return fullHandshakeTime;
+	}
+
+	/**
+	 * @return 恢复会话的握手的耗时分布(微秒)
+	 */
+	public LatencyHistogram getResumedHandshakeTime() {
+		return resumedHandshakeTime;
+	}
+
+	/**
+	 * <p>
+	 * 清空所有数据。
+	 * </p>
+	 */
+	public void reset() {
+		fullHandshakes.reset();
+		resumedHandshakes.reset();
+		failedHandshakes.reset();
+		fullHandshakeTime.reset();
+		resumedHandshakeTime.reset();
+	}
+
+	@Override
+	public String toString() {
+		return String.format("full=%d, resumed=%d, failed=%d, resumptionRate=%.3f, fullMicros={%s}, resumedMicros={%s}",
+				getFullHandshakes(), getResumedHandshakes(), getFailedHandshakes(), getResumptionRate(), fullHandshakeTime,
+				resumedHandshakeTime);
+	}
+}
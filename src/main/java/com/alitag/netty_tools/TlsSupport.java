@@ -0,0 +1,320 @@
+package com.alitag.netty_tools;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.ssl.ClientAuth;
+import io.netty.handler.ssl.IdentityCipherSuiteFilter;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.handler.ssl.SslProvider;
+import io.netty.util.concurrent.DefaultEventExecutorGroup;
+import io.netty.util.concurrent.EventExecutorGroup;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.GenericFutureListener;
+import io.netty.util.internal.logging.InternalLogger;
+import io.netty.util.internal.logging.InternalLoggerFactory;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSession;
+
+/**
+ * <p>
+ * AcceptorBuilder和ConnectorBuilder的TLS支持：按NettyConfig生成一个SslContext，每个连接由它生成SslHandler加入pipeline，并记录握手的统计。
+ * </p>
+ * <p>
+ * 使用JDK的SSLEngine。同一个builder的所有连接共用一个SslContext，因此共用服务端的会话缓存和客户端的会话缓存。
+ * 客户端的SslHandler在connect时才生成，用远端的host和port生成SSLEngine，JDK按host:port在客户端会话缓存中查找可以恢复的会话，重连同一个服务端时不再完整握手；
+ * 不恢复会话时，握手完成后使会话失效。同时按该host校验服务端证书。
+ * </p>
+ * <p>
+ * Netty 4.1.9的SslHandler在指定了delegatedTaskExecutor时，EventLoop线程会阻塞等待这些任务完成，并不能减轻EventLoop的负担。
+ * 因此设置了{@link NettyConfig#tlsOffloadThreads}时，整个SslHandler(握手和之后的加解密)在单独的线程组中执行，EventLoop只负责socket的读写；
+ * 每个连接固定使用该线程组中的一个线程，顺序不变。
+ * </p>
+ * <p>
+ * 线程安全：该类线程安全。
+ * </p>
+ *
+ * @author gchangyi
+ * @version 1.0
+ */
+class TlsSupport {
+
+	private static final InternalLogger logger = InternalLoggerFactory.getInstance(TlsSupport.class);
+
+	/** SslHandler在pipeline中的名字 */
+	static final String NAME = "ssl";
+
+	/** 客户端在connect时替换成SslHandler的handler的名字 */
+	static final String CONNECT_NAME = "ssl_connect";
+
+	private static final String SERVER_TICKETS_PROPERTY = "jdk.tls.server.enableSessionTicketExtension";
+
+	private static final String CLIENT_TICKETS_PROPERTY = "jdk.tls.client.enableSessionTicketExtension";
+
+	private static final String TLS_V13 = "TLSv1.3";
+
+	/** 没有指定tlsProtocols时使用的协议 */
+	private static final String[] DEFAULT_PROTOCOLS = { "TLSv1.2" };
+
+	private final SslContext context;
+
+	private final EventExecutorGroup offloadGroup;
+
+	private final long handshakeTimeoutMillis;
+
+	private final boolean sessionReuse;
+
+	private final boolean verifyHostname;
+
+	private final TlsStats stats;
+
+	private TlsSupport(NettyConfig config, SslContext context, EventExecutorGroup offloadGroup) {
+		this.context = context;
+		this.offloadGroup = offloadGroup;
+		this.handshakeTimeoutMillis = config.tlsHandshakeTimeoutMillis;
+		this.sessionReuse = config.tlsClientSessionReuse;
+		this.verifyHostname = config.tlsVerifyHostname;
+		this.stats = config.tlsStats;
+	}
+
+	/**
+	 * <p>
+	 * 按config生成TLS支持。
+	 * </p>
+	 *
+	 * @param config
+	 *            配置信息
+	 * @param server
+	 *            是否为服务端
+	 * @return TLS支持，没有启用TLS时为null
+	 * @throws IllegalArgumentException
+	 *             如果TLS的参数不合法，或者证书、私钥文件不能读取
+	 */
+	static TlsSupport of(NettyConfig config, boolean server) {
+		if (!config.tls)
+			return null;
+		validate(config, server);
+		SslContext context;
+		try {
+			context = newContext(config, server);
+		} catch (SSLException e) {
+			throw new IllegalArgumentException("invalid TLS configuration: " + e.getMessage(), e);
+		} catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("invalid TLS configuration: " + e.getMessage(), e);
+		}
+		EventExecutorGroup group = null;
+		if (config.tlsOffloadThreads > 0) {
+			group = new DefaultEventExecutorGroup(config.tlsOffloadThreads, TransportHelper.newThreadFactory(config, "tls"));
+		}
+		return new TlsSupport(config, context, group);
+	}
+
+	private static void validate(NettyConfig config, boolean server) {
+		if (server) {
+			ArgumentValidator.notNull(config.tlsCertChainFile, "tlsCertChainFile");
+			ArgumentValidator.notNull(config.tlsKeyFile, "tlsKeyFile");
+		} else {
+			ArgumentValidator.isTrue((config.tlsCertChainFile == null) == (config.tlsKeyFile == null),
+					"tlsCertChainFile and tlsKeyFile should be set together");
+		}
+		if (config.tlsProtocols != null) {
+			// Netty 4.1.9的SslHandler早于TLS 1.3：JDK的TLS 1.3握手中收到ServerHello之后，已经收到的后续记录不会再被解密，握手停住直到超时
+			ArgumentValidator.isTrue(!Arrays.asList(config.tlsProtocols).contains(TLS_V13),
+					"TLSv1.3 is not supported by the SslHandler of this netty version");
+		}
+		ArgumentValidator.isTrue(config.tlsSessionCacheSize >= 0, "tlsSessionCacheSize should be >=0: "
+				+ config.tlsSessionCacheSize);
+		ArgumentValidator.isTrue(config.tlsSessionTimeoutSeconds >= 0, "tlsSessionTimeoutSeconds should be >=0: "
+				+ config.tlsSessionTimeoutSeconds);
+		ArgumentValidator.isTrue(config.tlsHandshakeTimeoutMillis >= 0, "tlsHandshakeTimeoutMillis should be >=0: "
+				+ config.tlsHandshakeTimeoutMillis);
+		ArgumentValidator.isTrue(config.tlsOffloadThreads >= 0, "tlsOffloadThreads should be >=0: "
+				+ config.tlsOffloadThreads);
+	}
+
+	private static SslContext newContext(NettyConfig config, boolean server) throws SSLException {
+		checkSessionTickets(config.tlsSessionTickets);
+		SslContextBuilder builder;
+		if (server) {
+			builder = SslContextBuilder.forServer(config.tlsCertChainFile, config.tlsKeyFile, config.tlsKeyPassword);
+			if (config.tlsTrustCertFile != null)
+				builder.trustManager(config.tlsTrustCertFile).clientAuth(ClientAuth.REQUIRE);
+		} else {
+			builder = SslContextBuilder.forClient();
+			if (config.tlsCertChainFile != null)
+				builder.keyManager(config.tlsCertChainFile, config.tlsKeyFile, config.tlsKeyPassword);
+			if (config.tlsTrustCertFile != null)
+				builder.trustManager(config.tlsTrustCertFile);
+		}
+		// 使用JDK默认启用的密码套件，而不是Netty 4.1.9内置的较旧的列表
+		builder.sslProvider(SslProvider.JDK).ciphers(jdkDefaultCiphers(), IdentityCipherSuiteFilter.INSTANCE);
+		builder.protocols(config.tlsProtocols != null ? config.tlsProtocols : DEFAULT_PROTOCOLS);
+		if (config.tlsSessionCacheSize > 0)
+			builder.sessionCacheSize(config.tlsSessionCacheSize);
+		if (config.tlsSessionTimeoutSeconds > 0)
+			builder.sessionTimeout(config.tlsSessionTimeoutSeconds);
+		return builder.build();
+	}
+
+	private static List<String> jdkDefaultCiphers() throws SSLException {
+		try {
+			return Arrays.asList(SSLContext.getDefault().getDefaultSSLParameters().getCipherSuites());
+		} catch (NoSuchAlgorithmException e) {
+			throw new SSLException(e);
+		}
+	}
+
+	/**
+	 * JDK的session ticket开关是JVM级别的系统属性，影响JVM中所有使用TLS的代码，builder不修改它，只在与config不一致时记录警告
+	 */
+	private static void checkSessionTickets(boolean enabled) {
+		String server = System.getProperty(SERVER_TICKETS_PROPERTY);
+		String client = System.getProperty(CLIENT_TICKETS_PROPERTY);
+		if (isEnabled(server) != enabled || isEnabled(client) != enabled)
+			logger.warn("tlsSessionTickets={} is ignored: session tickets are controlled by the JVM-wide system properties "
+					+ "{}={} and {}={}, set them with -D{}={} -D{}={}", enabled, SERVER_TICKETS_PROPERTY, server,
+					CLIENT_TICKETS_PROPERTY, client, SERVER_TICKETS_PROPERTY, enabled, CLIENT_TICKETS_PROPERTY, enabled);
+	}
+
+	/**
+	 * 系统属性表示的session ticket开关，没有设置时为JDK的默认值true
+	 */
+	private static boolean isEnabled(String property) {
+		return property == null || Boolean.parseBoolean(property);
+	}
+
+	/**
+	 * <p>
+	 * 在pipeline中加入TLS的handler：服务端直接加入SslHandler，客户端加入在connect时替换成SslHandler的handler。
+	 * </p>
+	 *
+	 * @param channel
+	 *            正在初始化的连接
+	 */
+	void initChannel(Channel channel) {
+		if (context.isServer()) {
+			HandshakeRecorder recorder = new HandshakeRecorder(channel);
+			channel.pipeline().addLast(offloadGroup, NAME, newHandler(context.newEngine(channel.alloc()), recorder));
+			recorder.start();
+		} else {
+			channel.pipeline().addLast(CONNECT_NAME, new ConnectHandler());
+		}
+	}
+
+	private SslHandler newHandler(SSLEngine engine, HandshakeRecorder recorder) {
+		SslHandler handler = new SslHandler(engine);
+		handler.setHandshakeTimeoutMillis(handshakeTimeoutMillis);
+		handler.handshakeFuture().addListener(recorder);
+		return handler;
+	}
+
+	/**
+	 * 关闭卸载握手的线程组
+	 */
+	void shutdownGracefully() {
+		if (offloadGroup != null)
+			offloadGroup.shutdownGracefully();
+	}
+
+	/**
+	 * 立刻关闭卸载握手的线程组
+	 */
+	@SuppressWarnings("deprecation")
+	void shutdownNow() {
+		if (offloadGroup != null)
+			offloadGroup.shutdownNow();
+	}
+
+	/**
+	 * 客户端在connect时用远端地址生成SSLEngine，以便按host:port恢复会话，然后把自己替换成SslHandler
+	 */
+	private class ConnectHandler extends ChannelOutboundHandlerAdapter {
+
+		@Override
+		public void connect(ChannelHandlerContext ctx, SocketAddress remoteAddress, SocketAddress localAddress,
+				ChannelPromise promise) throws Exception {
+			SSLEngine engine;
+			if (remoteAddress instanceof InetSocketAddress) {
+				InetSocketAddress address = (InetSocketAddress) remoteAddress;
+				engine = context.newEngine(ctx.alloc(), address.getHostString(), address.getPort());
+				if (verifyHostname) {
+					SSLParameters parameters = engine.getSSLParameters();
+					parameters.setEndpointIdentificationAlgorithm("HTTPS");
+					engine.setSSLParameters(parameters);
+				}
+			} else {
+				engine = context.newEngine(ctx.alloc());
+			}
+			final HandshakeRecorder recorder = new HandshakeRecorder(ctx.channel());
+			ctx.pipeline().addAfter(offloadGroup, ctx.name(), NAME, newHandler(engine, recorder));
+			ctx.pipeline().remove(this);
+			promise.addListener(new ChannelFutureListener() {
+				@Override
+				public void operationComplete(ChannelFuture future) throws Exception {
+					if (future.isSuccess())
+						recorder.start();
+				}
+			});
+			ctx.connect(remoteAddress, localAddress, promise);
+		}
+	}
+
+	/**
+	 * 握手结束时记录是否恢复了会话和耗时
+	 */
+	private class HandshakeRecorder implements GenericFutureListener<Future<Channel>> {
+
+		private final Channel channel;
+
+		private volatile long startNanos;
+
+		private volatile long startMillis;
+
+		HandshakeRecorder(Channel channel) {
+			this.channel = channel;
+		}
+
+		/**
+		 * 握手开始：服务端为接受连接时，客户端为TCP连接建立时
+		 */
+		void start() {
+			startMillis = System.currentTimeMillis();
+			startNanos = System.nanoTime();
+		}
+
+		@Override
+		public void operationComplete(Future<Channel> future) throws Exception {
+			if (!future.isSuccess()) {
+				if (stats != null)
+					stats.failedHandshakes.increment();
+				return;
+			}
+			SslHandler handler = channel.pipeline().get(SslHandler.class);
+			if (handler == null)
+				return;
+			SSLSession session = handler.engine().getSession();
+			// 完整握手时会话在本次握手中生成；恢复的会话在之前的握手中生成
+			boolean resumed = session.getCreationTime() < startMillis;
+			channel.attr(TlsHelper.KEY_RESUMED).set(resumed);
+			if (!context.isServer() && !sessionReuse)
+				session.invalidate();
+			if (stats != null)
+				stats.record(resumed, (System.nanoTime() - startNanos) / 1000);
+		}
+	}
+}
@@ -0,0 +1,82 @@
+package com.alitag.netty_tools;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * 令牌桶，每秒补充rate个令牌，最多积攒rate个(即允许1秒的突发)。
+ * </p>
+ * <p>
+ * 以GCRA(虚拟调度)的方式实现：只保存一个"令牌用完的理论时间"，消耗令牌就是把它向后推，因此只需一次CAS，多个EventLoop共用一个桶时也不用加锁。
+ * 数据在读到之后才消耗令牌，所以允许透支：{@link #consume(long)}返回需要暂停多久才能还清透支；{@link #tryConsume(long)}不允许透支。
+ * </p>
+ * <p>
+ * 线程安全：该类线程安全。
+ * </p>
+ * 
+ * @author gchangyi
+ * @version 1.0
+ */
+class TokenBucket {
+
+	private final double nanosPerToken;
+
+	private final long burstNanos;
+
+	/** 理论上令牌用完的时间(System.nanoTime()) */
+	private final AtomicLong emptyAt;
+
+	/**
+	 * @param rate
+	 *            每秒的令牌数，必须大于0
+	 */
+	TokenBucket(long rate) {
+		this.nanosPerToken = (double) TimeUnit.SECONDS.toNanos(1) / rate;
+		this.burstNanos = TimeUnit.SECONDS.toNanos(1);
+		this.emptyAt = new AtomicLong(System.nanoTime() - burstNanos);
+	}
+
+	/**
+	 * <p>
+	 * 消耗tokens个令牌。
+	 * </p>
+	 * 
+	 * @param tokens
+	 *            令牌数
+	 * @return 需要暂停的纳秒数，为0时不需要暂停
+	 */
+	long consume(long tokens) {
+		long cost = (long) (tokens * nanosPerToken);
+		long now = System.nanoTime();
+		for (;;) {
+			long current = emptyAt.get();
+			// 空闲时积攒的令牌不超过burst
+			long next = Math.max(current, now - burstNanos) + cost;
+			if (emptyAt.compareAndSet(current, next))
+				return Math.max(0, next - now);
+		}
+	}
+
+	/**
+	 * <p>
+	 * 如果有足够的令牌，消耗tokens个令牌；否则不消耗。不允许透支。
+	 * </p>
+	 * 
+	 * @param tokens
+	 *            令牌数
+	 * @return 是否消耗了令牌
+	 */
+	boolean tryConsume(long tokens) {
+		long cost = (long) (tokens * nanosPerToken);
+		long now = System.nanoTime();
+		for (;;) {
+			long current = emptyAt.get();
+			long next = Math.max(current, now - burstNanos) + cost;
+			if (next > now)
+				return false;
+			if (emptyAt.compareAndSet(current, next))
+				return true;
+		}
+	}
+}
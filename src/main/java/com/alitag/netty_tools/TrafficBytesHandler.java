@@ -0,0 +1,81 @@
+package com.alitag.netty_tools;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufHolder;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.FileRegion;
+
+/**
+ * <p>
+ * 位于pipeline最前面，统计读写的字节数和连接的建立、关闭。见{@link TrafficMetrics}。
+ * </p>
+ * <p>
+ * 线程安全：该类不是线程安全的，每个channel需要一个新的实例。
+ * </p>
+ * 
+ * @author gchangyi
+ * @version 1.0
+ */
+class TrafficBytesHandler extends ChannelDuplexHandler {
+
+	static final String NAME = "traffic_bytes";
+
+	private final ChannelTrafficCounters counters;
+
+	private final TrafficMetrics metrics;
+
+	TrafficBytesHandler(ChannelTrafficCounters counters) {
+		this.counters = counters;
+		this.metrics = counters.metrics;
+	}
+
+	@Override
+	public void channelActive(ChannelHandlerContext ctx) throws Exception {
+		if (!counters.opened) {
+			counters.opened = true;
+			metrics.connectionsOpened.increment();
+		}
+		ctx.fireChannelActive();
+	}
+
+	@Override
+	public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+		if (counters.opened && !counters.closed) {
+			counters.closed = true;
+			metrics.connectionsClosed.increment();
+		}
+		ctx.fireChannelInactive();
+	}
+
+	@Override
+	public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+		long size = sizeOf(msg);
+		if (size > 0) {
+			counters.bytesRead += size;
+			metrics.bytesRead.add(size);
+		}
+		ctx.fireChannelRead(msg);
+	}
+
+	@Override
+	public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+		long size = sizeOf(msg);
+		if (size > 0) {
+			counters.bytesWritten += size;
+			metrics.bytesWritten.add(size);
+		}
+		ctx.write(msg, promise);
+	}
+
+	private static long sizeOf(Object msg) {
+		if (msg instanceof ByteBuf)
+			return ((ByteBuf) msg).readableBytes();
+		if (msg instanceof ByteBufHolder)
+			return ((ByteBufHolder) msg).content().readableBytes();
+		if (msg instanceof FileRegion)
+			return ((FileRegion) msg).count();
+		return 0;
+	}
+}
@@ -0,0 +1,96 @@
+package com.alitag.netty_tools;
+
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+
+/**
+ * <p>
+ * 位于编解码器之后，统计读写的消息数、异常数和后面的handler处理每条消息所用的时间。见{@link TrafficMetrics}。
+ * </p>
+ * <p>
+ * 用户的handler在该handler之后，它们抛出的异常向pipeline末尾传递，不经过该handler。因此连接注册时(用户的handler都已加入)在pipeline末尾再加入一个计数的handler，
+ * 两处都统计，同一个异常只计一次。被用户的handler处理掉、不再向后传递的异常，以及注册之后才加入的handler抛出的异常，不会被统计。
+ * </p>
+ * <p>
+ * 线程安全：该类不是线程安全的，每个channel需要一个新的实例。
+ * </p>
+ * 
+ * @author gchangyi
+ * @version 1.0
+ */
+class TrafficMessageHandler extends ChannelDuplexHandler {
+
+	static final String NAME = "traffic_messages";
+
+	static final String TAIL_NAME = "traffic_exceptions";
+
+	private final ChannelTrafficCounters counters;
+
+	private final TrafficMetrics metrics;
+
+	/** 最近一次在该handler中统计的异常，传到末尾时不再重复统计 */
+	private Throwable lastCounted;
+
+	TrafficMessageHandler(ChannelTrafficCounters counters) {
+		this.counters = counters;
+		this.metrics = counters.metrics;
+	}
+
+	@Override
+	public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+		long start = System.nanoTime();
+		try {
+			ctx.fireChannelRead(msg);
+		} finally {
+			long elapsed = System.nanoTime() - start;
+			counters.messagesRead++;
+			counters.processingNanos += elapsed;
+			if (elapsed > counters.processingMaxNanos)
+				counters.processingMaxNanos = elapsed;
+			metrics.messagesRead.increment();
+			metrics.processingTime.record(elapsed);
+		}
+	}
+
+	@Override
+	public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+		counters.messagesWritten++;
+		metrics.messagesWritten.increment();
+		ctx.write(msg, promise);
+	}
+
+	@Override
+	public void channelRegistered(ChannelHandlerContext ctx) throws Exception {
+		if (ctx.pipeline().get(TAIL_NAME) == null)
+			ctx.pipeline().addLast(TAIL_NAME, new TailCounter());
+		ctx.fireChannelRegistered();
+	}
+
+	@Override
+	public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+		count(cause);
+		ctx.fireExceptionCaught(cause);
+	}
+
+	private void count(Throwable cause) {
+		lastCounted = cause;
+		counters.exceptions++;
+		metrics.exceptions.increment();
+	}
+
+	/**
+	 * 在pipeline末尾统计用户的handler抛出的异常
+	 */
+	private class TailCounter extends ChannelInboundHandlerAdapter {
+
+		@Override
+		public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+			if (cause != lastCounted)
+				count(cause);
+			lastCounted = null;
+			ctx.fireExceptionCaught(cause);
+		}
+	}
+}
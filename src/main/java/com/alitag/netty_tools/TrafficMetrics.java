@@ -0,0 +1,234 @@
+package com.alitag.netty_tools;
+
+import io.netty.channel.Channel;
+import io.netty.util.AttributeKey;
+
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * <p>
+ * 一组连接的流量统计：读写的字节数和消息数、建立和关闭的连接数、异常数，以及消息处理时间的分布。
+ * </p>
+ * <p>
+ * 把它赋给{@link NettyConfig#trafficMetrics}后，ChannelInitializeBuilder会在每个连接的pipeline中加入统计用的handler：pipeline最前面的handler统计字节数和连接数，
+ * 编解码器之后的handler统计消息数和后面的handler处理每条消息的时间。没有设置时不加入任何handler，没有任何额外开销。
+ * </p>
+ * <p>
+ * 合计的计数器使用LongAdder，各个EventLoop线程更新时互不竞争；每个连接自己的计数器只在该连接的EventLoop中更新，可以通过{@link #snapshot(Channel)}读取。
+ * 数据可以通过{@link #snapshot()}主动读取，也可以通过{@link #registerMBean()}注册到JMX。
+ * </p>
+ * <p>
+ * 线程安全：该类线程安全。
+ * </p>
+ * 
+ * @author gchangyi
+ * @version 1.0
+ */
+public class TrafficMetrics implements TrafficMetricsMXBean {
+
+	/** 每个连接的计数器 */
+	static final AttributeKey<ChannelTrafficCounters> KEY_COUNTERS = AttributeKey.valueOf(TrafficMetrics.class.getName()
+			+ ".counters");
+
+	private final String name;
+
+	final LongAdder bytesRead = new LongAdder();
+
+	final LongAdder bytesWritten = new LongAdder();
+
+	final LongAdder messagesRead = new LongAdder();
+
+	final LongAdder messagesWritten = new LongAdder();
+
+	final LongAdder connectionsOpened = new LongAdder();
+
+	final LongAdder connectionsClosed = new LongAdder();
+
+	final LongAdder exceptions = new LongAdder();
+
+	/** 消息处理时间(纳秒)，最大区分到10秒 */
+	final LatencyHistogram processingTime = new LatencyHistogram(TimeUnit.SECONDS.toNanos(10));
+
+	private ObjectName objectName;
+
+	/**
+	 * <p>
+	 * 构造函数。
+	 * </p>
+	 * 
+	 * @param name
+	 *            名字，用于区分不同的统计，例如"server"，也用作JMX ObjectName中的name
+	 * @throws IllegalArgumentException
+	 *             如果name为null或者为空
+	 */
+	public TrafficMetrics(String name) {
+		ArgumentValidator.notNullOrTrimmedEmpty(name, "name");
+		this.name = name;
+	}
+
+	/**
+	 * @return 统计的名字
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * <p>
+	 * 得到所有连接合计的统计。
+	 * </p>
+	 * 
+	 * @return 当前的统计
+	 */
+	public TrafficSnapshot snapshot() {
+		return new TrafficSnapshot(bytesRead.sum(), bytesWritten.sum(), messagesRead.sum(), messagesWritten.sum(),
+				connectionsOpened.sum(), connectionsClosed.sum(), exceptions.sum(), processingTime.getMean(),
+				processingTime.getValueAtPercentile(50), processingTime.getValueAtPercentile(99),
+				processingTime.getValueAtPercentile(99.9), processingTime.getMax());
+	}
+
+	/**
+	 * <p>
+	 * 得到一个连接自己的统计。连接关闭后仍然可以读取。
+	 * </p>
+	 * 
+	 * @param channel
+	 *            当前的连接对象
+	 * @return 该连接的统计，如果该连接没有统计用的handler，返回null
+	 * @throws IllegalArgumentException
+	 *             如果channel为null
+	 */
+	public static TrafficSnapshot snapshot(Channel channel) {
+		ArgumentValidator.notNull(channel, "channel");
+		ChannelTrafficCounters counters = channel.attr(KEY_COUNTERS).get();
+		return counters == null ? null : counters.snapshot();
+	}
+
+	/**
+	 * <p>
+	 * 以com.alitag.netty_tools:type=TrafficMetrics,name=名字 注册到平台MBeanServer。
+	 * </p>
+	 * 
+	 * @throws IllegalStateException
+	 *             如果注册失败，例如同名的统计已经注册
+	 */
+	public synchronized void registerMBean() {
+		if (objectName != null)
+			return;
+		try {
+			ObjectName on = new ObjectName("com.alitag.netty_tools:type=TrafficMetrics,name=" + ObjectName.quote(name));
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, on);
+			objectName = on;
+		} catch (JMException e) {
+			throw new IllegalStateException("failed to register TrafficMetrics " + name, e);
+		}
+	}
+
+	/**
+	 * <p>
+	 * 从平台MBeanServer注销。没有注册时什么也不做。
+	 * </p>
+	 */
+	public synchronized void unregisterMBean() {
+		if (objectName == null)
+			return;
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		try {
+			if (server.isRegistered(objectName))
+				server.unregisterMBean(objectName);
+		} catch (JMException e) {
+			// 已经被其他人注销
+		}
+		objectName = null;
+	}
+
+	@Override
+	public long getBytesRead() {
+		return bytesRead.sum();
+	}
+
+	@Override
+	public long getBytesWritten() {
+		return bytesWritten.sum();
+	}
+
+	@Override
+	public long getMessagesRead() {
+		return messagesRead.sum();
+	}
+
+	@Override
+	public long getMessagesWritten() {
+		return messagesWritten.sum();
+	}
+
+	@Override
+	public long getConnectionsOpened() {
+		return connectionsOpened.sum();
+	}
+
+	@Override
+	public long getConnectionsClosed() {
+		return connectionsClosed.sum();
+	}
+
+	@Override
+	public long getActiveConnections() {
+		return connectionsOpened.sum() - connectionsClosed.sum();
+	}
+
+	@Override
+	public long getExceptions() {
+		return exceptions.sum();
+	}
+
+	@Override
+	public double getProcessingMeanNanos() {
+		return processingTime.getMean();
+	}
+
+	@Override
+	public long getProcessingP50Nanos() {
+		return processingTime.getValueAtPercentile(50);
+	}
+
+	@Override
+	public long getProcessingP99Nanos() {
+		return processingTime.getValueAtPercentile(99);
+	}
+
+	@Override
+	public long getProcessingP999Nanos() {
+		return processingTime.getValueAtPercentile(99.9);
+	}
+
+	@Override
+	public long getProcessingMaxNanos() {
+		return processingTime.getMax();
+	}
+
+	@Override
+	public void reset() {
+		long active = getActiveConnections();
+		bytesRead.reset();
+		bytesWritten.reset();
+		messagesRead.reset();
+		messagesWritten.reset();
+		connectionsOpened.reset();
+		connectionsClosed.reset();
+		connectionsOpened.add(active);
+		exceptions.reset();
+		processingTime.reset();
+	}
+
+	@Override
+	public String toString() {
+		return name + ": " + snapshot();
+	}
+}
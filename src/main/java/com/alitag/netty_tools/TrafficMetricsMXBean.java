@@ -0,0 +1,43 @@
+package com.alitag.netty_tools;
+
+/**
+ * <p>
+ * {@link TrafficMetrics}的JMX接口，见{@link TrafficMetrics#registerMBean()}。所有数值都是注册以来(或上次reset以来)所有连接的合计。
+ * </p>
+ * 
+ * @author gchangyi
+ * @version 1.0
+ */
+public interface TrafficMetricsMXBean {
+
+	long getBytesRead();
+
+	long getBytesWritten();
+
+	long getMessagesRead();
+
+	long getMessagesWritten();
+
+	long getConnectionsOpened();
+
+	long getConnectionsClosed();
+
+	long getActiveConnections();
+
+	long getExceptions();
+
+	double getProcessingMeanNanos();
+
+	long getProcessingP50Nanos();
+
+	long getProcessingP99Nanos();
+
+	long getProcessingP999Nanos();
+
+	long getProcessingMaxNanos();
+
+	/**
+	 * 清零所有统计，当前连接数除外
+	 */
+	void reset();
+}
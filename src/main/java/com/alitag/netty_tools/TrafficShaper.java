@@ -0,0 +1,142 @@
+package com.alitag.netty_tools;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+
+/**
+ * <p>
+ * AcceptorBuilder接受的连接的读流量限制，分为全局、每个对方ip和每个连接三级，每级都可以限制每秒的字节数和消息数，见NettyConfig中的read*PerSecond*。
+ * </p>
+ * <p>
+ * 超过限制时不丢弃数据，而是关闭channel的autoRead，等令牌桶还清透支后再打开，由TCP的流量控制让对方放慢发送速度。
+ * </p>
+ * <p>
+ * 全局的令牌桶只有一个CAS字；每个ip的令牌桶放在ConcurrentHashMap中(按桶分段加锁，读不加锁)，只在连接建立和关闭时查找和增减引用计数，
+ * 最后一个连接关闭时删除，所以有大量连接和ip时也不会变慢或者无限增长。
+ * </p>
+ * <p>
+ * 线程安全：该类线程安全。
+ * </p>
+ * 
+ * @author gchangyi
+ * @version 1.0
+ */
+class TrafficShaper {
+
+	private final long bytesPerChannel;
+
+	private final long messagesPerChannel;
+
+	private final long bytesPerIp;
+
+	private final long messagesPerIp;
+
+	private final TokenBucket globalBytes;
+
+	private final TokenBucket globalMessages;
+
+	private final ConcurrentHashMap<String, IpBuckets> ips = new ConcurrentHashMap<String, IpBuckets>();
+
+	private final BiFunction<String, IpBuckets, IpBuckets> retain = new BiFunction<String, IpBuckets, IpBuckets>() {
+		@Override
+		public IpBuckets apply(String ip, IpBuckets buckets) {
+			if (buckets == null)
+				buckets = new IpBuckets(bytesPerIp, messagesPerIp);
+			buckets.references++;
+			return buckets;
+		}
+	};
+
+	private final BiFunction<String, IpBuckets, IpBuckets> release = new BiFunction<String, IpBuckets, IpBuckets>() {
+		@Override
+		public IpBuckets apply(String ip, IpBuckets buckets) {
+			return --buckets.references == 0 ? null : buckets;
+		}
+	};
+
+	private TrafficShaper(NettyConfig config) {
+		this.bytesPerChannel = config.readBytesPerSecondPerChannel;
+		this.messagesPerChannel = config.readMessagesPerSecondPerChannel;
+		this.bytesPerIp = config.readBytesPerSecondPerIp;
+		this.messagesPerIp = config.readMessagesPerSecondPerIp;
+		this.globalBytes = config.readBytesPerSecond > 0 ? new TokenBucket(config.readBytesPerSecond) : null;
+		this.globalMessages = config.readMessagesPerSecond > 0 ? new TokenBucket(config.readMessagesPerSecond) : null;
+	}
+
+	/**
+	 * 根据config生成TrafficShaper，没有设置任何限制时返回null
+	 * 
+	 * @throws IllegalArgumentException
+	 *             如果有小于0的限制
+	 */
+	static TrafficShaper of(NettyConfig config) {
+		long[] limits = { config.readBytesPerSecond, config.readBytesPerSecondPerIp, config.readBytesPerSecondPerChannel,
+				config.readMessagesPerSecond, config.readMessagesPerSecondPerIp, config.readMessagesPerSecondPerChannel };
+		boolean limited = false;
+		for (long limit : limits) {
+			ArgumentValidator.isTrue(limit >= 0, "read rate limits should be >=0: " + limit);
+			limited |= limit > 0;
+		}
+		return limited ? new TrafficShaper(config) : null;
+	}
+
+	boolean limitsMessages() {
+		return globalMessages != null || messagesPerIp > 0 || messagesPerChannel > 0;
+	}
+
+	TokenBucket getGlobalBytes() {
+		return globalBytes;
+	}
+
+	TokenBucket getGlobalMessages() {
+		return globalMessages;
+	}
+
+	TokenBucket newChannelBytes() {
+		return bytesPerChannel > 0 ? new TokenBucket(bytesPerChannel) : null;
+	}
+
+	TokenBucket newChannelMessages() {
+		return messagesPerChannel > 0 ? new TokenBucket(messagesPerChannel) : null;
+	}
+
+	/**
+	 * 得到ip的令牌桶并增加引用计数。不限制每个ip的流量时返回null
+	 */
+	IpBuckets retain(String ip) {
+		if (bytesPerIp <= 0 && messagesPerIp <= 0)
+			return null;
+		return ips.compute(ip, retain);
+	}
+
+	/**
+	 * 减少ip的令牌桶的引用计数，为0时删除
+	 */
+	void release(String ip) {
+		ips.computeIfPresent(ip, release);
+	}
+
+	/**
+	 * @return 当前有令牌桶的ip数
+	 */
+	int getIpCount() {
+		return ips.size();
+	}
+
+	/**
+	 * 一个ip的令牌桶，references只在ConcurrentHashMap.compute中修改
+	 */
+	static final class IpBuckets {
+
+		final TokenBucket bytes;
+
+		final TokenBucket messages;
+
+		int references;
+
+		IpBuckets(long bytesPerSecond, long messagesPerSecond) {
+			this.bytes = bytesPerSecond > 0 ? new TokenBucket(bytesPerSecond) : null;
+			this.messages = messagesPerSecond > 0 ? new TokenBucket(messagesPerSecond) : null;
+		}
+	}
+}
@@ -0,0 +1,202 @@
+package com.alitag.netty_tools;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.util.AttributeKey;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * 按{@link TrafficShaper}限制一个连接的读流量。位于pipeline最前面，按读到的字节数消耗令牌；限制消息数时，ChannelInitializeBuilder在解码器之后加入
+ * {@link MessageCounter}，按解码后的消息数消耗令牌。任何一级的令牌透支时关闭autoRead，到期后再打开。
+ * </p>
+ * <p>
+ * 消息先交给后面的handler，再按需要暂停；如果此时autoRead已经被用户关闭(例如后面的handler处理该消息时做了流控)，则不做任何处理。暂停期间的channel.read()推迟到到期时执行。
+ * 到期时只打开由该handler关闭的autoRead；暂停期间其他handler打开过autoRead(之后可能又关闭了它)时，保持其设置。
+ * </p>
+ * <p>
+ * 线程安全：该类不是线程安全的，每个channel需要一个新的实例，只在该channel的EventLoop中使用。
+ * </p>
+ * 
+ * @author gchangyi
+ * @version 1.0
+ */
+class TrafficShapingHandler extends ChannelDuplexHandler {
+
+	static final String NAME = "traffic_shaping";
+
+	static final String MESSAGE_COUNTER_NAME = "traffic_shaping_messages";
+
+	/** 当前channel的TrafficShapingHandler，供ChannelInitializeBuilder加入MessageCounter */
+	static final AttributeKey<TrafficShapingHandler> KEY_HANDLER = AttributeKey.valueOf(TrafficShapingHandler.class.getName()
+			+ ".handler");
+
+	private final TrafficShaper shaper;
+
+	private final TokenBucket channelBytes;
+
+	private final TokenBucket channelMessages;
+
+	private String ip;
+
+	private TrafficShaper.IpBuckets ipBuckets;
+
+	private ChannelHandlerContext ctx;
+
+	/** 暂停到何时(System.nanoTime())，为0时没有暂停 */
+	private long pausedUntil;
+
+	/** autoRead是否由该handler关闭，并且之后没有被其他handler打开过 */
+	private boolean autoReadSuspended;
+
+	/** 暂停期间是否有被推迟的读请求 */
+	private boolean readDeferred;
+
+	private final Runnable resume = new Runnable() {
+		@Override
+		public void run() {
+			resume();
+		}
+	};
+
+	TrafficShapingHandler(TrafficShaper shaper) {
+		this.shaper = shaper;
+		this.channelBytes = shaper.newChannelBytes();
+		this.channelMessages = shaper.newChannelMessages();
+	}
+
+	boolean limitsMessages() {
+		return shaper.limitsMessages();
+	}
+
+	@Override
+	public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+		this.ctx = ctx;
+		if (ctx.channel().isActive())
+			retainIp();
+	}
+
+	@Override
+	public void channelActive(ChannelHandlerContext ctx) throws Exception {
+		retainIp();
+		ctx.fireChannelActive();
+	}
+
+	@Override
+	public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+		if (ipBuckets != null) {
+			ipBuckets = null;
+			shaper.release(ip);
+		}
+		ctx.fireChannelInactive();
+	}
+
+	private void retainIp() {
+		if (ip == null) {
+			ip = ChannelHelper.getRemoteIp(ctx.channel());
+			ipBuckets = shaper.retain(ip);
+		}
+	}
+
+	@Override
+	public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+		long delay = 0;
+		if (msg instanceof ByteBuf) {
+			long bytes = ((ByteBuf) msg).readableBytes();
+			delay = consume(channelBytes, bytes, 0);
+			delay = consume(ipBuckets == null ? null : ipBuckets.bytes, bytes, delay);
+			delay = consume(shaper.getGlobalBytes(), bytes, delay);
+		}
+		// 先交给后面的handler，再暂停：它们处理这条消息时关闭的autoRead不会与暂停混淆
+		ctx.fireChannelRead(msg);
+		pause(delay);
+	}
+
+	void messageReceived() {
+		long delay = consume(channelMessages, 1, 0);
+		delay = consume(ipBuckets == null ? null : ipBuckets.messages, 1, delay);
+		delay = consume(shaper.getGlobalMessages(), 1, delay);
+		pause(delay);
+	}
+
+	@Override
+	public void read(ChannelHandlerContext ctx) throws Exception {
+		if (pausedUntil == 0) {
+			ctx.read();
+			return;
+		}
+		// 暂停期间推迟(例如其他handler调用channel.read()触发的)读请求
+		readDeferred = true;
+		if (autoReadSuspended && ctx.channel().config().isAutoRead()) {
+			// setAutoRead(true)会调用read()：autoRead被其他handler打开了，到期时不再修改它
+			autoReadSuspended = false;
+		}
+	}
+
+	private static long consume(TokenBucket bucket, long tokens, long delay) {
+		return bucket == null ? delay : Math.max(delay, bucket.consume(tokens));
+	}
+
+	private void pause(long delayNanos) {
+		if (delayNanos <= 0)
+			return;
+		long until = System.nanoTime() + delayNanos;
+		if (pausedUntil != 0) {
+			// 已经在暂停，只延长时间，到期时再重新调度
+			pausedUntil = Math.max(pausedUntil, until);
+			if (!autoReadSuspended && ctx.channel().config().isAutoRead()) {
+				autoReadSuspended = true;
+				ctx.channel().config().setAutoRead(false);
+			}
+			return;
+		}
+		if (!ctx.channel().config().isAutoRead())
+			return;
+		pausedUntil = until;
+		autoReadSuspended = true;
+		ctx.channel().config().setAutoRead(false);
+		ctx.executor().schedule(resume, delayNanos, TimeUnit.NANOSECONDS);
+	}
+
+	private void resume() {
+		long remaining = pausedUntil - System.nanoTime();
+		if (remaining > 0) {
+			ctx.executor().schedule(resume, remaining, TimeUnit.NANOSECONDS);
+			return;
+		}
+		pausedUntil = 0;
+		boolean restore = autoReadSuspended;
+		boolean read = readDeferred;
+		autoReadSuspended = false;
+		readDeferred = false;
+		if (!ctx.channel().isActive())
+			return;
+		if (restore && !ctx.channel().config().isAutoRead()) {
+			// 会调用read()
+			ctx.channel().config().setAutoRead(true);
+		} else if (read) {
+			ctx.read();
+		}
+	}
+
+	/**
+	 * 位于解码器之后，对每条消息调用{@link TrafficShapingHandler#messageReceived()}
+	 */
+	static final class MessageCounter extends ChannelInboundHandlerAdapter {
+
+		private final TrafficShapingHandler handler;
+
+		MessageCounter(TrafficShapingHandler handler) {
+			this.handler = handler;
+		}
+
+		@Override
+		public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+			ctx.fireChannelRead(msg);
+			handler.messageReceived();
+		}
+	}
+}
@@ -0,0 +1,123 @@
+package com.alitag.netty_tools;
+
+/**
+ * <p>
+ * 流量统计在某一时刻的数值，由{@link TrafficMetrics#snapshot()}(所有连接合计)或{@link TrafficMetrics#snapshot(io.netty.channel.Channel)}(单个连接)生成。
+ * </p>
+ * <p>
+ * 处理时间指一条解码后的消息从进入用户handler到处理完毕(fireChannelRead返回)所用的时间，单位为纳秒。单个连接不统计分位数，分位数为-1。
+ * </p>
+ * <p>
+ * 线程安全：该类线程安全，因为它是不可变类。
+ * </p>
+ * 
+ * @author gchangyi
+ * @version 1.0
+ */
+public class TrafficSnapshot {
+
+	private final long bytesRead;
+	private final long bytesWritten;
+	private final long messagesRead;
+	private final long messagesWritten;
+	private final long connectionsOpened;
+	private final long connectionsClosed;
+	private final long exceptions;
+	private final double processingMeanNanos;
+	private final long processingP50Nanos;
+	private final long processingP99Nanos;
+	private final long processingP999Nanos;
+	private final long processingMaxNanos;
+
+	TrafficSnapshot(long bytesRead, long bytesWritten, long messagesRead, long messagesWritten, long connectionsOpened,
+			long connectionsClosed, long exceptions, double processingMeanNanos, long processingP50Nanos,
+			long processingP99Nanos, long processingP999Nanos, long processingMaxNanos) {
+		this.bytesRead = bytesRead;
+		this.bytesWritten = bytesWritten;
+		this.messagesRead = messagesRead;
+		this.messagesWritten = messagesWritten;
+		this.connectionsOpened = connectionsOpened;
+		this.connectionsClosed = connectionsClosed;
+		this.exceptions = exceptions;
+		this.processingMeanNanos = processingMeanNanos;
+		this.processingP50Nanos = processingP50Nanos;
+		this.processingP99Nanos = processingP99Nanos;
+		this.processingP999Nanos = processingP999Nanos;
+		this.processingMaxNanos = processingMaxNanos;
+	}
+
+	/** @return 读到的字节数 */
+	public long getBytesRead() {
+		return bytesRead;
+	}
+
+	/** @return 写出的字节数(交给socket之前统计) */
+	public long getBytesWritten() {
+		return bytesWritten;
+	}
+
+	/** @return 解码后读到的消息数 */
+	public long getMessagesRead() {
+		return messagesRead;
+	}
+
+	/** @return 用户handler写出的消息数 */
+	public long getMessagesWritten() {
+		return messagesWritten;
+	}
+
+	/** @return 建立的连接数 */
+	public long getConnectionsOpened() {
+		return connectionsOpened;
+	}
+
+	/** @return 关闭的连接数 */
+	public long getConnectionsClosed() {
+		return connectionsClosed;
+	}
+
+	/** @return 当前的连接数 */
+	public long getActiveConnections() {
+		return connectionsOpened - connectionsClosed;
+	}
+
+	/** @return 经过编解码器之后的统计handler、或者传到pipeline末尾的异常数 */
+	public long getExceptions() {
+		return exceptions;
+	}
+
+	/** @return 消息平均处理时间(纳秒) */
+	public double getProcessingMeanNanos() {
+		return processingMeanNanos;
+	}
+
+	/** @return 消息处理时间的p50(纳秒)，单个连接为-1 */
+	public long getProcessingP50Nanos() {
+		return processingP50Nanos;
+	}
+
+	/** @return 消息处理时间的p99(纳秒)，单个连接为-1 */
+	public long getProcessingP99Nanos() {
+		return processingP99Nanos;
+	}
+
+	/** @return 消息处理时间的p999(纳秒)，单个连接为-1 */
+	public long getProcessingP999Nanos() {
+		return processingP999Nanos;
+	}
+
+	/** @return 消息处理时间的最大值(纳秒) */
+	public long getProcessingMaxNanos() {
+		return processingMaxNanos;
+	}
+
+	@Override
+	public String toString() {
+		return "bytesRead=" + bytesRead + ", bytesWritten=" + bytesWritten + ", messagesRead=" + messagesRead
+				+ ", messagesWritten=" + messagesWritten + ", connectionsOpened=" + connectionsOpened
+				+ ", connectionsClosed=" + connectionsClosed + ", exceptions=" + exceptions + ", processingMeanNanos="
+				+ (long) processingMeanNanos + ", processingP50Nanos=" + processingP50Nanos + ", processingP99Nanos="
+				+ processingP99Nanos + ", processingP999Nanos=" + processingP999Nanos + ", processingMaxNanos="
+				+ processingMaxNanos;
+	}
+}
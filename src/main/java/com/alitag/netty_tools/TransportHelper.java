@@ -0,0 +1,169 @@
+package com.alitag.netty_tools;
+
+import io.netty.channel.EventLoop;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * <p>
+ * 根据TransportMode生成对应的EventLoopGroup和Channel类型。
+ * </p>
+ * <p>
+ * 线程安全：该类线程安全，因为它只提供了无状态的工具函数。
+ * </p>
+ * 
+ * @author gchangyi
+ * @version 1.0
+ */
+public class TransportHelper {
+
+	/**
+	 * 私有构造函数。防止被实例化。
+	 */
+	private TransportHelper() {
+		// do nothing
+	}
+
+	/**
+	 * <p>
+	 * 生成一个EventLoopGroup，线程数使用netty的默认值。
+	 * </p>
+	 * 
+	 * @param mode
+	 *            已经resolve过的传输方式
+	 * @return 对应的EventLoopGroup
+	 * @throws IllegalArgumentException
+	 *             如果mode为null
+	 */
+	public static EventLoopGroup newEventLoopGroup(TransportMode mode) {
+		ArgumentValidator.notNull(mode, "mode");
+		return mode.resolve() == TransportMode.EPOLL ? new EpollEventLoopGroup() : new NioEventLoopGroup();
+	}
+
+	/**
+	 * <p>
+	 * 生成一个指定线程数的EventLoopGroup。
+	 * </p>
+	 * 
+	 * @param mode
+	 *            传输方式
+	 * @param nThreads
+	 *            线程数，为0时使用netty的默认值
+	 * @return 对应的EventLoopGroup
+	 * @throws IllegalArgumentException
+	 *             如果mode为null，或者nThreads<0
+	 */
+	public static EventLoopGroup newEventLoopGroup(TransportMode mode, int nThreads) {
+		ArgumentValidator.notNull(mode, "mode");
+		ArgumentValidator.isTrue(nThreads >= 0, "nThreads should be >=0: " + nThreads);
+		return mode.resolve() == TransportMode.EPOLL ? new EpollEventLoopGroup(nThreads) : new NioEventLoopGroup(nThreads);
+	}
+
+	/**
+	 * <p>
+	 * 生成一个指定线程数和ThreadFactory的EventLoopGroup。
+	 * </p>
+	 * 
+	 * @param mode
+	 *            传输方式
+	 * @param nThreads
+	 *            线程数，为0时使用netty的默认值
+	 * @param threadFactory
+	 *            用于生成线程，为null时使用netty的默认值
+	 * @return 对应的EventLoopGroup
+	 * @throws IllegalArgumentException
+	 *             如果mode为null，或者nThreads<0
+	 */
+	public static EventLoopGroup newEventLoopGroup(TransportMode mode, int nThreads, ThreadFactory threadFactory) {
+		if (threadFactory == null)
+			return newEventLoopGroup(mode, nThreads);
+		ArgumentValidator.notNull(mode, "mode");
+		ArgumentValidator.isTrue(nThreads >= 0, "nThreads should be >=0: " + nThreads);
+		return mode.resolve() == TransportMode.EPOLL ? new EpollEventLoopGroup(nThreads, threadFactory) : new NioEventLoopGroup(
+				nThreads, threadFactory);
+	}
+
+	/**
+	 * <p>
+	 * 根据NettyConfig生成EventLoopGroup使用的ThreadFactory。如果指定了{@link NettyConfig#threadFactory}则直接使用它，
+	 * 否则生成名字为"threadNamePrefix-role-序号-序号"的线程。
+	 * </p>
+	 * 
+	 * @param config
+	 *            当前的配置
+	 * @param role
+	 *            线程的用途，如boss，worker，connector
+	 * @return 用于生成线程的ThreadFactory
+	 * @throws IllegalArgumentException
+	 *             如果config为null
+	 */
+	public static ThreadFactory newThreadFactory(NettyConfig config, String role) {
+		ArgumentValidator.notNull(config, "config");
+		if (config.threadFactory != null)
+			return config.threadFactory;
+		String prefix = config.threadNamePrefix == null ? "netty-tools" : config.threadNamePrefix;
+		return new DefaultThreadFactory(prefix + "-" + role, config.daemonThreads, config.threadPriority);
+	}
+
+	/**
+	 * <p>
+	 * 得到一个已经存在的EventLoopGroup(或EventLoop)使用的传输方式。
+	 * </p>
+	 * 
+	 * @param group
+	 *            已经存在的EventLoopGroup或EventLoop
+	 * @return 如果是epoll的EventLoopGroup或其中的EventLoop，返回EPOLL，否则返回NIO
+	 * @throws IllegalArgumentException
+	 *             如果group为null
+	 */
+	public static TransportMode transportOf(EventLoopGroup group) {
+		ArgumentValidator.notNull(group, "group");
+		if (group instanceof EpollEventLoopGroup)
+			return TransportMode.EPOLL;
+		if (group instanceof EventLoop && ((EventLoop) group).parent() instanceof EpollEventLoopGroup)
+			return TransportMode.EPOLL;
+		return TransportMode.NIO;
+	}
+
+	/**
+	 * <p>
+	 * 得到服务端使用的Channel类型
+	 * </p>
+	 * 
+	 * @param mode
+	 *            传输方式
+	 * @return 服务端的Channel类型
+	 * @throws IllegalArgumentException
+	 *             如果mode为null
+	 */
+	public static Class<? extends ServerChannel> serverChannelClass(TransportMode mode) {
+		ArgumentValidator.notNull(mode, "mode");
+		return mode.resolve() == TransportMode.EPOLL ? EpollServerSocketChannel.class : NioServerSocketChannel.class;
+	}
+
+	/**
+	 * <p>
+	 * 得到客户端使用的Channel类型
+	 * </p>
+	 * 
+	 * @param mode
+	 *            传输方式
+	 * @return 客户端的Channel类型
+	 * @throws IllegalArgumentException
+	 *             如果mode为null
+	 */
+	public static Class<? extends SocketChannel> channelClass(TransportMode mode) {
+		ArgumentValidator.notNull(mode, "mode");
+		return mode.resolve() == TransportMode.EPOLL ? EpollSocketChannel.class : NioSocketChannel.class;
+	}
+}
@@ -0,0 +1,42 @@
+package com.alitag.netty_tools;
+
+import io.netty.channel.epoll.Epoll;
+
+/**
+ * <p>
+ * 传输层实现的选择方式。
+ * </p>
+ * <ul>
+ * <li>AUTO: 如果当前系统可以加载epoll的native库则使用epoll，否则使用NIO</li>
+ * <li>NIO: 总是使用NIO</li>
+ * <li>EPOLL: 总是使用epoll，如果native库不可用，则在生成Bootstrap时抛出IllegalStateException</li>
+ * </ul>
+ * 
+ * @author gchangyi
+ * @version 1.0
+ */
+public enum TransportMode {
+	AUTO, NIO, EPOLL;
+
+	/**
+	 * <p>
+	 * 得到实际使用的传输方式，返回值只会是NIO或EPOLL。
+	 * </p>
+	 * 
+	 * @return 实际使用的传输方式
+	 * @throws IllegalStateException
+	 *             如果指定了EPOLL，但epoll不可用
+	 */
+	public TransportMode resolve() {
+		switch (this) {
+		case NIO:
+			return NIO;
+		case EPOLL:
+			if (!Epoll.isAvailable())
+				throw new IllegalStateException("epoll transport is not available", Epoll.unavailabilityCause());
+			return EPOLL;
+		default:
+			return Epoll.isAvailable() ? EPOLL : NIO;
+		}
+	}
+}
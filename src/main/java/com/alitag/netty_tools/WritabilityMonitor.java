@@ -0,0 +1,130 @@
+package com.alitag.netty_tools;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>
+ * 记录channel可写状态变化的handler。由AcceptorBuilder和ConnectorBuilder加入到每个channel的pipeline中，对于其它channel，在第一次使用
+ * {@link WriteHelper}时加入。
+ * </p>
+ * <p>
+ * 只在可写状态变化时(即待发送数据越过高低水位线时)执行，不影响正常读写的性能。使用{@link WritePolicy#block(long)}的线程也在这里等待channel重新可写。
+ * </p>
+ * <p>
+ * 线程安全：该类线程安全。
+ * </p>
+ * 
+ * @author gchangyi
+ * @version 1.0
+ */
+public class WritabilityMonitor extends ChannelInboundHandlerAdapter {
+
+	/** 在pipeline中的名字 */
+	public static final String NAME = "writability_monitor";
+
+	private volatile long unwritableCount;
+
+	private volatile long unwritableSinceNanos;
+
+	private volatile long totalUnwritableNanos;
+
+	private final AtomicLong rejectedCount = new AtomicLong();
+
+	/**
+	 * <p>
+	 * 得到channel变为不可写的次数
+	 * </p>
+	 * 
+	 * @return 变为不可写的次数
+	 */
+	public long getUnwritableCount() {
+		return unwritableCount;
+	}
+
+	/**
+	 * <p>
+	 * 得到channel处于不可写状态的总时长(毫秒)，包括当前仍在持续的不可写时间
+	 * </p>
+	 * 
+	 * @return 不可写的总时长(毫秒)
+	 */
+	public long getTotalUnwritableMillis() {
+		long total = totalUnwritableNanos;
+		long since = unwritableSinceNanos;
+		if (since != 0)
+			total += System.nanoTime() - since;
+		return total / 1000000;
+	}
+
+	/**
+	 * <p>
+	 * 得到因为channel不可写而被WritePolicy拒绝(丢弃或关闭连接)的消息数
+	 * </p>
+	 * 
+	 * @return 被拒绝的消息数
+	 */
+	public long getRejectedCount() {
+		return rejectedCount.get();
+	}
+
+	void incrementRejected() {
+		rejectedCount.incrementAndGet();
+	}
+
+	/**
+	 * <p>
+	 * 等待channel重新可写或者关闭。不可在channel的EventLoop中调用。
+	 * </p>
+	 * 
+	 * @param ctx
+	 *            该handler的ChannelHandlerContext
+	 * @param timeoutMillis
+	 *            最多等待多久(毫秒)
+	 * @return 等待结束时channel是否可写
+	 * @throws InterruptedException
+	 *             如果等待时被中断
+	 */
+	synchronized boolean awaitWritable(ChannelHandlerContext ctx, long timeoutMillis) throws InterruptedException {
+		long deadline = System.currentTimeMillis() + timeoutMillis;
+		long remaining = timeoutMillis;
+		while (!ctx.channel().isWritable() && ctx.channel().isActive() && remaining > 0) {
+			wait(remaining);
+			remaining = deadline - System.currentTimeMillis();
+		}
+		return ctx.channel().isWritable();
+	}
+
+	@Override
+	public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+		if (ctx.channel().isWritable()) {
+			long since = unwritableSinceNanos;
+			if (since != 0) {
+				totalUnwritableNanos += System.nanoTime() - since;
+				unwritableSinceNanos = 0;
+			}
+			synchronized (this) {
+				notifyAll();
+			}
+		} else if (unwritableSinceNanos == 0) {
+			unwritableCount++;
+			unwritableSinceNanos = System.nanoTime();
+		}
+		ctx.fireChannelWritabilityChanged();
+	}
+
+	@Override
+	public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+		synchronized (this) {
+			notifyAll();
+		}
+		ctx.fireChannelInactive();
+	}
+
+	@Override
+	public boolean isSharable() {
+		return false;
+	}
+}
@@ -0,0 +1,173 @@
+package com.alitag.netty_tools;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPipeline;
+import io.netty.util.AttributeKey;
+
+/**
+ * <p>
+ * 考虑了背压的写入方法。channel可写时直接写入；不可写(待发送的数据超过{@link NettyConfig#writeBufferHighWaterMark})时，由WritePolicy决定如何处理，
+ * 避免对方读得太慢时待发送数据无限积压。
+ * </p>
+ * <p>
+ * 线程安全：该类线程安全，因为它只提供了无状态的工具函数。
+ * </p>
+ * 
+ * @author gchangyi
+ * @version 1.0
+ */
+public class WriteHelper {
+
+	/** channel默认使用的WritePolicy，由AcceptorBuilder和ConnectorBuilder根据NettyConfig设置 */
+	static final AttributeKey<WritePolicy> KEY_WRITE_POLICY = AttributeKey.valueOf(WriteHelper.class.getName() + ".write_policy");
+
+	/**
+	 * 私有构造函数。防止被实例化。
+	 */
+	private WriteHelper() {
+		// do nothing
+	}
+
+	/**
+	 * <p>
+	 * 写入并flush消息，channel不可写时使用{@link NettyConfig#writePolicy}处理。不是由AcceptorBuilder或ConnectorBuilder生成的channel使用
+	 * {@link WritePolicy#DROP}。
+	 * </p>
+	 * 
+	 * @param channel
+	 *            当前的连接对象
+	 * @param msg
+	 *            欲写入的消息
+	 * @return 写入的结果
+	 * @throws IllegalArgumentException
+	 *             如果channel或msg为null
+	 */
+	public static ChannelFuture writeAndFlush(Channel channel, Object msg) {
+		return write(channel, msg, null, true);
+	}
+
+	/**
+	 * <p>
+	 * 写入并flush消息，channel不可写时使用policy处理。
+	 * </p>
+	 * 
+	 * @param channel
+	 *            当前的连接对象
+	 * @param msg
+	 *            欲写入的消息
+	 * @param policy
+	 *            channel不可写时的处理方式，为null时与{@link #writeAndFlush(Channel, Object)}相同
+	 * @return 写入的结果
+	 * @throws IllegalArgumentException
+	 *             如果channel或msg为null
+	 */
+	public static ChannelFuture writeAndFlush(Channel channel, Object msg, WritePolicy policy) {
+		return write(channel, msg, policy, true);
+	}
+
+	/**
+	 * <p>
+	 * 写入消息但不flush，channel不可写时使用policy处理。
+	 * </p>
+	 * 
+	 * @param channel
+	 *            当前的连接对象
+	 * @param msg
+	 *            欲写入的消息
+	 * @param policy
+	 *            channel不可写时的处理方式，为null时与{@link #writeAndFlush(Channel, Object)}相同
+	 * @return 写入的结果
+	 * @throws IllegalArgumentException
+	 *             如果channel或msg为null
+	 */
+	public static ChannelFuture write(Channel channel, Object msg, WritePolicy policy) {
+		return write(channel, msg, policy, false);
+	}
+
+	/**
+	 * <p>
+	 * 立即flush，绕过合并flush的handler(见{@link NettyConfig#flushConsolidateAfter})。没有合并flush时与channel.flush()相同。用于需要低延迟的消息。
+	 * </p>
+	 * 
+	 * @param channel
+	 *            当前的连接对象
+	 * @throws IllegalArgumentException
+	 *             如果channel为null
+	 */
+	public static void flushNow(Channel channel) {
+		ArgumentValidator.notNull(channel, "channel");
+		ChannelHandlerContext ctx = channel.pipeline().context(ChannelInitializeBuilder.FLUSH_CONSOLIDATION_NAME);
+		if (ctx == null)
+			channel.flush();
+		else
+			ctx.flush();
+	}
+
+	/**
+	 * <p>
+	 * 写入消息并立即flush，绕过合并flush的handler。channel不可写时使用{@link NettyConfig#writePolicy}处理。
+	 * </p>
+	 * 
+	 * @param channel
+	 *            当前的连接对象
+	 * @param msg
+	 *            欲写入的消息
+	 * @return 写入的结果
+	 * @throws IllegalArgumentException
+	 *             如果channel或msg为null
+	 */
+	public static ChannelFuture writeAndFlushNow(Channel channel, Object msg) {
+		ChannelFuture future = write(channel, msg, null, false);
+		flushNow(channel);
+		return future;
+	}
+
+	/**
+	 * <p>
+	 * 得到channel的WritabilityMonitor，用于查看可写状态变化的统计。如果channel中没有，返回null。
+	 * </p>
+	 * 
+	 * @param channel
+	 *            当前的连接对象
+	 * @return channel的WritabilityMonitor
+	 * @throws IllegalArgumentException
+	 *             如果channel为null
+	 */
+	public static WritabilityMonitor getWritabilityMonitor(Channel channel) {
+		ArgumentValidator.notNull(channel, "channel");
+		return (WritabilityMonitor) channel.pipeline().get(WritabilityMonitor.NAME);
+	}
+
+	private static ChannelFuture write(Channel channel, Object msg, WritePolicy policy, boolean flush) {
+		ArgumentValidator.notNull(channel, "channel");
+		ArgumentValidator.notNull(msg, "msg");
+		if (channel.isWritable())
+			return flush ? channel.writeAndFlush(msg) : channel.write(msg);
+		if (policy == null) {
+			policy = channel.attr(KEY_WRITE_POLICY).get();
+			if (policy == null)
+				policy = WritePolicy.DROP;
+		}
+		return policy.onUnwritable(monitorContext(channel), msg, flush);
+	}
+
+	/**
+	 * 得到WritabilityMonitor的ChannelHandlerContext，如果没有则加入一个
+	 */
+	private static ChannelHandlerContext monitorContext(Channel channel) {
+		ChannelPipeline pipeline = channel.pipeline();
+		ChannelHandlerContext ctx = pipeline.context(WritabilityMonitor.NAME);
+		if (ctx == null) {
+			synchronized (pipeline) {
+				ctx = pipeline.context(WritabilityMonitor.NAME);
+				if (ctx == null) {
+					pipeline.addFirst(WritabilityMonitor.NAME, new WritabilityMonitor());
+					ctx = pipeline.context(WritabilityMonitor.NAME);
+				}
+			}
+		}
+		return ctx;
+	}
+}
@@ -0,0 +1,160 @@
+package com.alitag.netty_tools;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundBuffer;
+import io.netty.util.ReferenceCountUtil;
+
+/**
+ * <p>
+ * channel不可写(待发送的数据超过高水位线)时，{@link WriteHelper}对新消息的处理方式。可以继承该类实现自己的处理方式。
+ * </p>
+ * <ul>
+ * <li>{@link #DROP}: 丢弃消息</li>
+ * <li>{@link #CLOSE}: 丢弃消息并关闭连接，适用于读得太慢的客户端</li>
+ * <li>{@link #bufferUpTo(long)}: 继续写入，直到待发送的数据超过指定的字节数后再丢弃</li>
+ * <li>{@link #block(long)}: 调用线程等待channel重新可写，超时后丢弃</li>
+ * </ul>
+ * <p>
+ * 线程安全：该类的实现必须是线程安全的，同一个实例会被多个channel同时使用。
+ * </p>
+ * 
+ * @author gchangyi
+ * @version 1.0
+ */
+public abstract class WritePolicy {
+
+	/** 丢弃消息 */
+	public static final WritePolicy DROP = new WritePolicy() {
+		@Override
+		protected ChannelFuture onUnwritable(ChannelHandlerContext monitor, Object msg, boolean flush) {
+			return reject(monitor, msg, "channel is not writable, message dropped");
+		}
+
+		@Override
+		public String toString() {
+			return "DROP";
+		}
+	};
+
+	/** 丢弃消息并关闭连接 */
+	public static final WritePolicy CLOSE = new WritePolicy() {
+		@Override
+		protected ChannelFuture onUnwritable(ChannelHandlerContext monitor, Object msg, boolean flush) {
+			ChannelFuture future = reject(monitor, msg, "channel is not writable, closed");
+			monitor.channel().close();
+			return future;
+		}
+
+		@Override
+		public String toString() {
+			return "CLOSE";
+		}
+	};
+
+	/**
+	 * <p>
+	 * 继续写入，直到待发送的数据超过maxPendingBytes字节后再丢弃。
+	 * </p>
+	 * 
+	 * @param maxPendingBytes
+	 *            每个channel最多可以积压的待发送字节数
+	 * @return 对应的WritePolicy
+	 * @throws IllegalArgumentException
+	 *             如果maxPendingBytes<=0
+	 */
+	public static WritePolicy bufferUpTo(final long maxPendingBytes) {
+		ArgumentValidator.isTrue(maxPendingBytes > 0, "maxPendingBytes should be >0: " + maxPendingBytes);
+		return new WritePolicy() {
+			@Override
+			protected ChannelFuture onUnwritable(ChannelHandlerContext monitor, Object msg, boolean flush) {
+				ChannelOutboundBuffer buffer = monitor.channel().unsafe().outboundBuffer();
+				if (buffer != null && buffer.totalPendingWriteBytes() < maxPendingBytes)
+					return write(monitor.channel(), msg, flush);
+				return reject(monitor, msg, "more than " + maxPendingBytes + " bytes pending, message dropped");
+			}
+
+			@Override
+			public String toString() {
+				return "BUFFER(" + maxPendingBytes + ")";
+			}
+		};
+	}
+
+	/**
+	 * <p>
+	 * 调用线程最多等待timeoutMillis毫秒，直到channel重新可写后再写入，超时后丢弃。
+	 * </p>
+	 * <p>
+	 * 在channel的EventLoop中不能等待(否则永远不会重新可写)，此时等同于{@link #DROP}。
+	 * </p>
+	 * 
+	 * @param timeoutMillis
+	 *            最多等待多久(毫秒)
+	 * @return 对应的WritePolicy
+	 * @throws IllegalArgumentException
+	 *             如果timeoutMillis<=0
+	 */
+	public static WritePolicy block(final long timeoutMillis) {
+		ArgumentValidator.isTrue(timeoutMillis > 0, "timeoutMillis should be >0: " + timeoutMillis);
+		return new WritePolicy() {
+			@Override
+			protected ChannelFuture onUnwritable(ChannelHandlerContext monitor, Object msg, boolean flush) {
+				Channel channel = monitor.channel();
+				if (channel.eventLoop().inEventLoop())
+					return reject(monitor, msg, "channel is not writable, can not block in event loop, message dropped");
+				boolean writable;
+				try {
+					writable = ((WritabilityMonitor) monitor.handler()).awaitWritable(monitor, timeoutMillis);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					writable = false;
+				}
+				if (writable)
+					return write(channel, msg, flush);
+				return reject(monitor, msg, "channel is not writable after " + timeoutMillis + "ms, message dropped");
+			}
+
+			@Override
+			public String toString() {
+				return "BLOCK(" + timeoutMillis + "ms)";
+			}
+		};
+	}
+
+	/**
+	 * <p>
+	 * channel不可写时被调用。实现者必须写出msg，或者释放msg并返回一个失败的ChannelFuture(可使用{@link #reject(ChannelHandlerContext, Object, String)})。
+	 * </p>
+	 * 
+	 * @param monitor
+	 *            channel中WritabilityMonitor的ChannelHandlerContext
+	 * @param msg
+	 *            欲写入的消息
+	 * @param flush
+	 *            写入后是否flush
+	 * @return 写入的结果
+	 */
+	protected abstract ChannelFuture onUnwritable(ChannelHandlerContext monitor, Object msg, boolean flush);
+
+	/**
+	 * <p>
+	 * 写入消息
+	 * </p>
+	 */
+	protected static ChannelFuture write(Channel channel, Object msg, boolean flush) {
+		return flush ? channel.writeAndFlush(msg) : channel.write(msg);
+	}
+
+	/**
+	 * <p>
+	 * 拒绝消息：释放msg，把拒绝计数加一，并返回一个以IllegalStateException失败的ChannelFuture
+	 * </p>
+	 */
+	protected static ChannelFuture reject(ChannelHandlerContext monitor, Object msg, String reason) {
+		ReferenceCountUtil.release(msg);
+		((WritabilityMonitor) monitor.handler()).incrementRejected();
+		return monitor.channel().newFailedFuture(new IllegalStateException(reason));
+	}
+}
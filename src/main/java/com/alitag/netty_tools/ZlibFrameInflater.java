@@ -0,0 +1,171 @@
+package com.alitag.netty_tools;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.TooLongFrameException;
+
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * <p>
+ * {@link CompressionHandler}中ZLIB和GZIP帧的解压。用JDK的Inflater把输入逐块解压到一个容量上限为maxFrameLength+1的缓冲区中，
+ * 输出超过maxFrameLength时立即停止并抛出TooLongFrameException，不会像JdkZlibDecoder那样先把整帧解压到内存中再检查长度。
+ * </p>
+ * <p>
+ * 同一个连接的各帧共用一个Inflater，与压缩端(JdkZlibEncoder)在各帧之间共享字典对应。GZIP的头部只在第一帧的开头，各帧都以SYNC_FLUSH结束，
+ * 连接关闭之前没有结尾的校验和。某一帧超长或者数据错误后，流的状态已经不能继续使用，之后的帧都抛出CorruptedFrameException。
+ * </p>
+ * <p>
+ * 线程安全：该类不是线程安全的，每个连接的每种算法一个实例。
+ * </p>
+ *
+ * @author gchangyi
+ * @version 1.0
+ */
+final class ZlibFrameInflater implements FrameDecompressor {
+
+	private static final int FHCRC = 0x02;
+
+	private static final int FEXTRA = 0x04;
+
+	private static final int FNAME = 0x08;
+
+	private static final int FCOMMENT = 0x10;
+
+	private final boolean gzip;
+
+	private final Inflater inflater;
+
+	/** GZIP的头部是否已经读过 */
+	private boolean headerRead;
+
+	/** 之前的某一帧解压失败，流已经不能继续使用 */
+	private boolean broken;
+
+	/**
+	 * @param gzip
+	 *            为true时是gzip格式，否则是zlib格式
+	 */
+	ZlibFrameInflater(boolean gzip) {
+		this.gzip = gzip;
+		this.inflater = new Inflater(gzip);
+	}
+
+	/**
+	 * 数据不是合法的zlib或gzip流，或者之前的帧已经失败时抛出CorruptedFrameException
+	 */
+	@Override
+	public ByteBuf decompress(ByteBufAllocator alloc, ByteBuf in, int maxLength) {
+		if (broken)
+			throw new CorruptedFrameException("compressed stream is unusable after a previous error");
+		boolean ok = false;
+		try {
+			if (gzip && !headerRead) {
+				skipGzipHeader(in);
+				headerRead = true;
+			}
+			ByteBuf out = inflate0(alloc, in, maxLength);
+			ok = true;
+			return out;
+		} finally {
+			if (!ok)
+				broken = true;
+		}
+	}
+
+	private ByteBuf inflate0(ByteBufAllocator alloc, ByteBuf in, int maxLength) {
+		int length = in.readableBytes();
+		if (in.hasArray()) {
+			inflater.setInput(in.array(), in.arrayOffset() + in.readerIndex(), length);
+		} else {
+			byte[] input = new byte[length];
+			in.getBytes(in.readerIndex(), input);
+			inflater.setInput(input);
+		}
+		in.skipBytes(length);
+
+		// 多留一个字节用于发现超长；压缩率一般不超过10倍，按此估计初始容量
+		int limit = maxLength == Integer.MAX_VALUE ? maxLength : maxLength + 1;
+		ByteBuf out = alloc.heapBuffer(Math.min(limit, Math.max(256, length << 3)), limit);
+		try {
+			for (;;) {
+				if (!out.isWritable()) {
+					if (out.writerIndex() > maxLength)
+						throw new TooLongFrameException("decompressed frame length exceeds the allowed maximum (" + maxLength
+								+ ')');
+					out.ensureWritable(1);
+				}
+				int n = inflater.inflate(out.array(), out.arrayOffset() + out.writerIndex(), out.writableBytes());
+				out.writerIndex(out.writerIndex() + n);
+				if (n > 0)
+					continue;
+				if (inflater.needsInput())
+					break;
+				if (inflater.finished())
+					throw new CorruptedFrameException("unexpected end of compressed stream");
+				if (inflater.needsDictionary())
+					throw new CorruptedFrameException("compressed stream requires a preset dictionary");
+				throw new CorruptedFrameException("inflater made no progress");
+			}
+			if (out.writerIndex() > maxLength)
+				throw new TooLongFrameException("decompressed frame length exceeds the allowed maximum (" + maxLength + ')');
+			return out;
+		} catch (DataFormatException e) {
+			out.release();
+			throw new CorruptedFrameException(e);
+		} catch (RuntimeException e) {
+			out.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * 跳过gzip的头部(RFC 1952)，头部必须完整地在第一帧中
+	 */
+	private static void skipGzipHeader(ByteBuf in) {
+		if (in.readableBytes() < 10)
+			throw new CorruptedFrameException("incomplete gzip header");
+		if (in.readUnsignedByte() != 0x1f || in.readUnsignedByte() != 0x8b)
+			throw new CorruptedFrameException("not in gzip format");
+		if (in.readUnsignedByte() != 8)
+			throw new CorruptedFrameException("unsupported gzip compression method");
+		int flags = in.readUnsignedByte();
+		// MTIME、XFL、OS
+		in.skipBytes(6);
+		if ((flags & FEXTRA) != 0) {
+			if (in.readableBytes() < 2)
+				throw new CorruptedFrameException("incomplete gzip header");
+			int extraLength = in.readUnsignedShortLE();
+			skip(in, extraLength);
+		}
+		if ((flags & FNAME) != 0)
+			skipZeroTerminated(in);
+		if ((flags & FCOMMENT) != 0)
+			skipZeroTerminated(in);
+		if ((flags & FHCRC) != 0)
+			skip(in, 2);
+	}
+
+	private static void skip(ByteBuf in, int length) {
+		if (in.readableBytes() < length)
+			throw new CorruptedFrameException("incomplete gzip header");
+		in.skipBytes(length);
+	}
+
+	private static void skipZeroTerminated(ByteBuf in) {
+		int end = in.bytesBefore((byte) 0);
+		if (end < 0)
+			throw new CorruptedFrameException("incomplete gzip header");
+		in.skipBytes(end + 1);
+	}
+
+	/**
+	 * 释放Inflater使用的本地内存
+	 */
+	@Override
+	public void close() {
+		inflater.end();
+	}
+}
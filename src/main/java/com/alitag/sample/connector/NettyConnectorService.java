@@ -1,11 +1,14 @@
 package com.alitag.sample.connector;
 
+import com.alitag.netty_tools.ConnectionState;
+import com.alitag.netty_tools.ConnectionStateListener;
 import com.alitag.netty_tools.ConnectorBuilder;
+import com.alitag.netty_tools.ManagedConnection;
 import com.alitag.netty_tools.NettyConfig;
 
-import io.netty.bootstrap.Bootstrap;
 import io.netty.channel.Channel;
-import io.netty.channel.ChannelFuture;
+
+import java.net.InetSocketAddress;
 
 /**
  * Netty 客户端damo服务入口
@@ -15,24 +18,29 @@ import io.netty.channel.ChannelFuture;
  */
 public class NettyConnectorService {
 	private ConnectorBuilder builder;
-	private Bootstrap connector;
-	private Channel channel;
+	private ManagedConnection connection;
 
 	public Channel start() throws Exception {
 		NettyConfig nettyConfig = new NettyConfig();
 		nettyConfig.channelInitializer = new NettyConnectorInitializer();
 		nettyConfig.connectTimeout = 20; // 客户端连接超时时间, 20秒
+		nettyConfig.standbyConnections = 1; // 服务端重启时立即切换到备用连接
 		builder = new ConnectorBuilder(nettyConfig);
-		connector = builder.getConnector();
-
-		ChannelFuture future = connector.connect("127.0.0.1", 9000).sync();
-		channel = future.channel();
-		// Wait until the connection is closed.
-		channel.closeFuture().sync();
-		return channel;
+		// 服务端重启后自动重连
+		connection = builder.newManagedConnection(new InetSocketAddress("127.0.0.1", 9000), new ConnectionStateListener() {
+			@Override
+			public void stateChanged(ManagedConnection connection, ConnectionState state, Throwable cause) {
+				System.out.println(connection.getRemoteAddress() + " " + state + (cause == null ? "" : " " + cause));
+			}
+		});
+		return connection.whenConnected().get();
 	}
 
 	public void stop() {
+		if (connection != null) {
+			connection.close();
+			connection = null;
+		}
 		if (builder != null) {
 			builder.shutdownGracefully();
 			builder = null;
@@ -42,6 +50,8 @@ public class NettyConnectorService {
 	public static void main(String[] args) throws Exception {
 		NettyConnectorService connectorService = new NettyConnectorService();
 		connectorService.start();
+		// 连接由ManagedConnection维护，主线程只需等待
+		Thread.currentThread().join();
 	}
 
 }
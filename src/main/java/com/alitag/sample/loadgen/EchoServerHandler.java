@@ -0,0 +1,30 @@
+package com.alitag.sample.loadgen;
+
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+
+/**
+ * 把收到的每一行原样写回。同一次读循环中的写入只在读完后flush一次
+ * 
+ * @author gchangyi
+ *
+ */
+@Sharable
+public class EchoServerHandler extends SimpleChannelInboundHandler<String> {
+
+	@Override
+	protected void channelRead0(ChannelHandlerContext ctx, String param) throws Exception {
+		ctx.write(param + "\n");
+	}
+
+	@Override
+	public void channelReadComplete(ChannelHandlerContext ctx) throws Exception {
+		ctx.flush();
+	}
+
+	@Override
+	public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+		ctx.close();
+	}
+}
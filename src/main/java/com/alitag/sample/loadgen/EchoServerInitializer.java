@@ -0,0 +1,22 @@
+package com.alitag.sample.loadgen;
+
+import io.netty.channel.Channel;
+
+import com.alitag.netty_tools.ChannelInitializeBuilder;
+import com.alitag.netty_tools.NettyConfig;
+
+public class EchoServerInitializer extends ChannelInitializeBuilder {
+
+	private static final EchoServerHandler HANDLER = new EchoServerHandler();
+
+	public EchoServerInitializer(NettyConfig config) {
+		super(config);
+	}
+
+	@Override
+	public void initChannel(Channel channel) throws Exception {
+		super.initChannel(channel);
+		channel.pipeline().addLast("handler", HANDLER);
+	}
+
+}
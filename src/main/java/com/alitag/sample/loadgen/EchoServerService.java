@@ -0,0 +1,46 @@
+package com.alitag.sample.loadgen;
+
+import java.net.InetSocketAddress;
+
+import com.alitag.netty_tools.AcceptorBuilder;
+import com.alitag.netty_tools.NettyConfig;
+
+/**
+ * 按行echo的服务端，供LoadGeneratorService测试使用
+ * 
+ * @author gchangyi
+ *
+ */
+public class EchoServerService {
+
+	private AcceptorBuilder builder;
+
+	/**
+	 * 启动服务端
+	 * 
+	 * @param port
+	 *            监听的端口，为0时由系统分配
+	 * @return 实际监听的端口
+	 */
+	public int start(int port) throws Exception {
+		NettyConfig nettyConfig = new NettyConfig();
+		nettyConfig.channelInitializer = new EchoServerInitializer(nettyConfig);
+		nettyConfig.tcp_no_delay = true;
+		builder = new AcceptorBuilder(nettyConfig);
+		builder.bind(new InetSocketAddress(port));
+		return ((InetSocketAddress) builder.getListeners().iterator().next().localAddress()).getPort();
+	}
+
+	public void stop() {
+		if (builder != null) {
+			builder.shutdownGracefully();
+			builder = null;
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		int port = args.length > 0 ? Integer.parseInt(args[0]) : 9000;
+		EchoServerService serverService = new EchoServerService();
+		System.out.println("echo server listening on " + serverService.start(port));
+	}
+}
@@ -0,0 +1,105 @@
+package com.alitag.sample.loadgen;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.util.concurrent.ScheduledFuture;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 负载生成器的一个连接。按预先确定的时间表发送请求：第i个请求的计划发送时间为firstSendNanos + i * intervalNanos，请求中带着计划发送时间，
+ * 收到echo后以计划发送时间计算延时。定时器迟到或者连接写不出去时，错过的请求会补发，因此排队造成的延时也会计入结果
+ * 
+ * @author gchangyi
+ *
+ */
+public class LoadGeneratorHandler extends SimpleChannelInboundHandler<String> {
+
+	private final LoadGeneratorService service;
+
+	private ChannelHandlerContext ctx;
+
+	private long nextSendNanos;
+
+	private long intervalNanos;
+
+	private long endNanos;
+
+	private ScheduledFuture<?> ticker;
+
+	private final Runnable tickTask = new Runnable() {
+		@Override
+		public void run() {
+			tick();
+		}
+	};
+
+	public LoadGeneratorHandler(LoadGeneratorService service) {
+		this.service = service;
+	}
+
+	@Override
+	public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+		this.ctx = ctx;
+	}
+
+	/**
+	 * 开始按时间表发送请求
+	 * 
+	 * @param firstSendNanos
+	 *            第一个请求的计划发送时间(System.nanoTime())
+	 * @param intervalNanos
+	 *            两个请求之间的间隔
+	 * @param endNanos
+	 *            计划发送时间不早于该时间的请求不再发送
+	 */
+	public void start(final long firstSendNanos, final long intervalNanos, final long endNanos) {
+		ctx.executor().execute(new Runnable() {
+			@Override
+			public void run() {
+				LoadGeneratorHandler.this.nextSendNanos = firstSendNanos;
+				LoadGeneratorHandler.this.intervalNanos = intervalNanos;
+				LoadGeneratorHandler.this.endNanos = endNanos;
+				ticker = ctx.executor().schedule(tickTask, firstSendNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+			}
+		});
+	}
+
+	private void tick() {
+		long now = System.nanoTime();
+		int count = 0;
+		while (nextSendNanos <= now && nextSendNanos < endNanos) {
+			ctx.write(nextSendNanos + service.getPadding());
+			nextSendNanos += intervalNanos;
+			count++;
+		}
+		if (count > 0) {
+			ctx.flush();
+			service.sent(count);
+		}
+		// 每次都按下一个请求的计划时间重新调度，定时器提前醒来时只会多调度一次，不会把请求推迟一个周期
+		if (nextSendNanos < endNanos && ctx.channel().isActive())
+			ticker = ctx.executor().schedule(tickTask, nextSendNanos - now, TimeUnit.NANOSECONDS);
+	}
+
+	@Override
+	protected void channelRead0(ChannelHandlerContext ctx, String param) throws Exception {
+		int end = param.indexOf(' ');
+		long intendedNanos = Long.parseLong(end < 0 ? param : param.substring(0, end));
+		service.received(intendedNanos, System.nanoTime());
+	}
+
+	@Override
+	public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+		if (ticker != null)
+			ticker.cancel(false);
+		service.disconnected();
+		ctx.fireChannelInactive();
+	}
+
+	@Override
+	public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
+		service.error();
+		ctx.close();
+	}
+}
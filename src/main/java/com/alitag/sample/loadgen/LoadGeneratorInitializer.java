@@ -0,0 +1,23 @@
+package com.alitag.sample.loadgen;
+
+import io.netty.channel.Channel;
+
+import com.alitag.netty_tools.ChannelInitializeBuilder;
+import com.alitag.netty_tools.NettyConfig;
+
+public class LoadGeneratorInitializer extends ChannelInitializeBuilder {
+
+	private final LoadGeneratorService service;
+
+	public LoadGeneratorInitializer(NettyConfig config, LoadGeneratorService service) {
+		super(config);
+		this.service = service;
+	}
+
+	@Override
+	public void initChannel(Channel channel) throws Exception {
+		super.initChannel(channel);
+		channel.pipeline().addLast("handler", new LoadGeneratorHandler(service));
+	}
+
+}
@@ -0,0 +1,205 @@
+package com.alitag.sample.loadgen;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.alitag.netty_tools.ArgumentValidator;
+import com.alitag.netty_tools.ConnectorBuilder;
+import com.alitag.netty_tools.LatencyHistogram;
+import com.alitag.netty_tools.NettyConfig;
+
+/**
+ * 基于ConnectorBuilder的负载生成器，用于容量评估。建立大量连接，以固定的总速率发送请求，统计吞吐量和延时分布(p50/p99/p999)
+ * <p>
+ * 每个请求的发送时间预先确定(见LoadGeneratorHandler)，延时从计划发送时间开始计算，服务端变慢时排队的时间也计入延时，不会因为少发请求而掩盖问题。
+ * <p>
+ * 参数依次为: host port connections rate(每秒请求数) duration(秒) warmup(秒) messageSize(字节)。host为local时在本进程中启动一个EchoServerService
+ * 
+ * @author gchangyi
+ *
+ */
+public class LoadGeneratorService {
+
+	/** 延时以微秒记录，最大区分到1分钟 */
+	private final LatencyHistogram histogram = new LatencyHistogram(TimeUnit.MINUTES.toMicros(1));
+
+	private final LongAdder sent = new LongAdder();
+
+	private final LongAdder received = new LongAdder();
+
+	private final LongAdder measured = new LongAdder();
+
+	private final LongAdder errors = new LongAdder();
+
+	private final LongAdder disconnects = new LongAdder();
+
+	private final String padding;
+
+	private volatile long measureStartNanos = Long.MAX_VALUE;
+
+	private volatile long endNanos = Long.MAX_VALUE;
+
+	/**
+	 * @param messageSize
+	 *            每个请求的字节数，包括计划发送时间(最多20个字符)、一个空格和结尾的换行
+	 * @throws IllegalArgumentException
+	 *             如果messageSize<22
+	 */
+	public LoadGeneratorService(int messageSize) {
+		ArgumentValidator.isTrue(messageSize >= 22, "messageSize should be >=22: " + messageSize);
+		// 计划发送时间最多占20个字符
+		StringBuilder sb = new StringBuilder(" ");
+		for (int i = 21; i < messageSize - 1; i++)
+			sb.append('x');
+		padding = sb.append('\n').toString();
+	}
+
+	String getPadding() {
+		return padding;
+	}
+
+	void sent(int count) {
+		sent.add(count);
+	}
+
+	void received(long intendedNanos, long nowNanos) {
+		received.increment();
+		if (intendedNanos >= measureStartNanos && intendedNanos < endNanos) {
+			measured.increment();
+			histogram.record(TimeUnit.NANOSECONDS.toMicros(nowNanos - intendedNanos));
+		}
+	}
+
+	void error() {
+		errors.increment();
+	}
+
+	void disconnected() {
+		disconnects.increment();
+	}
+
+	public LatencyHistogram getHistogram() {
+		return histogram;
+	}
+
+	/**
+	 * 运行负载测试
+	 * 
+	 * @param host
+	 *            服务端地址
+	 * @param port
+	 *            服务端端口
+	 * @param connections
+	 *            连接数
+	 * @param rate
+	 *            所有连接合计每秒的请求数
+	 * @param durationSeconds
+	 *            统计的时间
+	 * @param warmupSeconds
+	 *            开始统计之前预热的时间
+	 * @throws IllegalArgumentException
+	 *             如果参数不合法，见{@link #validate(int, int, int, int)}
+	 */
+	public void run(String host, int port, int connections, int rate, int durationSeconds, int warmupSeconds)
+			throws Exception {
+		validate(connections, rate, durationSeconds, warmupSeconds);
+		NettyConfig nettyConfig = new NettyConfig();
+		nettyConfig.channelInitializer = new LoadGeneratorInitializer(nettyConfig, this);
+		nettyConfig.tcp_no_delay = true;
+		nettyConfig.connectTimeout = 20;
+		ConnectorBuilder builder = new ConnectorBuilder(nettyConfig);
+		try {
+			Bootstrap connector = builder.getConnector();
+			List<ChannelFuture> futures = new ArrayList<ChannelFuture>(connections);
+			for (int i = 0; i < connections; i++)
+				futures.add(connector.connect(host, port));
+			List<Channel> channels = new ArrayList<Channel>(connections);
+			for (ChannelFuture future : futures) {
+				if (future.awaitUninterruptibly().isSuccess())
+					channels.add(future.channel());
+				else
+					errors.increment();
+			}
+			if (channels.isEmpty())
+				throw new IllegalStateException("no connection established to " + host + ":" + port);
+			System.out.println("connections: " + channels.size() + "/" + connections + ", transport: "
+					+ builder.getTransportMode());
+
+			// 每个连接的速率相同，各连接的第一个请求均匀错开
+			long intervalNanos = TimeUnit.SECONDS.toNanos(1) * channels.size() / rate;
+			long startNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+			measureStartNanos = startNanos + TimeUnit.SECONDS.toNanos(warmupSeconds);
+			endNanos = measureStartNanos + TimeUnit.SECONDS.toNanos(durationSeconds);
+			for (int i = 0; i < channels.size(); i++) {
+				LoadGeneratorHandler handler = (LoadGeneratorHandler) channels.get(i).pipeline().get("handler");
+				handler.start(startNanos + intervalNanos * i / channels.size(), intervalNanos, endNanos);
+			}
+
+			long lastSent = 0, lastReceived = 0;
+			for (int second = 1; System.nanoTime() < endNanos; second++) {
+				Thread.sleep(1000);
+				long s = sent.sum(), r = received.sum();
+				System.out.println(String.format("%3ds sent/s: %d, received/s: %d", second, s - lastSent, r - lastReceived));
+				lastSent = s;
+				lastReceived = r;
+			}
+			// 等待剩余的响应
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+			while (received.sum() < sent.sum() && System.nanoTime() < deadline)
+				Thread.sleep(10);
+
+			System.out.println(String.format("target rate: %d/s, throughput: %.0f/s, sent: %d, received: %d, errors: %d, disconnects: %d",
+					rate, measured.sum() / (double) durationSeconds, sent.sum(), received.sum(), errors.sum(),
+					disconnects.sum()));
+			System.out.println("latency(us): " + histogram);
+		} finally {
+			builder.shutdownGracefully();
+		}
+	}
+
+	/**
+	 * 检查负载测试的参数
+	 * 
+	 * @throws IllegalArgumentException
+	 *             如果connections<=0，rate<=0，durationSeconds<=0，或者warmupSeconds<0
+	 */
+	static void validate(int connections, int rate, int durationSeconds, int warmupSeconds) {
+		ArgumentValidator.isTrue(connections > 0, "connections should be >0: " + connections);
+		ArgumentValidator.isTrue(rate > 0, "rate should be >0: " + rate);
+		ArgumentValidator.isTrue(durationSeconds > 0, "duration should be >0: " + durationSeconds);
+		ArgumentValidator.isTrue(warmupSeconds >= 0, "warmup should be >=0: " + warmupSeconds);
+	}
+
+	public static void main(String[] args) throws Exception {
+		String host = args.length > 0 ? args[0] : "local";
+		int port = args.length > 1 ? Integer.parseInt(args[1]) : 9000;
+		int connections = args.length > 2 ? Integer.parseInt(args[2]) : 1000;
+		int rate = args.length > 3 ? Integer.parseInt(args[3]) : 50000;
+		int duration = args.length > 4 ? Integer.parseInt(args[4]) : 10;
+		int warmup = args.length > 5 ? Integer.parseInt(args[5]) : 2;
+		int messageSize = args.length > 6 ? Integer.parseInt(args[6]) : 64;
+
+		// 在启动本地服务端之前检查参数
+		validate(connections, rate, duration, warmup);
+		LoadGeneratorService service = new LoadGeneratorService(messageSize);
+
+		EchoServerService server = null;
+		if ("local".equals(host)) {
+			server = new EchoServerService();
+			port = server.start(0);
+			host = "127.0.0.1";
+		}
+		try {
+			service.run(host, port, connections, rate, duration, warmup);
+		} finally {
+			if (server != null)
+				server.stop();
+		}
+	}
+}
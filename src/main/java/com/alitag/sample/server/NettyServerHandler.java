@@ -2,6 +2,7 @@ package com.alitag.sample.server;
 
 import com.alitag.netty_tools.ChannelTaskHelper;
 import com.alitag.netty_tools.TimerTaskExt;
+import com.alitag.netty_tools.WriteHelper;
 
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
@@ -23,7 +24,7 @@ public class NettyServerHandler extends SimpleChannelInboundHandler<String> {
 			public void run() {
 				long current = System.currentTimeMillis();
 				if (current != preTime) {
-					channel.writeAndFlush(System.currentTimeMillis() + System.lineSeparator());
+					WriteHelper.writeAndFlush(channel, System.currentTimeMillis() + System.lineSeparator());
 					preTime = current;
 				}
 			};
@@ -38,7 +39,7 @@ public class NettyServerHandler extends SimpleChannelInboundHandler<String> {
 			if (event.state().equals(IdleState.READER_IDLE)) {
 				// TODO
 			} else if (event.state().equals(IdleState.WRITER_IDLE)) {
-				channel.writeAndFlush(System.currentTimeMillis() + System.lineSeparator());
+				WriteHelper.writeAndFlush(channel, System.currentTimeMillis() + System.lineSeparator());
 			} else if (event.state().equals(IdleState.ALL_IDLE)) {
 				// TODO
 			}
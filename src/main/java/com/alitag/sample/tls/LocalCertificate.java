@@ -0,0 +1,109 @@
+package com.alitag.sample.tls;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.cert.Certificate;
+import java.util.Base64;
+
+/**
+ * 生成本机测试用的自签名证书：用JDK自带的keytool生成RSA密钥对和证书(subjectAltName包含IP:127.0.0.1和DNS:localhost)，
+ * 再转换成NettyConfig中tlsCertChainFile和tlsKeyFile使用的PEM文件(证书和未加密的PKCS#8私钥)
+ * 
+ * @author gchangyi
+ *
+ */
+public class LocalCertificate {
+
+	private static final String ALIAS = "netty_tools";
+
+	private static final char[] PASSWORD = "changeit".toCharArray();
+
+	private final File certFile;
+
+	private final File keyFile;
+
+	private LocalCertificate(File certFile, File keyFile) {
+		this.certFile = certFile;
+		this.keyFile = keyFile;
+	}
+
+	/**
+	 * 在dir中生成cert.pem和key.pem
+	 * 
+	 * @param dir
+	 *            保存证书的目录，必须已经存在
+	 * @return 生成的证书
+	 */
+	public static LocalCertificate generate(File dir) throws IOException, InterruptedException,
+			GeneralSecurityException {
+		File keyStoreFile = new File(dir, "local.p12");
+		keyStoreFile.delete();
+		String keytool = System.getProperty("java.home") + File.separator + "bin" + File.separator + "keytool";
+		Process process = new ProcessBuilder(keytool, "-genkeypair", "-alias", ALIAS, "-keyalg", "RSA", "-keysize",
+				"2048", "-validity", "30", "-dname", "CN=localhost", "-ext", "SAN=IP:127.0.0.1,DNS:localhost",
+				"-storetype", "PKCS12", "-keystore", keyStoreFile.getPath(), "-storepass", new String(PASSWORD),
+				"-keypass", new String(PASSWORD)).redirectErrorStream(true).start();
+		byte[] output = readAll(process.getInputStream());
+		if (process.waitFor() != 0)
+			throw new IOException("keytool failed: " + new String(output, StandardCharsets.UTF_8));
+
+		KeyStore keyStore = KeyStore.getInstance("PKCS12");
+		InputStream in = new FileInputStream(keyStoreFile);
+		try {
+			keyStore.load(in, PASSWORD);
+		} finally {
+			in.close();
+		}
+		Certificate certificate = keyStore.getCertificate(ALIAS);
+		PrivateKey key = (PrivateKey) keyStore.getKey(ALIAS, PASSWORD);
+		keyStoreFile.delete();
+
+		LocalCertificate result = new LocalCertificate(new File(dir, "cert.pem"), new File(dir, "key.pem"));
+		writePem(result.certFile, "CERTIFICATE", certificate.getEncoded());
+		writePem(result.keyFile, "PRIVATE KEY", key.getEncoded());
+		return result;
+	}
+
+	/**
+	 * @return PEM格式的证书，同时用作客户端信任的证书
+	 */
+	public File getCertFile() {
+		return certFile;
+	}
+
+	/**
+	 * @return PEM格式的PKCS#8私钥，未加密
+	 */
+	public File getKeyFile() {
+		return keyFile;
+	}
+
+	private static void writePem(File file, String type, byte[] der) throws IOException {
+		String pem = "-----BEGIN " + type + "-----\n"
+				+ Base64.getMimeEncoder(64, new byte[] { '\n' }).encodeToString(der) + "\n-----END " + type + "-----\n";
+		OutputStream out = new FileOutputStream(file);
+		try {
+			out.write(pem.getBytes(StandardCharsets.US_ASCII));
+		} finally {
+			out.close();
+		}
+	}
+
+	private static byte[] readAll(InputStream in) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[4096];
+		int n;
+		while ((n = in.read(buffer)) > 0)
+			out.write(buffer, 0, n);
+		return out.toByteArray();
+	}
+}
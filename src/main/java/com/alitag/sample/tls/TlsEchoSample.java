@@ -0,0 +1,107 @@
+package com.alitag.sample.tls;
+
+import java.io.File;
+import java.net.InetSocketAddress;
+import java.nio.file.Files;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import com.alitag.netty_tools.AcceptorBuilder;
+import com.alitag.netty_tools.ChannelInitializeBuilder;
+import com.alitag.netty_tools.ConnectorBuilder;
+import com.alitag.netty_tools.NettyConfig;
+import com.alitag.netty_tools.TlsHelper;
+import com.alitag.netty_tools.TlsStats;
+import com.alitag.netty_tools.WriteHelper;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.SimpleChannelInboundHandler;
+
+/**
+ * 在本机用自签名证书测试TLS：生成证书，启动按行echo的TLS服务端，客户端连接两次，第一次完整握手，第二次恢复会话，最后输出两端的TlsStats。
+ * 两端都启用了合并flush，echo用WriteHelper.writeAndFlushNow()立即发送，收不到回复或者没有恢复会话时抛出异常
+ * 
+ * @author gchangyi
+ *
+ */
+public class TlsEchoSample {
+
+	public static void main(String[] args) throws Exception {
+		File dir = Files.createTempDirectory("netty_tools_tls").toFile();
+		LocalCertificate certificate = LocalCertificate.generate(dir);
+		TlsStats serverStats = new TlsStats();
+		TlsStats clientStats = new TlsStats();
+		AcceptorBuilder server = null;
+		ConnectorBuilder client = null;
+		try {
+			NettyConfig serverConfig = new NettyConfig();
+			serverConfig.tls = true;
+			serverConfig.tlsCertChainFile = certificate.getCertFile();
+			serverConfig.tlsKeyFile = certificate.getKeyFile();
+			serverConfig.tlsStats = serverStats;
+			serverConfig.flushConsolidateAfter = 64;
+			serverConfig.channelInitializer = new ChannelInitializeBuilder(serverConfig) {
+				@Override
+				public void initChannel(Channel channel) throws Exception {
+					super.initChannel(channel);
+					channel.pipeline().addLast("handler", new SimpleChannelInboundHandler<String>() {
+						@Override
+						protected void channelRead0(ChannelHandlerContext ctx, String line) throws Exception {
+							WriteHelper.writeAndFlushNow(ctx.channel(), line + "\n");
+						}
+					});
+				}
+			};
+			server = new AcceptorBuilder(serverConfig);
+			server.bind(new InetSocketAddress("127.0.0.1", 0));
+			InetSocketAddress address = (InetSocketAddress) server.getListeners().iterator().next().localAddress();
+
+			final BlockingQueue<String> replies = new LinkedBlockingQueue<String>();
+			NettyConfig clientConfig = new NettyConfig();
+			clientConfig.tls = true;
+			clientConfig.tlsTrustCertFile = certificate.getCertFile();
+			clientConfig.tlsStats = clientStats;
+			clientConfig.flushConsolidateAfter = 64;
+			clientConfig.channelInitializer = new ChannelInitializeBuilder(clientConfig) {
+				@Override
+				public void initChannel(Channel channel) throws Exception {
+					super.initChannel(channel);
+					channel.pipeline().addLast("handler", new SimpleChannelInboundHandler<String>() {
+						@Override
+						protected void channelRead0(ChannelHandlerContext ctx, String line) throws Exception {
+							replies.add(line);
+						}
+					});
+				}
+			};
+			client = new ConnectorBuilder(clientConfig);
+
+			for (int i = 1; i <= 2; i++) {
+				Channel channel = client.getConnector().connect(address).sync().channel();
+				TlsHelper.handshakeFuture(channel).sync();
+				String message = "hello " + i;
+				WriteHelper.writeAndFlushNow(channel, message + "\n");
+				String reply = replies.poll(5, TimeUnit.SECONDS);
+				if (!message.equals(reply))
+					throw new IllegalStateException("no echo for \"" + message + "\", got: " + reply);
+				System.out.println("connection " + i + ": " + TlsHelper.getSession(channel).getProtocol() + ", resumed="
+						+ TlsHelper.isResumed(channel) + ", echo=" + reply);
+				channel.close().sync();
+			}
+			System.out.println("server: " + serverStats);
+			System.out.println("client: " + clientStats);
+			if (clientStats.getFullHandshakes() != 1 || clientStats.getResumedHandshakes() != 1)
+				throw new IllegalStateException("expected one full and one resumed handshake: " + clientStats);
+		} finally {
+			if (client != null)
+				client.shutdownGracefully();
+			if (server != null)
+				server.shutdownGracefully();
+			certificate.getCertFile().delete();
+			certificate.getKeyFile().delete();
+			dir.delete();
+		}
+	}
+}